@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Estimates of the differences of two networks, from the diff of a random sample of their common voltage levels and
+ * branches.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public class ApproximateDiffResults {
+
+    /**
+     * The quantile of the normal distribution of the 95% confidence intervals.
+     */
+    static final double Z_95 = 1.96;
+
+    /**
+     * Estimate of the fraction of differing equipments of a type. With a stratified sample, the fraction is the mean
+     * of the fractions of the strata weighted by their size.
+     * <p>
+     * The confidence interval of each stratum is a Wilson score interval, which keeps a non zero width when no or all
+     * sampled equipments differ, with the finite population correction, so that a fully sampled stratum adds no
+     * uncertainty. The bounds of the fraction are the weighted sums of the bounds of the strata, an unsampled stratum
+     * spanning [0, 1].
+     * <p>
+     * The max deltas are the largest absolute deltas found in the sample, lower bounds of the max deltas of all the
+     * equipments.
+     */
+    public static final class Estimate {
+
+        private final int populationSize;
+        private final int sampleSize;
+        private final int differentCount;
+        private final double differentFraction;
+        private final double lowerBound;
+        private final double upperBound;
+        private final Map<ThresholdRule.Quantity, Double> maxDeltas;
+
+        /**
+         * @param strataSizes the number of equipments of each stratum
+         * @param sampleSizes the number of sampled equipments of each stratum
+         * @param differentCounts the number of differing sampled equipments of each stratum
+         */
+        Estimate(int[] strataSizes, int[] sampleSizes, int[] differentCounts, Map<ThresholdRule.Quantity, Double> maxDeltas) {
+            int population = 0;
+            int sample = 0;
+            int different = 0;
+            for (int i = 0; i < strataSizes.length; i++) {
+                population += strataSizes[i];
+                sample += sampleSizes[i];
+                different += differentCounts[i];
+            }
+            double fraction = 0;
+            double lower = 0;
+            double upper = 0;
+            for (int i = 0; i < strataSizes.length; i++) {
+                double weight = (double) strataSizes[i] / population;
+                if (sampleSizes[i] > 0) {
+                    double stratumFraction = (double) differentCounts[i] / sampleSizes[i];
+                    double finitePopulationCorrection = 1 - (double) sampleSizes[i] / strataSizes[i];
+                    fraction += weight * stratumFraction;
+                    // Wilson score interval, the finite population correction scaling the squared quantile
+                    double z2 = Z_95 * Z_95 * finitePopulationCorrection / sampleSizes[i];
+                    double center = (stratumFraction + z2 / 2) / (1 + z2);
+                    double halfWidth = Math.sqrt(z2 * stratumFraction * (1 - stratumFraction) + z2 * z2 / 4) / (1 + z2);
+                    lower += weight * Math.max(0, center - halfWidth);
+                    upper += weight * Math.min(1, center + halfWidth);
+                } else {
+                    upper += weight;
+                }
+            }
+            this.populationSize = population;
+            this.sampleSize = sample;
+            this.differentCount = different;
+            this.differentFraction = sample > 0 ? fraction : Double.NaN;
+            this.lowerBound = sample > 0 ? lower : Double.NaN;
+            this.upperBound = sample > 0 ? Math.min(1, upper) : Double.NaN;
+            this.maxDeltas = Collections.unmodifiableMap(new EnumMap<>(maxDeltas));
+        }
+
+        public int getPopulationSize() {
+            return populationSize;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        public int getDifferentCount() {
+            return differentCount;
+        }
+
+        /**
+         * Returns the estimated fraction of differing equipments, NaN if nothing has been sampled.
+         */
+        public double getDifferentFraction() {
+            return differentFraction;
+        }
+
+        public double getDifferentFractionLowerBound() {
+            return lowerBound;
+        }
+
+        public double getDifferentFractionUpperBound() {
+            return upperBound;
+        }
+
+        public Map<ThresholdRule.Quantity, Double> getMaxDeltas() {
+            return maxDeltas;
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("populationSize", populationSize);
+            generator.writeNumberField("sampleSize", sampleSize);
+            generator.writeNumberField("differentCount", differentCount);
+            generator.writeNumberField("differentFraction", differentFraction);
+            generator.writeNumberField("differentFraction-lowerBound95", getDifferentFractionLowerBound());
+            generator.writeNumberField("differentFraction-upperBound95", getDifferentFractionUpperBound());
+            for (Map.Entry<ThresholdRule.Quantity, Double> e : maxDeltas.entrySet()) {
+                generator.writeNumberField("max-" + e.getKey().name().toLowerCase() + "-delta", e.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private final String networkId1;
+    private final String networkId2;
+    private final double fraction;
+    private final boolean stratified;
+    private final Estimate voltageLevels;
+    private final Estimate branches;
+
+    ApproximateDiffResults(String networkId1, String networkId2, double fraction, boolean stratified, Estimate voltageLevels, Estimate branches) {
+        this.networkId1 = Objects.requireNonNull(networkId1);
+        this.networkId2 = Objects.requireNonNull(networkId2);
+        this.fraction = fraction;
+        this.stratified = stratified;
+        this.voltageLevels = Objects.requireNonNull(voltageLevels);
+        this.branches = Objects.requireNonNull(branches);
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public boolean isStratified() {
+        return stratified;
+    }
+
+    public Estimate getVoltageLevels() {
+        return voltageLevels;
+    }
+
+    public Estimate getBranches() {
+        return branches;
+    }
+
+    public void writeJson(JsonGenerator generator) {
+        Objects.requireNonNull(generator);
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("network1", networkId1);
+            generator.writeStringField("network2", networkId2);
+            generator.writeNumberField("fraction", fraction);
+            generator.writeBooleanField("stratified", stratified);
+            generator.writeFieldName("diff.VoltageLevels");
+            voltageLevels.writeJson(generator);
+            generator.writeFieldName("diff.Branches");
+            branches.writeJson(generator);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
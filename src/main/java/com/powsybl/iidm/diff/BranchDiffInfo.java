@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Objects;
 
 import com.powsybl.iidm.network.Branch.Side;
+import com.powsybl.iidm.network.ConnectableType;
 
 /**
  *
@@ -19,13 +20,29 @@ public class BranchDiffInfo {
 
     private final String branchId;
     private final Map<Side, TerminalData> terminalData;
+    private final ConnectableType type;
+    private final double r;
+    private final double x;
 
     public BranchDiffInfo(String branchId, Map<Side, TerminalData> terminalData) {
+        this(branchId, terminalData, null, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * @param type the type of the branch, null if it is not known
+     * @param r the resistance of the branch, NaN if it is not known
+     * @param x the reactance of the branch, NaN if it is not known
+     */
+    public BranchDiffInfo(String branchId, Map<Side, TerminalData> terminalData, ConnectableType type, double r, double x) {
         this.branchId = Objects.requireNonNull(branchId);
         this.terminalData = Objects.requireNonNull(terminalData);
+        this.type = type;
+        this.r = r;
+        this.x = x;
     }
 
     class TerminalData {
+        private final String voltageLevelId;
         private final boolean connected;
         private final double p;
         private final double q;
@@ -33,7 +50,8 @@ public class BranchDiffInfo {
         private final double currentLimit;
         private final double vNom;
 
-        TerminalData(boolean connected, double p, double q, double i, double currentLimit, double vNom) {
+        TerminalData(String voltageLevelId, boolean connected, double p, double q, double i, double currentLimit, double vNom) {
+            this.voltageLevelId = voltageLevelId;
             this.connected = connected;
             this.p = p;
             this.q = q;
@@ -42,6 +60,10 @@ public class BranchDiffInfo {
             this.vNom = vNom;
         }
 
+        public String getVoltageLevelId() {
+            return voltageLevelId;
+        }
+
         public boolean isConnected() {
             return connected;
         }
@@ -71,6 +93,18 @@ public class BranchDiffInfo {
         return branchId;
     }
 
+    public ConnectableType getType() {
+        return type;
+    }
+
+    public double getR() {
+        return r;
+    }
+
+    public double getX() {
+        return x;
+    }
+
     public Map<Side, TerminalData> getTerminalData() {
         return terminalData;
     }
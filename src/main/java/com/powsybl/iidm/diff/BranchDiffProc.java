@@ -8,18 +8,22 @@ package com.powsybl.iidm.diff;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.math.DoubleMath;
 import com.powsybl.iidm.network.Branch;
 import com.powsybl.iidm.network.Branch.Side;
+import com.powsybl.iidm.network.Line;
 import com.powsybl.iidm.network.Terminal;
+import com.powsybl.iidm.network.TwoWindingsTransformer;
+import com.powsybl.iidm.network.VoltageLevel;
 
 /**
  *
@@ -27,10 +31,17 @@ import com.powsybl.iidm.network.Terminal;
  */
 public class BranchDiffProc implements DiffProc<Branch> {
 
+    // P, Q and I of both sides
+    private static final int LANES = 6;
+
+    private static final int BLOCK_SIZE = 1024;
+
     private final DiffConfig config;
+    private final ThresholdTable thresholds;
 
     public BranchDiffProc(DiffConfig config) {
         this.config = Objects.requireNonNull(config);
+        this.thresholds = ThresholdTable.compile(config);
     }
 
     class BranchDiffResult implements DiffResult {
@@ -47,6 +58,11 @@ public class BranchDiffProc implements DiffProc<Branch> {
             this.isDifferent = sideDifferent.get(Side.ONE) || sideDifferent.get(Side.TWO);
         }
 
+        @Override
+        public String getId() {
+            return branchInfo1.getBranchId();
+        }
+
         @Override
         public boolean isDifferent() {
             return config.isFilterDifferent() && isDifferent;
@@ -122,35 +138,132 @@ public class BranchDiffProc implements DiffProc<Branch> {
     public DiffResult diff(Branch branch1, Branch branch2) {
         Objects.requireNonNull(branch1);
         Objects.requireNonNull(branch2);
-        BranchDiffInfo branchInfo1 = new BranchDiffInfo(branch1.getId(), new HashMap<Branch.Side, BranchDiffInfo.TerminalData>());
-        branchInfo1.setTerminalData(Side.ONE, getTerminalData(branchInfo1, branch1.getTerminal(Side.ONE),
-                                    branch1.getCurrentLimits(Side.ONE) == null ? Double.NaN : branch1.getCurrentLimits(Side.ONE).getPermanentLimit()));
-        branchInfo1.setTerminalData(Side.TWO, getTerminalData(branchInfo1, branch1.getTerminal(Side.TWO),
-                                    branch1.getCurrentLimits(Side.TWO) == null ? Double.NaN : branch1.getCurrentLimits(Side.TWO).getPermanentLimit()));
-        BranchDiffInfo branchInfo2 = new BranchDiffInfo(branch2.getId(), new HashMap<Branch.Side, BranchDiffInfo.TerminalData>());
-        branchInfo2.setTerminalData(Side.ONE, getTerminalData(branchInfo2, branch2.getTerminal(Side.ONE),
-                                    branch1.getCurrentLimits(Side.TWO) == null ? Double.NaN : branch2.getCurrentLimits(Side.ONE).getPermanentLimit()));
-        branchInfo2.setTerminalData(Side.TWO, getTerminalData(branchInfo2, branch2.getTerminal(Side.TWO),
-                                    branch2.getCurrentLimits(Side.TWO) == null ? Double.NaN : branch2.getCurrentLimits(Side.TWO).getPermanentLimit()));
-        Map<Side, Boolean> sideDifferent = new HashMap<Side, Boolean>();
+        return diff(extract(branch1, new NetworkIndex()), extract(branch2, new NetworkIndex()));
+    }
+
+    /**
+     * Reads the compared quantities of a branch, so that they can be fetched ahead of the comparison.
+     * Voltage level data come from the index shared by all the procedures of a diff.
+     */
+    BranchDiffInfo extract(Branch branch, NetworkIndex index) {
+        Objects.requireNonNull(branch);
+        Objects.requireNonNull(index);
+        return extract(branch, index, BranchLimitTable.of(List.<Branch<?>>of(branch)));
+    }
+
+    BranchDiffInfo extract(Branch<?> branch, NetworkIndex index, BranchLimitTable limits) {
+        return extract(branch, index, limits, IdMapping.empty());
+    }
+
+    /**
+     * Reads the compared quantities of a branch, its current limits coming from a table read beforehand, with the
+     * ids of the branch and of its voltage levels mapped to those of the first network.
+     */
+    BranchDiffInfo extract(Branch<?> branch, NetworkIndex index, BranchLimitTable limits, IdMapping mapping) {
+        Objects.requireNonNull(branch);
+        Objects.requireNonNull(index);
+        Objects.requireNonNull(limits);
+        Objects.requireNonNull(mapping);
+        String branchId = mapping.toId1(branch.getId());
+        double r = Double.NaN;
+        double x = Double.NaN;
+        if (branch instanceof Line) {
+            r = ((Line) branch).getR();
+            x = ((Line) branch).getX();
+        } else if (branch instanceof TwoWindingsTransformer) {
+            r = ((TwoWindingsTransformer) branch).getR();
+            x = ((TwoWindingsTransformer) branch).getX();
+        }
+        BranchDiffInfo branchInfo = new BranchDiffInfo(branchId, new EnumMap<>(Side.class), branch.getType(), r, x);
+        for (Side side : Side.values()) {
+            branchInfo.setTerminalData(side, getTerminalData(branchInfo, branch.getTerminal(side), limits.getPermanentLimit(branchId, side), index, mapping));
+        }
+        return branchInfo;
+    }
+
+    DiffResult diff(BranchDiffInfo branchInfo1, BranchDiffInfo branchInfo2) {
+        Objects.requireNonNull(branchInfo1);
+        Objects.requireNonNull(branchInfo2);
+        Map<Side, Boolean> sideDifferent = new EnumMap<>(Side.class);
         sideDifferent.put(Side.ONE, !areEquals(branchInfo1.getTerminalData(Side.ONE), branchInfo2.getTerminalData(Side.ONE)));
         sideDifferent.put(Side.TWO, !areEquals(branchInfo1.getTerminalData(Side.TWO), branchInfo2.getTerminalData(Side.TWO)));
         return new BranchDiffResult(branchInfo1, branchInfo2, sideDifferent);
     }
 
-    private BranchDiffInfo.TerminalData getTerminalData(BranchDiffInfo branchDiffInfo, Terminal terminal, double currentLimit) {
-        return branchDiffInfo.new TerminalData(terminal.isConnected(),
+    /**
+     * Compares branches by blocks, the P, Q and I values of a block being copied to primitive arrays and checked by
+     * the {@link DiffKernel} at once. Gives the same results as comparing the branches one by one.
+     */
+    List<DiffResult> diff(List<BranchDiffInfo> branchInfos1, List<BranchDiffInfo> branchInfos2) {
+        Objects.requireNonNull(branchInfos1);
+        Objects.requireNonNull(branchInfos2);
+        if (branchInfos1.size() != branchInfos2.size()) {
+            throw new IllegalArgumentException("Branch lists of different sizes: " + branchInfos1.size() + " and " + branchInfos2.size());
+        }
+        int blockLanes = Math.min(branchInfos1.size(), BLOCK_SIZE) * LANES;
+        double[] values1 = new double[blockLanes];
+        double[] values2 = new double[blockLanes];
+        double[] absoluteThresholds = new double[blockLanes];
+        double[] relativeThresholds = new double[blockLanes];
+        boolean[] equal = new boolean[blockLanes];
+        List<DiffResult> diffResults = new ArrayList<>(branchInfos1.size());
+        for (int start = 0; start < branchInfos1.size(); start += BLOCK_SIZE) {
+            int end = Math.min(start + BLOCK_SIZE, branchInfos1.size());
+            int lane = 0;
+            for (int i = start; i < end; i++) {
+                for (Side side : Side.values()) {
+                    BranchDiffInfo.TerminalData terminalData1 = branchInfos1.get(i).getTerminalData(side);
+                    BranchDiffInfo.TerminalData terminalData2 = branchInfos2.get(i).getTerminalData(side);
+                    int offset = thresholds.getOffset(DiffEquipmentType.BRANCHES, terminalData1.getvNom());
+                    lane = setLane(values1, values2, absoluteThresholds, relativeThresholds, lane, terminalData1.getP(), terminalData2.getP(), offset, ThresholdRule.Quantity.P);
+                    lane = setLane(values1, values2, absoluteThresholds, relativeThresholds, lane, terminalData1.getQ(), terminalData2.getQ(), offset, ThresholdRule.Quantity.Q);
+                    lane = setLane(values1, values2, absoluteThresholds, relativeThresholds, lane, terminalData1.getI(), terminalData2.getI(), offset, ThresholdRule.Quantity.I);
+                }
+            }
+            DiffKernel.compare(values1, values2, absoluteThresholds, relativeThresholds, equal, lane);
+            lane = 0;
+            for (int i = start; i < end; i++) {
+                BranchDiffInfo branchInfo1 = branchInfos1.get(i);
+                BranchDiffInfo branchInfo2 = branchInfos2.get(i);
+                Map<Side, Boolean> sideDifferent = new EnumMap<>(Side.class);
+                for (Side side : Side.values()) {
+                    boolean sideEqual = branchInfo1.getTerminalData(side).isConnected() == branchInfo2.getTerminalData(side).isConnected()
+                            && equal[lane] && equal[lane + 1] && equal[lane + 2];
+                    sideDifferent.put(side, !sideEqual);
+                    lane += 3;
+                }
+                diffResults.add(new BranchDiffResult(branchInfo1, branchInfo2, sideDifferent));
+            }
+        }
+        return diffResults;
+    }
+
+    private int setLane(double[] values1, double[] values2, double[] absoluteThresholds, double[] relativeThresholds, int lane,
+                        double value1, double value2, int offset, ThresholdRule.Quantity quantity) {
+        values1[lane] = value1;
+        values2[lane] = value2;
+        absoluteThresholds[lane] = thresholds.getAbsoluteThreshold(offset, quantity);
+        relativeThresholds[lane] = thresholds.getRelativeThreshold(offset, quantity);
+        return lane + 1;
+    }
+
+    private BranchDiffInfo.TerminalData getTerminalData(BranchDiffInfo branchDiffInfo, Terminal terminal, double currentLimit, NetworkIndex index,
+                                                        IdMapping mapping) {
+        VoltageLevel vl = terminal.getVoltageLevel();
+        return branchDiffInfo.new TerminalData(mapping.toId1(vl.getId()),
+                                               terminal.isConnected(),
                                                terminal.getP(),
                                                terminal.getQ(),
                                                terminal.getI(),
                                                currentLimit,
-                                               terminal.getVoltageLevel().getNominalV());
+                                               index.get(vl).getNominalV());
     }
 
     private boolean areEquals(BranchDiffInfo.TerminalData terminalData1, BranchDiffInfo.TerminalData terminalData2) {
+        int offset = thresholds.getOffset(DiffEquipmentType.BRANCHES, terminalData1.getvNom());
         return terminalData1.isConnected() == terminalData2.isConnected()
-               && DoubleMath.fuzzyEquals(terminalData1.getP(), terminalData2.getP(), config.getGenericThreshold())
-               && DoubleMath.fuzzyEquals(terminalData1.getQ(), terminalData2.getQ(), config.getGenericThreshold())
-               && DoubleMath.fuzzyEquals(terminalData1.getI(), terminalData2.getI(), config.getGenericThreshold());
+               && thresholds.areEqual(terminalData1.getP(), terminalData2.getP(), offset, ThresholdRule.Quantity.P)
+               && thresholds.areEqual(terminalData1.getQ(), terminalData2.getQ(), offset, ThresholdRule.Quantity.Q)
+               && thresholds.areEqual(terminalData1.getI(), terminalData2.getI(), offset, ThresholdRule.Quantity.I);
     }
 }
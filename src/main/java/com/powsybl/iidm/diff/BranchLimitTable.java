@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.powsybl.iidm.network.Branch;
+import com.powsybl.iidm.network.Branch.Side;
+import com.powsybl.iidm.network.CurrentLimits;
+import com.powsybl.iidm.network.LoadingLimits;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Permanent and temporary current limits of the sides of a set of branches, read once from the network and kept
+ * in primitive arrays. The temporary limits of a side are stored in increasing value order, so that the loading
+ * band of a current is found without going back to the limit objects.
+ * <p>
+ * The loading band of a current is 0 up to the permanent limit, k when it is above the permanent limit and up to the
+ * k-th temporary limit, and the number of temporary limits plus one above all of them. It is {@link #NO_BAND} when
+ * the current or the permanent limit is not defined.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class BranchLimitTable {
+
+    static final int NO_BAND = -1;
+
+    private static final int NO_ENTRY = -1;
+
+    private final TObjectIntHashMap<String> rows;
+    // indexed by 2 * row + side
+    private final double[] permanentLimits;
+    private final int[] temporaryLimitOffsets;
+    private final double[] temporaryLimitValues;
+    private final int[] acceptableDurations;
+
+    private BranchLimitTable(TObjectIntHashMap<String> rows, double[] permanentLimits, int[] temporaryLimitOffsets,
+                             double[] temporaryLimitValues, int[] acceptableDurations) {
+        this.rows = rows;
+        this.permanentLimits = permanentLimits;
+        this.temporaryLimitOffsets = temporaryLimitOffsets;
+        this.temporaryLimitValues = temporaryLimitValues;
+        this.acceptableDurations = acceptableDurations;
+    }
+
+    /**
+     * Reads the current limits of both sides of the given branches, each side being looked up once.
+     */
+    static BranchLimitTable of(Collection<? extends Branch<?>> branches) {
+        return of(branches, IdMapping.empty());
+    }
+
+    /**
+     * Reads the current limits of both sides of the given branches, keyed by their ids in the first network.
+     */
+    static BranchLimitTable of(Collection<? extends Branch<?>> branches, IdMapping mapping) {
+        Objects.requireNonNull(branches);
+        Objects.requireNonNull(mapping);
+        TObjectIntHashMap<String> rows = new TObjectIntHashMap<>(Math.max(16, branches.size() * 2), 0.5f, NO_ENTRY);
+        double[] permanentLimits = new double[2 * branches.size()];
+        int[] temporaryLimitOffsets = new int[2 * branches.size() + 1];
+        TDoubleArrayList temporaryLimitValues = new TDoubleArrayList();
+        TIntArrayList acceptableDurations = new TIntArrayList();
+        int row = 0;
+        for (Branch<?> branch : branches) {
+            rows.put(mapping.toId1(branch.getId()), row);
+            for (Side side : Side.values()) {
+                int cell = cell(row, side);
+                CurrentLimits currentLimits = branch.getCurrentLimits(side);
+                permanentLimits[cell] = currentLimits == null ? Double.NaN : currentLimits.getPermanentLimit();
+                if (currentLimits != null) {
+                    List<LoadingLimits.TemporaryLimit> temporaryLimits = currentLimits.getTemporaryLimits().stream()
+                            .filter(temporaryLimit -> !Double.isNaN(temporaryLimit.getValue()))
+                            .sorted(Comparator.comparingDouble(LoadingLimits.TemporaryLimit::getValue))
+                            .collect(Collectors.toList());
+                    for (LoadingLimits.TemporaryLimit temporaryLimit : temporaryLimits) {
+                        temporaryLimitValues.add(temporaryLimit.getValue());
+                        acceptableDurations.add(temporaryLimit.getAcceptableDuration());
+                    }
+                }
+                temporaryLimitOffsets[cell + 1] = temporaryLimitValues.size();
+            }
+            row++;
+        }
+        return new BranchLimitTable(rows, permanentLimits, temporaryLimitOffsets, temporaryLimitValues.toArray(), acceptableDurations.toArray());
+    }
+
+    private static int cell(int row, Side side) {
+        return 2 * row + side.ordinal();
+    }
+
+    private int cell(String branchId, Side side) {
+        int row = rows.get(Objects.requireNonNull(branchId));
+        if (row == NO_ENTRY) {
+            throw new IllegalArgumentException("Branch " + branchId + " not in the limit table");
+        }
+        return cell(row, Objects.requireNonNull(side));
+    }
+
+    boolean contains(String branchId) {
+        return rows.containsKey(branchId);
+    }
+
+    /**
+     * Returns the permanent current limit of a branch side, NaN if it has no current limits.
+     */
+    public double getPermanentLimit(String branchId, Side side) {
+        return permanentLimits[cell(branchId, side)];
+    }
+
+    public int getTemporaryLimitCount(String branchId, Side side) {
+        int cell = cell(branchId, side);
+        return temporaryLimitOffsets[cell + 1] - temporaryLimitOffsets[cell];
+    }
+
+    /**
+     * Returns the loading band of a current on a branch side.
+     */
+    public int getLoadingBand(String branchId, Side side, double i) {
+        int cell = cell(branchId, side);
+        if (Double.isNaN(i) || Double.isNaN(permanentLimits[cell])) {
+            return NO_BAND;
+        }
+        double current = Math.abs(i);
+        if (current <= permanentLimits[cell]) {
+            return 0;
+        }
+        int start = temporaryLimitOffsets[cell];
+        int end = temporaryLimitOffsets[cell + 1];
+        int position = Arrays.binarySearch(temporaryLimitValues, start, end, current);
+        // a current equal to a limit is within its band
+        return (position >= 0 ? position : -position - 1) - start + 1;
+    }
+
+    /**
+     * Returns the acceptable duration in seconds of a temporary loading band, that of its temporary limit.
+     */
+    public int getAcceptableDuration(String branchId, Side side, int band) {
+        int cell = cell(branchId, side);
+        int count = temporaryLimitOffsets[cell + 1] - temporaryLimitOffsets[cell];
+        if (band < 1 || band > count) {
+            throw new IllegalArgumentException("Not a temporary loading band: " + band);
+        }
+        return acceptableDurations[temporaryLimitOffsets[cell] + band - 1];
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.powsybl.iidm.network.Branch.Side;
+
+/**
+ * Pairs the branches found in only one of two networks by their endpoint signature: their type and the voltage
+ * levels and nominal voltages of both sides, in side order. Branches are bucketed by signature in one pass over each
+ * network; a bucket with one branch on each side is a match, and the branches of a bucket of parallel branches are
+ * paired greedily by increasing distance of their resistance and reactance.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class BranchMatcher {
+
+    private static final class Candidate {
+        private final String id1;
+        private final String id2;
+        private final double distance;
+
+        private Candidate(String id1, String id2, double distance) {
+            this.id1 = id1;
+            this.id2 = id2;
+            this.distance = distance;
+        }
+    }
+
+    private static final Comparator<Candidate> CANDIDATE_ORDER = Comparator.<Candidate>comparingDouble(candidate -> candidate.distance)
+            .thenComparing(candidate -> candidate.id1)
+            .thenComparing(candidate -> candidate.id2);
+
+    private BranchMatcher() {
+    }
+
+    /**
+     * Returns the ids of the second network matched to ids of the first network, by id of the first network.
+     */
+    static SortedMap<String, String> match(List<String> ids1, List<String> ids2, Map<String, BranchDiffInfo> infos1, Map<String, BranchDiffInfo> infos2) {
+        Objects.requireNonNull(ids1);
+        Objects.requireNonNull(ids2);
+        Objects.requireNonNull(infos1);
+        Objects.requireNonNull(infos2);
+        SortedMap<String, String> matches = new TreeMap<>();
+        if (ids1.isEmpty() || ids2.isEmpty()) {
+            return matches;
+        }
+        Map<String, List<String>> buckets2 = new HashMap<>();
+        for (String id2 : ids2) {
+            buckets2.computeIfAbsent(signature(infos2.get(id2)), k -> new ArrayList<>()).add(id2);
+        }
+        Map<String, List<String>> buckets1 = new HashMap<>();
+        for (String id1 : ids1) {
+            String signature = signature(infos1.get(id1));
+            if (buckets2.containsKey(signature)) {
+                buckets1.computeIfAbsent(signature, k -> new ArrayList<>()).add(id1);
+            }
+        }
+        for (Map.Entry<String, List<String>> e : buckets1.entrySet()) {
+            List<String> bucket1 = e.getValue();
+            List<String> bucket2 = buckets2.get(e.getKey());
+            if (bucket1.size() == 1 && bucket2.size() == 1) {
+                matches.put(bucket1.get(0), bucket2.get(0));
+            } else {
+                matchParallel(bucket1, bucket2, infos1, infos2, matches);
+            }
+        }
+        return matches;
+    }
+
+    private static void matchParallel(List<String> bucket1, List<String> bucket2, Map<String, BranchDiffInfo> infos1,
+                                      Map<String, BranchDiffInfo> infos2, Map<String, String> matches) {
+        List<Candidate> candidates = new ArrayList<>(bucket1.size() * bucket2.size());
+        for (String id1 : bucket1) {
+            for (String id2 : bucket2) {
+                candidates.add(new Candidate(id1, id2, distance(infos1.get(id1), infos2.get(id2))));
+            }
+        }
+        candidates.sort(CANDIDATE_ORDER);
+        Set<String> matched1 = new HashSet<>();
+        Set<String> matched2 = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (!matched1.contains(candidate.id1) && !matched2.contains(candidate.id2)) {
+                matched1.add(candidate.id1);
+                matched2.add(candidate.id2);
+                matches.put(candidate.id1, candidate.id2);
+            }
+        }
+    }
+
+    private static String signature(BranchDiffInfo info) {
+        BranchDiffInfo.TerminalData terminal1 = info.getTerminalData(Side.ONE);
+        BranchDiffInfo.TerminalData terminal2 = info.getTerminalData(Side.TWO);
+        return info.getType() + "|" + terminal1.getVoltageLevelId() + "|" + terminal2.getVoltageLevelId()
+                + "|" + terminal1.getvNom() + "|" + terminal2.getvNom();
+    }
+
+    private static double distance(BranchDiffInfo info1, BranchDiffInfo info2) {
+        double distance = Math.abs(info1.getR() - info2.getR()) + Math.abs(info1.getX() - info2.getX());
+        return Double.isNaN(distance) ? Double.POSITIVE_INFINITY : distance;
+    }
+}
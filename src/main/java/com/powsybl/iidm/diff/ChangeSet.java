@@ -0,0 +1,339 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import com.powsybl.commons.PowsyblException;
+
+/**
+ * The changed voltage levels, branches and switches of a diff, as a bitmap over the sorted ids of the equipments of
+ * both networks, the ids being those of the first network. Change sets of several diffs are combined by union or
+ * intersection, over the merged dictionaries when the compared networks differ.
+ * <p>
+ * Change sets are written in a binary file, gzip compressed if its name ends with {@code .gz}: each dictionary is
+ * front coded, each id being written as the length of the prefix shared with the previous id and the remaining
+ * characters, and each bitmap is written as the runs of changed ids, as variable length gaps and lengths.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class ChangeSet {
+
+    public enum EquipmentType {
+        VOLTAGE_LEVEL,
+        BRANCH,
+        SWITCH
+    }
+
+    private static final int MAGIC = 0x4e444353;
+
+    private static final int VERSION = 1;
+
+    private final Map<EquipmentType, String[]> dictionaries;
+    private final Map<EquipmentType, BitSet> changed;
+
+    private ChangeSet(Map<EquipmentType, String[]> dictionaries, Map<EquipmentType, BitSet> changed) {
+        this.dictionaries = dictionaries;
+        this.changed = changed;
+    }
+
+    /**
+     * Builds the change set of diff results, the dictionaries being the equipments of both snapshots. A branch
+     * matched structurally is changed under both of its ids.
+     */
+    static ChangeSet of(DiffSnapshot snapshot1, DiffSnapshot snapshot2, NetworkDiffResults ndifr) {
+        Objects.requireNonNull(snapshot1);
+        Objects.requireNonNull(snapshot2);
+        Objects.requireNonNull(ndifr);
+        Set<String> changedVlIds = getChangedIds(ndifr.vlDiffs, ndifr.getAddedVoltageLevels(), ndifr.getRemovedVoltageLevels());
+        Set<String> changedBranchIds = getChangedIds(ndifr.branchDiffs, ndifr.getAddedBranches(), ndifr.getRemovedBranches());
+        for (Map.Entry<String, String> e : ndifr.getMatchedBranches().entrySet()) {
+            if (changedBranchIds.contains(e.getKey())) {
+                changedBranchIds.add(e.getValue());
+            }
+        }
+        Set<String> switchIds = new HashSet<>();
+        for (VoltageLevelDiffInfo vlInfo : snapshot1.getVoltageLevels().values()) {
+            switchIds.addAll(vlInfo.getSwitchesStatus().keySet());
+        }
+        for (VoltageLevelDiffInfo vlInfo : snapshot2.getVoltageLevels().values()) {
+            switchIds.addAll(vlInfo.getSwitchesStatus().keySet());
+        }
+        Set<String> changedSwitchIds = new HashSet<>();
+        for (String vlId : changedVlIds) {
+            VoltageLevelDiffInfo vlInfo1 = snapshot1.getVoltageLevels().get(vlId);
+            VoltageLevelDiffInfo vlInfo2 = snapshot2.getVoltageLevels().get(vlId);
+            if (vlInfo1 == null || vlInfo2 == null) {
+                changedSwitchIds.addAll((vlInfo1 != null ? vlInfo1 : vlInfo2).getSwitchesStatus().keySet());
+            } else {
+                MapDifference<String, Boolean> switchesDiff = Maps.difference(vlInfo1.getSwitchesStatus(), vlInfo2.getSwitchesStatus());
+                changedSwitchIds.addAll(switchesDiff.entriesDiffering().keySet());
+                changedSwitchIds.addAll(switchesDiff.entriesOnlyOnLeft().keySet());
+                changedSwitchIds.addAll(switchesDiff.entriesOnlyOnRight().keySet());
+            }
+        }
+        Set<String> vlIds = new HashSet<>(snapshot1.getVoltageLevels().keySet());
+        vlIds.addAll(snapshot2.getVoltageLevels().keySet());
+        Set<String> branchIds = new HashSet<>(snapshot1.getBranches().keySet());
+        branchIds.addAll(snapshot2.getBranches().keySet());
+        Map<EquipmentType, String[]> dictionaries = new EnumMap<>(EquipmentType.class);
+        Map<EquipmentType, BitSet> changed = new EnumMap<>(EquipmentType.class);
+        addSection(EquipmentType.VOLTAGE_LEVEL, vlIds, changedVlIds, dictionaries, changed);
+        addSection(EquipmentType.BRANCH, branchIds, changedBranchIds, dictionaries, changed);
+        addSection(EquipmentType.SWITCH, switchIds, changedSwitchIds, dictionaries, changed);
+        return new ChangeSet(dictionaries, changed);
+    }
+
+    private static Set<String> getChangedIds(List<DiffResult> diffResults, List<String> addedIds, List<String> removedIds) {
+        Set<String> changedIds = new HashSet<>(addedIds);
+        changedIds.addAll(removedIds);
+        for (DiffResult diffResult : diffResults) {
+            if (diffResult.isDifferent()) {
+                changedIds.add(diffResult.getId());
+            }
+        }
+        return changedIds;
+    }
+
+    private static void addSection(EquipmentType type, Collection<String> ids, Collection<String> changedIds,
+                                   Map<EquipmentType, String[]> dictionaries, Map<EquipmentType, BitSet> changed) {
+        String[] dictionary = ids.toArray(new String[0]);
+        Arrays.sort(dictionary);
+        BitSet bits = new BitSet(dictionary.length);
+        for (String id : changedIds) {
+            int position = Arrays.binarySearch(dictionary, id);
+            if (position >= 0) {
+                bits.set(position);
+            }
+        }
+        dictionaries.put(type, dictionary);
+        changed.put(type, bits);
+    }
+
+    /**
+     * Returns the sorted ids of the equipments of a type.
+     */
+    public List<String> getIds(EquipmentType type) {
+        return Collections.unmodifiableList(Arrays.asList(dictionaries.get(Objects.requireNonNull(type))));
+    }
+
+    /**
+     * Returns the sorted ids of the changed equipments of a type.
+     */
+    public List<String> getChangedIds(EquipmentType type) {
+        String[] dictionary = dictionaries.get(Objects.requireNonNull(type));
+        BitSet bits = changed.get(type);
+        List<String> changedIds = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            changedIds.add(dictionary[i]);
+        }
+        return changedIds;
+    }
+
+    public int getChangedCount(EquipmentType type) {
+        return changed.get(Objects.requireNonNull(type)).cardinality();
+    }
+
+    public boolean isChanged(EquipmentType type, String id) {
+        Objects.requireNonNull(id);
+        int position = Arrays.binarySearch(dictionaries.get(Objects.requireNonNull(type)), id);
+        return position >= 0 && changed.get(type).get(position);
+    }
+
+    /**
+     * Returns the equipments changed in this change set or in the other one.
+     */
+    public ChangeSet union(ChangeSet other) {
+        return combine(other, BitSet::or);
+    }
+
+    /**
+     * Returns the equipments changed in both this change set and the other one.
+     */
+    public ChangeSet intersection(ChangeSet other) {
+        return combine(other, BitSet::and);
+    }
+
+    private ChangeSet combine(ChangeSet other, BiConsumer<BitSet, BitSet> operation) {
+        Objects.requireNonNull(other);
+        Map<EquipmentType, String[]> combinedDictionaries = new EnumMap<>(EquipmentType.class);
+        Map<EquipmentType, BitSet> combinedChanged = new EnumMap<>(EquipmentType.class);
+        for (EquipmentType type : EquipmentType.values()) {
+            String[] dictionary1 = dictionaries.get(type);
+            String[] dictionary2 = other.dictionaries.get(type);
+            // change sets of the same networks share their dictionaries, their bitmaps are combined directly
+            String[] dictionary = Arrays.equals(dictionary1, dictionary2) ? dictionary1 : merge(dictionary1, dictionary2);
+            BitSet bits = remap(dictionary1, changed.get(type), dictionary);
+            operation.accept(bits, remap(dictionary2, other.changed.get(type), dictionary));
+            combinedDictionaries.put(type, dictionary);
+            combinedChanged.put(type, bits);
+        }
+        return new ChangeSet(combinedDictionaries, combinedChanged);
+    }
+
+    private static String[] merge(String[] dictionary1, String[] dictionary2) {
+        List<String> merged = new ArrayList<>(dictionary1.length + dictionary2.length);
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < dictionary1.length || i2 < dictionary2.length) {
+            int c = i1 == dictionary1.length ? 1 : i2 == dictionary2.length ? -1 : dictionary1[i1].compareTo(dictionary2[i2]);
+            if (c <= 0) {
+                merged.add(dictionary1[i1++]);
+                if (c == 0) {
+                    i2++;
+                }
+            } else {
+                merged.add(dictionary2[i2++]);
+            }
+        }
+        return merged.toArray(new String[0]);
+    }
+
+    private static BitSet remap(String[] dictionary, BitSet bits, String[] mergedDictionary) {
+        if (dictionary == mergedDictionary) {
+            return (BitSet) bits.clone();
+        }
+        BitSet remapped = new BitSet(mergedDictionary.length);
+        int position = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            // both dictionaries are sorted, the positions only increase
+            while (!mergedDictionary[position].equals(dictionary[i])) {
+                position++;
+            }
+            remapped.set(position);
+        }
+        return remapped;
+    }
+
+    public void write(Path file) {
+        Objects.requireNonNull(file);
+        try (DataOutputStream os = new DataOutputStream(CompressedStreams.newOutputStream(file, false, 1))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            for (EquipmentType type : EquipmentType.values()) {
+                writeDictionary(os, dictionaries.get(type));
+                writeBitmap(os, changed.get(type));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ChangeSet read(Path file) {
+        Objects.requireNonNull(file);
+        try (DataInputStream is = new DataInputStream(CompressedStreams.newInputStream(file))) {
+            if (is.readInt() != MAGIC) {
+                throw new PowsyblException("Not a change set file: " + file);
+            }
+            int version = is.readInt();
+            if (version != VERSION) {
+                throw new PowsyblException("Unsupported change set version " + version + ": " + file);
+            }
+            Map<EquipmentType, String[]> dictionaries = new EnumMap<>(EquipmentType.class);
+            Map<EquipmentType, BitSet> changed = new EnumMap<>(EquipmentType.class);
+            for (EquipmentType type : EquipmentType.values()) {
+                dictionaries.put(type, readDictionary(is));
+                changed.put(type, readBitmap(is));
+            }
+            return new ChangeSet(dictionaries, changed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream os, String[] dictionary) throws IOException {
+        writeVarInt(os, dictionary.length);
+        String previous = "";
+        for (String id : dictionary) {
+            int prefix = 0;
+            int maxPrefix = Math.min(previous.length(), id.length());
+            while (prefix < maxPrefix && previous.charAt(prefix) == id.charAt(prefix)) {
+                prefix++;
+            }
+            writeVarInt(os, prefix);
+            os.writeUTF(id.substring(prefix));
+            previous = id;
+        }
+    }
+
+    private static String[] readDictionary(DataInputStream is) throws IOException {
+        String[] dictionary = new String[readVarInt(is)];
+        String previous = "";
+        for (int i = 0; i < dictionary.length; i++) {
+            int prefix = readVarInt(is);
+            dictionary[i] = previous.substring(0, prefix) + is.readUTF();
+            previous = dictionary[i];
+        }
+        return dictionary;
+    }
+
+    private static void writeBitmap(DataOutputStream os, BitSet bits) throws IOException {
+        int runs = 0;
+        for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(bits.nextClearBit(start))) {
+            runs++;
+        }
+        writeVarInt(os, runs);
+        int end = 0;
+        for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(end)) {
+            int runEnd = bits.nextClearBit(start);
+            writeVarInt(os, start - end);
+            writeVarInt(os, runEnd - start);
+            end = runEnd;
+        }
+    }
+
+    private static BitSet readBitmap(DataInputStream is) throws IOException {
+        BitSet bits = new BitSet();
+        int runs = readVarInt(is);
+        int end = 0;
+        for (int i = 0; i < runs; i++) {
+            int start = end + readVarInt(is);
+            end = start + readVarInt(is);
+            bits.set(start, end);
+        }
+        return bits;
+    }
+
+    private static void writeVarInt(DataOutputStream os, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7f) != 0) {
+            os.writeByte((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        os.writeByte(remaining);
+    }
+
+    private static int readVarInt(DataInputStream is) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = is.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new PowsyblException("Invalid variable length integer in change set");
+    }
+}
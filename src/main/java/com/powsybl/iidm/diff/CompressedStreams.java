@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.powsybl.commons.json.JsonUtil;
+
+/**
+ * Output and input streams of diff result files, gzip compressed when requested or when the file name ends with
+ * {@code .gz}. Output goes through a large buffer. With several compression threads, the output is cut in blocks
+ * compressed in parallel as separate gzip members, which concatenated form a valid gzip file. Input streams detect
+ * gzip files by their magic number, so that readers handle compressed and plain files alike.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class CompressedStreams {
+
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private CompressedStreams() {
+    }
+
+    public static boolean hasGzipExtension(Path file) {
+        return file.getFileName().toString().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * @param gzip compress the output, whatever the file name
+     * @param compressionThreads the number of threads compressing blocks in parallel, 1 to compress on the
+     *                           writing thread
+     */
+    public static OutputStream newOutputStream(Path file, boolean gzip, int compressionThreads) throws IOException {
+        Objects.requireNonNull(file);
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        OutputStream os = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        if (!gzip && !hasGzipExtension(file)) {
+            return os;
+        }
+        return compressionThreads > 1 ? new ParallelGzipOutputStream(os, compressionThreads) : new GZIPOutputStream(os, BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a plain or gzip compressed file.
+     */
+    public static InputStream newInputStream(Path file) throws IOException {
+        Objects.requireNonNull(file);
+        return decompress(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Decompresses a stream if it starts with the gzip magic number.
+     */
+    public static InputStream decompress(InputStream is) throws IOException {
+        InputStream bis = is.markSupported() ? is : new BufferedInputStream(is, BUFFER_SIZE);
+        bis.mark(2);
+        int magic = bis.read() | (bis.read() << 8);
+        bis.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(bis, BUFFER_SIZE) : bis;
+    }
+
+    static boolean isGzip(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return (is.read() | (is.read() << 8)) == GZIP_MAGIC;
+        }
+    }
+
+    static void writeJson(Path file, boolean gzip, int compressionThreads, Consumer<JsonGenerator> consumer) {
+        Objects.requireNonNull(consumer);
+        try (Writer writer = new OutputStreamWriter(newOutputStream(file, gzip, compressionThreads), StandardCharsets.UTF_8)) {
+            JsonUtil.writeJson(writer, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compresses blocks of the output on worker threads, each block as a gzip member, and writes the members in order.
+     * At most two blocks per thread are pending, so that memory stays bounded.
+     */
+    private static final class ParallelGzipOutputStream extends OutputStream {
+
+        private final OutputStream os;
+        private final ExecutorService executor;
+        private final int maxPendingBlocks;
+        private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+        private byte[] block = new byte[BUFFER_SIZE];
+        private int blockSize;
+        private int blockCount;
+        private boolean closed;
+
+        private ParallelGzipOutputStream(OutputStream os, int threads) {
+            this.os = os;
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("network-diff-gzip-%d").setDaemon(true).build());
+            maxPendingBlocks = 2 * threads;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (blockSize == block.length) {
+                submitBlock();
+            }
+            block[blockSize++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (blockSize == block.length) {
+                    submitBlock();
+                }
+                int count = Math.min(remaining, block.length - blockSize);
+                System.arraycopy(b, offset, block, blockSize, count);
+                blockSize += count;
+                offset += count;
+                remaining -= count;
+            }
+        }
+
+        private void submitBlock() throws IOException {
+            if (blockSize == 0) {
+                return;
+            }
+            byte[] data = blockSize == block.length ? block : Arrays.copyOf(block, blockSize);
+            pendingBlocks.add(executor.submit(() -> compress(data)));
+            blockCount++;
+            block = new byte[BUFFER_SIZE];
+            blockSize = 0;
+            while (pendingBlocks.size() >= maxPendingBlocks) {
+                writeFirstPendingBlock();
+            }
+        }
+
+        private static byte[] compress(byte[] data) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4);
+            try (GZIPOutputStream gzos = new GZIPOutputStream(bos, BUFFER_SIZE)) {
+                gzos.write(data);
+            }
+            return bos.toByteArray();
+        }
+
+        private void writeFirstPendingBlock() throws IOException {
+            try {
+                os.write(pendingBlocks.remove().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Only writes the compressed blocks, a gzip member cannot be flushed before it is complete.
+         */
+        @Override
+        public void flush() throws IOException {
+            while (!pendingBlocks.isEmpty()) {
+                writeFirstPendingBlock();
+            }
+            os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                submitBlock();
+                if (blockCount == 0) {
+                    // an empty gzip file still has a member
+                    os.write(compress(new byte[0]));
+                }
+                flush();
+            } finally {
+                executor.shutdownNow();
+                os.close();
+            }
+        }
+    }
+}
@@ -6,7 +6,10 @@
  */
 package com.powsybl.iidm.diff;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 import com.powsybl.commons.config.ModuleConfig;
 import com.powsybl.commons.config.PlatformConfig;
@@ -19,6 +22,14 @@ public class DiffConfig {
 
     public static final double EPSILON_DEFAULT = 0.0;
     public static final boolean FILTER_DIFF_DEFAULT = true;
+    public static final int PREFETCH_THREADS_DEFAULT = 0;
+    public static final boolean FINGERPRINT_FILTER_DEFAULT = false;
+    public static final boolean TOPOLOGY_DIFF_DEFAULT = false;
+    public static final boolean BALANCE_DIFF_DEFAULT = false;
+    public static final boolean BALANCE_FILTER_DEFAULT = false;
+    public static final boolean LOADING_DIFF_DEFAULT = false;
+    public static final boolean STRUCTURAL_MATCHING_DEFAULT = false;
+    public static final boolean CHANGE_SET_DEFAULT = false;
 
     private double genericThreshold;
 
@@ -26,6 +37,24 @@ public class DiffConfig {
 
     private boolean filterDifferent;
 
+    private int prefetchThreads = PREFETCH_THREADS_DEFAULT;
+
+    private boolean fingerprintFilter = FINGERPRINT_FILTER_DEFAULT;
+
+    private boolean topologyDiff = TOPOLOGY_DIFF_DEFAULT;
+
+    private boolean balanceDiff = BALANCE_DIFF_DEFAULT;
+
+    private boolean balanceFilter = BALANCE_FILTER_DEFAULT;
+
+    private boolean loadingDiff = LOADING_DIFF_DEFAULT;
+
+    private boolean structuralMatching = STRUCTURAL_MATCHING_DEFAULT;
+
+    private boolean changeSet = CHANGE_SET_DEFAULT;
+
+    private List<ThresholdRule> thresholdRules = Collections.emptyList();
+
     public static DiffConfig load() {
         return load(PlatformConfig.defaultConfig());
     }
@@ -35,13 +64,43 @@ public class DiffConfig {
         double epsilon = EPSILON_DEFAULT;
         double voltageEpsilon = EPSILON_DEFAULT;
         boolean filterDiff = FILTER_DIFF_DEFAULT;
+        int prefetchThreads = PREFETCH_THREADS_DEFAULT;
+        boolean fingerprintFilter = FINGERPRINT_FILTER_DEFAULT;
+        boolean topologyDiff = TOPOLOGY_DIFF_DEFAULT;
+        boolean balanceDiff = BALANCE_DIFF_DEFAULT;
+        boolean balanceFilter = BALANCE_FILTER_DEFAULT;
+        boolean loadingDiff = LOADING_DIFF_DEFAULT;
+        boolean structuralMatching = STRUCTURAL_MATCHING_DEFAULT;
+        boolean changeSet = CHANGE_SET_DEFAULT;
+        List<ThresholdRule> thresholdRules = Collections.emptyList();
         if (platformConfig.moduleExists("networks-diff")) {
             ModuleConfig config = platformConfig.getModuleConfig("networks-diff");
             epsilon = config.getDoubleProperty("generic-threshold", EPSILON_DEFAULT);
             voltageEpsilon = config.getDoubleProperty("voltage-threshold", EPSILON_DEFAULT);
             filterDiff = config.getBooleanProperty("filter-diff", FILTER_DIFF_DEFAULT);
+            prefetchThreads = config.getIntProperty("prefetch-threads", PREFETCH_THREADS_DEFAULT);
+            fingerprintFilter = config.getBooleanProperty("fingerprint-filter", FINGERPRINT_FILTER_DEFAULT);
+            topologyDiff = config.getBooleanProperty("topology-diff", TOPOLOGY_DIFF_DEFAULT);
+            balanceDiff = config.getBooleanProperty("balance-diff", BALANCE_DIFF_DEFAULT);
+            balanceFilter = config.getBooleanProperty("balance-filter", BALANCE_FILTER_DEFAULT);
+            loadingDiff = config.getBooleanProperty("loading-diff", LOADING_DIFF_DEFAULT);
+            structuralMatching = config.getBooleanProperty("structural-matching", STRUCTURAL_MATCHING_DEFAULT);
+            changeSet = config.getBooleanProperty("change-set", CHANGE_SET_DEFAULT);
+            thresholdRules = config.getStringListProperty("threshold-rules", Collections.emptyList()).stream()
+                                   .map(ThresholdRule::parse)
+                                   .collect(Collectors.toList());
         }
-        return new DiffConfig(epsilon, voltageEpsilon, filterDiff);
+        DiffConfig diffConfig = new DiffConfig(epsilon, voltageEpsilon, filterDiff);
+        diffConfig.setPrefetchThreads(prefetchThreads);
+        diffConfig.setFingerprintFilter(fingerprintFilter);
+        diffConfig.setTopologyDiff(topologyDiff);
+        diffConfig.setBalanceDiff(balanceDiff);
+        diffConfig.setBalanceFilter(balanceFilter);
+        diffConfig.setLoadingDiff(loadingDiff);
+        diffConfig.setStructuralMatching(structuralMatching);
+        diffConfig.setChangeSet(changeSet);
+        diffConfig.setThresholdRules(thresholdRules);
+        return diffConfig;
     }
 
     public DiffConfig(double genericThreshold, boolean filterDifferent) {
@@ -81,12 +140,128 @@ public class DiffConfig {
         this.filterDifferent = filterDifferent;
     }
 
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * Number of threads reading both networks ahead of the comparison, 0 to read them while comparing.
+     */
+    public void setPrefetchThreads(int prefetchThreads) {
+        if (prefetchThreads < 0) {
+            throw new IllegalArgumentException("Negative number of prefetch threads not permitted");
+        }
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    public boolean isFingerprintFilter() {
+        return fingerprintFilter;
+    }
+
+    /**
+     * When enabled, equipments whose values fall in the same threshold-wide buckets in both networks are skipped
+     * before the exact comparison.
+     */
+    public void setFingerprintFilter(boolean fingerprintFilter) {
+        this.fingerprintFilter = fingerprintFilter;
+    }
+
+    public boolean isTopologyDiff() {
+        return topologyDiff;
+    }
+
+    /**
+     * When enabled, the bus splits and merges and the component changes of the whole networks are compared too.
+     */
+    public void setTopologyDiff(boolean topologyDiff) {
+        this.topologyDiff = topologyDiff;
+    }
+
+    public boolean isBalanceDiff() {
+        return balanceDiff;
+    }
+
+    /**
+     * When enabled, the power balances of the voltage levels and synchronous components are compared too.
+     */
+    public void setBalanceDiff(boolean balanceDiff) {
+        this.balanceDiff = balanceDiff;
+    }
+
+    public boolean isBalanceFilter() {
+        return balanceFilter;
+    }
+
+    /**
+     * When enabled, the power balances are compared first, and only the voltage levels whose balance changed and
+     * their branches are compared in detail. Flows redistributed between the branches of a voltage level without
+     * changing its balance are not found.
+     */
+    public void setBalanceFilter(boolean balanceFilter) {
+        this.balanceFilter = balanceFilter;
+    }
+
+    public boolean isLoadingDiff() {
+        return loadingDiff;
+    }
+
+    /**
+     * When enabled, the branch sides whose loading class changed, against their permanent and temporary current
+     * limits, are reported too.
+     */
+    public void setLoadingDiff(boolean loadingDiff) {
+        this.loadingDiff = loadingDiff;
+    }
+
+    public boolean isStructuralMatching() {
+        return structuralMatching;
+    }
+
+    /**
+     * When enabled, the branches found in only one network are matched by their type, voltage levels and nominal
+     * voltages, and matched branches are compared instead of being reported as added and removed.
+     */
+    public void setStructuralMatching(boolean structuralMatching) {
+        this.structuralMatching = structuralMatching;
+    }
+
+    public boolean isChangeSet() {
+        return changeSet;
+    }
+
+    /**
+     * When enabled, the changed voltage levels, branches and switches are also collected in a {@link ChangeSet}.
+     */
+    public void setChangeSet(boolean changeSet) {
+        this.changeSet = changeSet;
+    }
+
+    public List<ThresholdRule> getThresholdRules() {
+        return thresholdRules;
+    }
+
+    /**
+     * Tolerances per equipment type, nominal voltage and quantity, overriding the global thresholds.
+     */
+    public void setThresholdRules(List<ThresholdRule> thresholdRules) {
+        this.thresholdRules = List.copyOf(thresholdRules);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + " [" +
                 "filterDifferent=" + filterDifferent +
                 ", genericThreshold=" + genericThreshold +
                 ", voltageThreshold=" + voltageThreshold +
+                ", prefetchThreads=" + prefetchThreads +
+                ", fingerprintFilter=" + fingerprintFilter +
+                ", topologyDiff=" + topologyDiff +
+                ", balanceDiff=" + balanceDiff +
+                ", balanceFilter=" + balanceFilter +
+                ", loadingDiff=" + loadingDiff +
+                ", structuralMatching=" + structuralMatching +
+                ", changeSet=" + changeSet +
+                ", thresholdRules=" + thresholdRules +
                 "]";
     }
 
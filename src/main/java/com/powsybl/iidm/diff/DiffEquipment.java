@@ -10,6 +10,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import com.powsybl.iidm.network.Country;
+
 /**
  *
  * @author Massimo Ferraro <massimo.ferraro@acotel-group.com>
@@ -19,6 +21,11 @@ public class DiffEquipment {
     private List<DiffEquipmentType> equipmentTypes = Collections.singletonList(DiffEquipmentType.ALL);
     private List<String> voltageLevels = null;
     private List<String> branches = null;
+    private List<Country> countries = null;
+    private List<String> substations = null;
+    private double minNominalV = Double.NaN;
+    private double maxNominalV = Double.NaN;
+    private String idRegex = null;
 
     public List<DiffEquipmentType> getEquipmentTypes() {
         return equipmentTypes;
@@ -43,4 +50,61 @@ public class DiffEquipment {
     public void setBranches(List<String> branches) {
         this.branches = branches;
     }
+
+    public List<Country> getCountries() {
+        return countries;
+    }
+
+    /**
+     * Restricts the diff to the equipments of the substations of the given countries, all of them if null.
+     */
+    public void setCountries(List<Country> countries) {
+        this.countries = countries;
+    }
+
+    public List<String> getSubstations() {
+        return substations;
+    }
+
+    /**
+     * Restricts the diff to the equipments of the given substations, all of them if null.
+     */
+    public void setSubstations(List<String> substations) {
+        this.substations = substations;
+    }
+
+    public double getMinNominalV() {
+        return minNominalV;
+    }
+
+    /**
+     * Restricts the diff to the equipments of voltage levels with a nominal voltage greater than or equal to the
+     * given one, no lower bound if NaN.
+     */
+    public void setMinNominalV(double minNominalV) {
+        this.minNominalV = minNominalV;
+    }
+
+    public double getMaxNominalV() {
+        return maxNominalV;
+    }
+
+    /**
+     * Restricts the diff to the equipments of voltage levels with a nominal voltage lower than or equal to the
+     * given one, no upper bound if NaN.
+     */
+    public void setMaxNominalV(double maxNominalV) {
+        this.maxNominalV = maxNominalV;
+    }
+
+    public String getIdRegex() {
+        return idRegex;
+    }
+
+    /**
+     * Restricts the diff to the equipments whose id matches the given regular expression, all of them if null.
+     */
+    public void setIdRegex(String idRegex) {
+        this.idRegex = idRegex;
+    }
 }
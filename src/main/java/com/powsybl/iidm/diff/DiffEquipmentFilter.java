@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.powsybl.iidm.network.Branch;
+import com.powsybl.iidm.network.Country;
+import com.powsybl.iidm.network.Substation;
+import com.powsybl.iidm.network.VoltageLevel;
+
+/**
+ * The country, substation, nominal voltage and id filters of a {@link DiffEquipment}, compiled once and applied
+ * while the equipment ids are enumerated, so that excluded equipments are never read. A voltage level is accepted if
+ * its id and its location match, a branch if its id matches and the location of at least one of its voltage levels.
+ * The equipments of a second network are tested with their ids and the ids of their substations in the first network.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffEquipmentFilter {
+
+    private final Pattern idPattern;
+    private final Set<String> countries;
+    private final Set<String> substationIds;
+    private final double minNominalV;
+    private final double maxNominalV;
+
+    private DiffEquipmentFilter(Pattern idPattern, Set<String> countries, Set<String> substationIds, double minNominalV, double maxNominalV) {
+        this.idPattern = idPattern;
+        this.countries = countries;
+        this.substationIds = substationIds;
+        this.minNominalV = minNominalV;
+        this.maxNominalV = maxNominalV;
+    }
+
+    static DiffEquipmentFilter of(DiffEquipment diffEquipment) {
+        Objects.requireNonNull(diffEquipment);
+        return new DiffEquipmentFilter(diffEquipment.getIdRegex() != null ? Pattern.compile(diffEquipment.getIdRegex()) : null,
+                                       diffEquipment.getCountries() != null ? diffEquipment.getCountries().stream().map(Country::name).collect(Collectors.toSet()) : null,
+                                       diffEquipment.getSubstations() != null ? Set.copyOf(diffEquipment.getSubstations()) : null,
+                                       Double.isNaN(diffEquipment.getMinNominalV()) ? Double.NEGATIVE_INFINITY : diffEquipment.getMinNominalV(),
+                                       Double.isNaN(diffEquipment.getMaxNominalV()) ? Double.POSITIVE_INFINITY : diffEquipment.getMaxNominalV());
+    }
+
+    boolean isIdAccepted(String id) {
+        return idPattern == null || idPattern.matcher(id).matches();
+    }
+
+    /**
+     * @param country the country name of the substation, an empty string if it is not defined
+     */
+    boolean isLocationAccepted(String substationId, String country, double nominalV) {
+        return (countries == null || countries.contains(country))
+                && (substationIds == null || substationIds.contains(substationId))
+                && nominalV >= minNominalV && nominalV <= maxNominalV;
+    }
+
+    private boolean isLocationAccepted(VoltageLevel vl, IdMapping mapping) {
+        Substation substation = vl.getSubstation();
+        return isLocationAccepted(mapping.toId1(substation.getId()), substation.getCountry().map(Country::name).orElse(""), vl.getNominalV());
+    }
+
+    boolean test(VoltageLevel vl) {
+        return test(vl, IdMapping.empty());
+    }
+
+    boolean test(VoltageLevel vl, IdMapping mapping) {
+        return isIdAccepted(mapping.toId1(vl.getId())) && isLocationAccepted(vl, mapping);
+    }
+
+    boolean test(Branch<?> branch) {
+        return test(branch, IdMapping.empty());
+    }
+
+    boolean test(Branch<?> branch, IdMapping mapping) {
+        return isIdAccepted(mapping.toId1(branch.getId()))
+                && (isLocationAccepted(branch.getTerminal1().getVoltageLevel(), mapping) || isLocationAccepted(branch.getTerminal2().getVoltageLevel(), mapping));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.powsybl.iidm.network.Branch.Side;
+
+/**
+ * Cheap fingerprints of the compared quantities, with values quantized in buckets as wide as the thresholds.
+ * Two values in the same bucket are closer than the threshold, so equal fingerprints mean equal equipments
+ * (up to a 64 bits hash collision), while different fingerprints, including values close to a bucket boundary,
+ * need the exact comparison of the {@link DiffProc}.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffFingerprint {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    // above 2^52 buckets, bucket indexes are no longer exact and values are hashed as they are
+    private static final double MAX_BUCKET = 0x1p52;
+
+    private static final int NAN = 0;
+    private static final int BUCKET = 1;
+    private static final int RAW = 2;
+
+    private DiffFingerprint() {
+    }
+
+    static long of(VoltageLevelDiffInfo vlInfo, ThresholdTable thresholds) {
+        double threshold = thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, vlInfo.getNominalVoltage()),
+                                                           ThresholdRule.Quantity.V);
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        putQuantized(hasher, vlInfo.getMinV(), threshold);
+        putQuantized(hasher, vlInfo.getMaxV(), threshold);
+        hasher.putLong(vlInfo.getNoBus());
+        for (Map.Entry<String, Boolean> e : sorted(vlInfo.getSwitchesStatus()).entrySet()) {
+            hasher.putString(e.getKey(), StandardCharsets.UTF_8).putBoolean(e.getValue());
+        }
+        for (Map.Entry<String, Double> e : sorted(vlInfo.getBusbarsVoltage()).entrySet()) {
+            hasher.putString(e.getKey(), StandardCharsets.UTF_8);
+            // busbar sections without voltage are compared as 0
+            putQuantized(hasher, Double.isNaN(e.getValue()) ? 0 : e.getValue(), threshold);
+        }
+        return hasher.hash().asLong();
+    }
+
+    static long of(BranchDiffInfo branchInfo, ThresholdTable thresholds) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        for (Side side : Side.values()) {
+            BranchDiffInfo.TerminalData terminalData = branchInfo.getTerminalData(side);
+            int offset = thresholds.getOffset(DiffEquipmentType.BRANCHES, terminalData.getvNom());
+            hasher.putBoolean(terminalData.isConnected());
+            putQuantized(hasher, terminalData.getP(), thresholds.getAbsoluteThreshold(offset, ThresholdRule.Quantity.P));
+            putQuantized(hasher, terminalData.getQ(), thresholds.getAbsoluteThreshold(offset, ThresholdRule.Quantity.Q));
+            putQuantized(hasher, terminalData.getI(), thresholds.getAbsoluteThreshold(offset, ThresholdRule.Quantity.I));
+        }
+        return hasher.hash().asLong();
+    }
+
+    private static <T> SortedMap<String, T> sorted(Map<String, T> map) {
+        // the maps read from snapshots are already sorted by id
+        return map instanceof SortedMap && ((SortedMap<String, T>) map).comparator() == null ? (SortedMap<String, T>) map : new TreeMap<>(map);
+    }
+
+    private static void putQuantized(Hasher hasher, double value, double threshold) {
+        if (Double.isNaN(value)) {
+            hasher.putInt(NAN);
+            return;
+        }
+        double bucket = threshold > 0 ? Math.floor(value / threshold) : Double.NaN;
+        if (Math.abs(bucket) < MAX_BUCKET) {
+            hasher.putInt(BUCKET).putLong((long) bucket);
+        } else {
+            hasher.putInt(RAW).putLong(Double.doubleToLongBits(value));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+/**
+ * Tolerance checks over primitive arrays of compared values, one lane per value. The loop has no data dependent
+ * branch, so that the JIT compiler can vectorize it.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffKernel {
+
+    private DiffKernel() {
+    }
+
+    /**
+     * Compares two values like {@link com.google.common.math.DoubleMath#fuzzyEquals}, with a tolerance that is the
+     * largest of the absolute one and of the relative one scaled by the values.
+     */
+    static boolean areEqual(double value1, double value2, double absoluteThreshold, double relativeThreshold) {
+        double delta = Math.abs(value1 - value2);
+        double scale = Math.max(Math.abs(value1), Math.abs(value2));
+        return delta <= absoluteThreshold
+                | delta <= relativeThreshold * scale & delta < Double.POSITIVE_INFINITY
+                | value1 == value2
+                | Double.isNaN(value1) & Double.isNaN(value2);
+    }
+
+    /**
+     * Sets {@code equal[i]} for the first {@code length} lanes of the arrays.
+     */
+    static void compare(double[] values1, double[] values2, double[] absoluteThresholds, double[] relativeThresholds,
+                        boolean[] equal, int length) {
+        for (int i = 0; i < length; i++) {
+            equal[i] = areEqual(values1[i], values2[i], absoluteThresholds[i], relativeThresholds[i]);
+        }
+    }
+}
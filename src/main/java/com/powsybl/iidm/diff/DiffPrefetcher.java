@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Reads the compared quantities of a list of equipments by batches on an executor, so that the latency of
+ * remote network implementations overlaps instead of adding up, one getter at a time.
+ * The network implementation has to support concurrent reads.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffPrefetcher {
+
+    static final int BATCH_SIZE = 32;
+
+    private final Executor executor;
+
+    DiffPrefetcher(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Returns a future of the values read for each id, in the order of the ids.
+     */
+    <T> CompletableFuture<List<T>> fetch(List<String> ids, Function<String, T> reader) {
+        Objects.requireNonNull(ids);
+        Objects.requireNonNull(reader);
+        Object[] values = new Object[ids.size()];
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            int from = start;
+            int to = Math.min(start + BATCH_SIZE, ids.size());
+            batches.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    values[i] = reader.apply(ids.get(i));
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                                .thenApply(v -> toList(values));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> toList(Object[] values) {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(values));
+    }
+}
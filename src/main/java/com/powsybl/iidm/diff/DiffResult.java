@@ -12,6 +12,11 @@ import com.fasterxml.jackson.core.JsonGenerator;
  * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
  */
 public interface DiffResult {
+    /**
+     * Returns the id of the compared equipment in the first network.
+     */
+    String getId();
+
     boolean isDifferent();
 
     void writeJson(JsonGenerator jsonGenerator);
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+/**
+ * Local cache of diff output files, keyed by the content of the input files, the config, the compared equipments,
+ * the output options and the version of the diff. An entry is a directory named after its key, holding the output
+ * file and its index if any.
+ * <p>
+ * Entries are built in a temporary directory and renamed to their key, so that concurrent runs never see a partial
+ * entry, the first run storing an entry winning. When the cache exceeds its maximum size, the least recently used
+ * entries are deleted.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public class DiffResultCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiffResultCache.class);
+
+    /**
+     * Version of the cached outputs, to be increased when the diff or its output format changes.
+     */
+    static final String CACHE_VERSION = "1";
+
+    private static final String OUTPUT_FILE = "output";
+    private static final String TMP_PREFIX = ".tmp-";
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * @param maxSize the maximum size in bytes of the cached outputs
+     */
+    public DiffResultCache(Path directory, long maxSize) {
+        this.directory = Objects.requireNonNull(directory);
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    private static String getVersion() {
+        String implementationVersion = DiffResultCache.class.getPackage().getImplementationVersion();
+        return implementationVersion != null ? CACHE_VERSION + "-" + implementationVersion : CACHE_VERSION;
+    }
+
+    /**
+     * Describes everything that changes the output of a diff, besides the input files. The config is described by
+     * all of its properties, so that a new option is part of the key without being listed here.
+     */
+    static String describe(DiffConfig config, DiffEquipment diffEquipment) {
+        return "config=" + config
+                + ",equipmentTypes=" + diffEquipment.getEquipmentTypes()
+                + ",voltageLevels=" + diffEquipment.getVoltageLevels()
+                + ",branches=" + diffEquipment.getBranches()
+                + ",countries=" + diffEquipment.getCountries()
+                + ",substations=" + diffEquipment.getSubstations()
+                + ",minNominalV=" + diffEquipment.getMinNominalV()
+                + ",maxNominalV=" + diffEquipment.getMaxNominalV()
+                + ",idRegex=" + diffEquipment.getIdRegex();
+    }
+
+    /**
+     * @param outputOptions the options of the output, as they change the output file
+     */
+    public String computeKey(Path file1, Path file2, DiffConfig config, DiffEquipment diffEquipment, String outputOptions) {
+        Objects.requireNonNull(file1);
+        Objects.requireNonNull(file2);
+        Objects.requireNonNull(config);
+        Objects.requireNonNull(diffEquipment);
+        Objects.requireNonNull(outputOptions);
+        try {
+            Hasher hasher = Hashing.sha256().newHasher()
+                    .putString(getVersion(), StandardCharsets.UTF_8)
+                    .putBytes(MoreFiles.asByteSource(file1).hash(Hashing.sha256()).asBytes())
+                    .putBytes(MoreFiles.asByteSource(file2).hash(Hashing.sha256()).asBytes())
+                    .putString(describe(config, diffEquipment), StandardCharsets.UTF_8)
+                    .putString(outputOptions, StandardCharsets.UTF_8);
+            return hasher.hash().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies the cached output of a key to the output file, and its index next to it if any.
+     *
+     * @return false if the key is not in the cache
+     */
+    public boolean get(String key, Path outputFile) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(outputFile);
+        Path entry = directory.resolve(key);
+        if (!Files.isDirectory(entry)) {
+            return false;
+        }
+        try {
+            Files.copy(entry.resolve(OUTPUT_FILE), outputFile, StandardCopyOption.REPLACE_EXISTING);
+            Path index = NetworkDiffResultsIndex.getIndexFile(entry.resolve(OUTPUT_FILE));
+            if (Files.exists(index)) {
+                Files.copy(index, NetworkDiffResultsIndex.getIndexFile(outputFile), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            LOGGER.info("Diff output {} read from cache entry {}", outputFile, key);
+            return true;
+        } catch (NoSuchFileException e) {
+            // evicted by a concurrent run
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores the output file under a key, then evicts the least recently used entries if the cache is too large.
+     *
+     * @param withIndex also store the index written next to the output file
+     */
+    public void put(String key, Path outputFile, boolean withIndex) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(outputFile);
+        try {
+            Files.createDirectories(directory);
+            Path tmpEntry = Files.createTempDirectory(directory, TMP_PREFIX);
+            Files.copy(outputFile, tmpEntry.resolve(OUTPUT_FILE));
+            if (withIndex) {
+                Files.copy(NetworkDiffResultsIndex.getIndexFile(outputFile), NetworkDiffResultsIndex.getIndexFile(tmpEntry.resolve(OUTPUT_FILE)));
+            }
+            Path entry = directory.resolve(key);
+            try {
+                Files.move(tmpEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.isDirectory(entry)) {
+                    throw e;
+                }
+                // stored by a concurrent run
+                deleteEntry(tmpEntry);
+            }
+            evict(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long getSize(Path entry) {
+        long size = 0;
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                size += Files.size(file);
+            }
+        } catch (IOException e) {
+            // deleted by a concurrent run
+        }
+        return size;
+    }
+
+    private static FileTime getLastModifiedTime(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private void evict(String keptKey) throws IOException {
+        List<Path> entries;
+        try (Stream<Path> paths = Files.list(directory)) {
+            entries = paths.filter(path -> !path.getFileName().toString().startsWith(TMP_PREFIX))
+                           .sorted(Comparator.comparing(DiffResultCache::getLastModifiedTime))
+                           .collect(Collectors.toCollection(ArrayList::new));
+        }
+        long size = 0;
+        long[] sizes = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            sizes[i] = getSize(entries.get(i));
+            size += sizes[i];
+        }
+        for (int i = 0; i < entries.size() && size > maxSize; i++) {
+            Path entry = entries.get(i);
+            if (!entry.getFileName().toString().equals(keptKey)) {
+                deleteEntry(entry);
+                size -= sizes[i];
+                LOGGER.debug("Diff cache entry {} evicted", entry.getFileName());
+            }
+        }
+    }
+
+    private static void deleteEntry(Path entry) throws IOException {
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(entry);
+        } catch (NoSuchFileException e) {
+            // deleted by a concurrent run
+        }
+    }
+}
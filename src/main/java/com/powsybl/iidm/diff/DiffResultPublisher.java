@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A cold publisher pulling diff results from a lazy iterator, one subscriber request at a time.
+ * Each subscription gets its own iterator, and elements are only computed when there is demand for them.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffResultPublisher implements Flow.Publisher<DiffResult> {
+
+    private final Supplier<Iterator<DiffResult>> iteratorSupplier;
+    private final Executor executor;
+
+    DiffResultPublisher(Supplier<Iterator<DiffResult>> iteratorSupplier, Executor executor) {
+        this.iteratorSupplier = Objects.requireNonNull(iteratorSupplier);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DiffResult> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new DiffSubscription(subscriber));
+    }
+
+    private final class DiffSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super DiffResult> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        // only accessed from drain, which is serialized by the pending counter
+        private Iterator<DiffResult> iterator;
+        private boolean done;
+
+        private DiffSubscription(Flow.Subscriber<? super DiffResult> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                demand.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done && !cancelled) {
+                    emit();
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (error != null) {
+                terminate(error);
+                return;
+            }
+            try {
+                if (iterator == null) {
+                    iterator = iteratorSupplier.get();
+                }
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested && !cancelled && iterator.hasNext()) {
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+                if (!cancelled && !iterator.hasNext()) {
+                    done = true;
+                    subscriber.onComplete();
+                } else if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+            } catch (RuntimeException e) {
+                terminate(e);
+            }
+        }
+
+        private void terminate(Throwable t) {
+            done = true;
+            cancelled = true;
+            subscriber.onError(t);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Random sampling of equipment ids, by strata of equipments of the same nominal voltage.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class DiffSampler {
+
+    private DiffSampler() {
+    }
+
+    /**
+     * Splits ids by nominal voltage, in increasing voltage order, or returns a single stratum if not stratified.
+     */
+    static List<List<String>> stratify(List<String> ids, ToDoubleFunction<String> nominalV, boolean stratified) {
+        if (!stratified) {
+            return ids.isEmpty() ? Collections.emptyList() : Collections.singletonList(ids);
+        }
+        Map<Double, List<String>> strata = new TreeMap<>();
+        for (String id : ids) {
+            strata.computeIfAbsent(nominalV.applyAsDouble(id), v -> new ArrayList<>()).add(id);
+        }
+        return new ArrayList<>(strata.values());
+    }
+
+    /**
+     * Returns a random sample of a fraction of a stratum, of at least one id. The sample is the head of a partial
+     * Fisher-Yates shuffle of the stratum.
+     */
+    static List<String> sample(List<String> stratum, double fraction, Random random) {
+        int size = Math.min(stratum.size(), Math.max(1, (int) Math.ceil(fraction * stratum.size())));
+        List<String> ids = new ArrayList<>(stratum);
+        for (int i = 0; i < size; i++) {
+            Collections.swap(ids, i, i + random.nextInt(ids.size() - i));
+        }
+        return new ArrayList<>(ids.subList(0, size));
+    }
+
+    /**
+     * Returns the largest of a max and of the absolute delta of two values, NaN deltas being ignored.
+     */
+    static double maxDelta(double max, double value1, double value2) {
+        double delta = Math.abs(value2 - value1);
+        return Double.isNaN(max) || delta > max ? delta : max;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+
+import com.powsybl.iidm.network.Branch;
+
+/**
+ * The quantities compared by the diff procedures, extracted from a network or read from a file, keyed and
+ * sorted by equipment id. Diffing snapshots does not need the networks they come from.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class DiffSnapshot {
+
+    private final String networkId;
+    private final SortedMap<String, VoltageLevelDiffInfo> voltageLevels;
+    private final SortedMap<String, BranchDiffInfo> branches;
+    private final Map<String, String> substationIds;
+    private final Map<String, String> countries;
+    private final TopologySnapshot topology;
+    private final PowerBalance balance;
+    private final BranchLimitTable limits;
+
+    // fingerprint trees of the voltage levels and branches, kept for the threshold table they were computed with
+    private ThresholdTable fingerprintThresholds;
+    private FingerprintTree voltageLevelFingerprints;
+    private FingerprintTree branchFingerprints;
+
+    /**
+     * @param substationIds the substation id of each voltage level
+     * @param countries the country name of each substation, an empty string if it is not defined
+     */
+    DiffSnapshot(String networkId, SortedMap<String, VoltageLevelDiffInfo> voltageLevels, SortedMap<String, BranchDiffInfo> branches,
+                 Map<String, String> substationIds, Map<String, String> countries) {
+        this(networkId, voltageLevels, branches, substationIds, countries, null, null, null);
+    }
+
+    DiffSnapshot(String networkId, SortedMap<String, VoltageLevelDiffInfo> voltageLevels, SortedMap<String, BranchDiffInfo> branches,
+                 Map<String, String> substationIds, Map<String, String> countries, TopologySnapshot topology, PowerBalance balance,
+                 BranchLimitTable limits) {
+        this.networkId = Objects.requireNonNull(networkId);
+        this.voltageLevels = Collections.unmodifiableSortedMap(voltageLevels);
+        this.branches = Collections.unmodifiableSortedMap(branches);
+        this.substationIds = Collections.unmodifiableMap(substationIds);
+        this.countries = Collections.unmodifiableMap(countries);
+        this.topology = topology;
+        this.balance = balance;
+        this.limits = limits;
+    }
+
+    public String getNetworkId() {
+        return networkId;
+    }
+
+    public SortedMap<String, VoltageLevelDiffInfo> getVoltageLevels() {
+        return voltageLevels;
+    }
+
+    public SortedMap<String, BranchDiffInfo> getBranches() {
+        return branches;
+    }
+
+    /**
+     * Returns the connectivity of the whole network, null if it has not been extracted.
+     */
+    public TopologySnapshot getTopology() {
+        return topology;
+    }
+
+    /**
+     * Returns the power balances of the whole network, null if they have not been computed.
+     */
+    public PowerBalance getBalance() {
+        return balance;
+    }
+
+    /**
+     * Returns the current limits of the branches, null if they have not been read.
+     */
+    public BranchLimitTable getLimits() {
+        return limits;
+    }
+
+    String getSubstationId(String vlId) {
+        return substationIds.getOrDefault(vlId, "");
+    }
+
+    String getCountry(String vlId) {
+        return countries.getOrDefault(getSubstationId(vlId), "");
+    }
+
+    /**
+     * Returns the fingerprint tree of the voltage levels, computed on the first call for the given thresholds only,
+     * so that a snapshot diffed many times, like the reference of a watch, is hashed once.
+     */
+    synchronized FingerprintTree getVoltageLevelFingerprints(ThresholdTable thresholds) {
+        computeFingerprints(thresholds);
+        return voltageLevelFingerprints;
+    }
+
+    synchronized FingerprintTree getBranchFingerprints(ThresholdTable thresholds) {
+        computeFingerprints(thresholds);
+        return branchFingerprints;
+    }
+
+    private void computeFingerprints(ThresholdTable thresholds) {
+        Objects.requireNonNull(thresholds);
+        if (thresholds == fingerprintThresholds) {
+            return;
+        }
+        voltageLevelFingerprints = new FingerprintTree();
+        voltageLevels.forEach((id, vlInfo) -> voltageLevelFingerprints.add(getCountry(id), getSubstationId(id), id, DiffFingerprint.of(vlInfo, thresholds)));
+        branchFingerprints = new FingerprintTree();
+        branches.forEach((id, branchInfo) -> {
+            String vlId = branchInfo.getTerminalData(Branch.Side.ONE).getVoltageLevelId();
+            branchFingerprints.add(getCountry(vlId), getSubstationId(vlId), id, DiffFingerprint.of(branchInfo, thresholds));
+        });
+        // hashing the whole trees now leaves them read-only when they are compared by concurrent diffs
+        voltageLevelFingerprints.hash();
+        branchFingerprints.hash();
+        fingerprintThresholds = thresholds;
+    }
+}
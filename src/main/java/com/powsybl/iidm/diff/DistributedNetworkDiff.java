@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.powsybl.commons.PowsyblException;
+import com.powsybl.commons.xml.XmlUtil;
+import com.powsybl.computation.AbstractExecutionHandler;
+import com.powsybl.computation.CommandExecution;
+import com.powsybl.computation.ComputationManager;
+import com.powsybl.computation.ExecutionEnvironment;
+import com.powsybl.computation.ExecutionReport;
+import com.powsybl.computation.SimpleCommand;
+import com.powsybl.computation.SimpleCommandBuilder;
+
+/**
+ * Diff of two XIIDM files split in partitions of substations or countries, each one diffed by a {@link NetworkDiffWorker}
+ * process launched through a {@link ComputationManager}, so that no process holds both whole networks. The partitions
+ * are built from a StAX pass over both files, then the partial results are merged in equipment id order, like the
+ * results of a single {@link NetworkDiff}.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public class DistributedNetworkDiff {
+
+    public enum PartitionKey {
+        SUBSTATION,
+        COUNTRY
+    }
+
+    private static final String WORKING_DIR_PREFIX = "network_diff_";
+    private static final String PARTITION_FILE = "partition-%d.json";
+    private static final String RESULT_FILE = "result-%d.json";
+
+    private static final class VoltageLevelLocation {
+        private final String substationId;
+        private final String country;
+        private final double nominalV;
+
+        private VoltageLevelLocation(String substationId, String country, double nominalV) {
+            this.substationId = substationId;
+            this.country = country;
+            this.nominalV = nominalV;
+        }
+
+        private String getKey(PartitionKey partitionKey) {
+            return partitionKey == PartitionKey.SUBSTATION ? substationId : country;
+        }
+    }
+
+    /**
+     * The voltage level locations and the voltage levels of the branches of an XIIDM file.
+     */
+    private static final class Locations {
+        private String networkId;
+        private final Map<String, VoltageLevelLocation> voltageLevels = new HashMap<>();
+        private final Map<String, String[]> branches = new HashMap<>();
+    }
+
+    private final DiffConfig config;
+    private final ComputationManager computationManager;
+
+    /**
+     * @throws IllegalArgumentException if the config enables results which are not computed per partition: the
+     *                                  topology and the power balance span partitions, branches are matched across
+     *                                  the whole networks, and the loading and change set results are not merged
+     */
+    public DistributedNetworkDiff(DiffConfig config, ComputationManager computationManager) {
+        this.config = Objects.requireNonNull(config);
+        this.computationManager = Objects.requireNonNull(computationManager);
+        checkUnsupported(config.isTopologyDiff(), "topology-diff");
+        checkUnsupported(config.isBalanceDiff(), "balance-diff");
+        checkUnsupported(config.isBalanceFilter(), "balance-filter");
+        checkUnsupported(config.isLoadingDiff(), "loading-diff");
+        checkUnsupported(config.isStructuralMatching(), "structural-matching");
+        checkUnsupported(config.isChangeSet(), "change-set");
+    }
+
+    private static void checkUnsupported(boolean enabled, String property) {
+        if (enabled) {
+            throw new IllegalArgumentException("The distributed diff does not support " + property);
+        }
+    }
+
+    public void diff(Path file1, Path file2, DiffEquipment diffEquipment, PartitionKey partitionKey, int partitionCount, Path outputFile) {
+        Objects.requireNonNull(file1);
+        Objects.requireNonNull(file2);
+        Objects.requireNonNull(diffEquipment);
+        Objects.requireNonNull(partitionKey);
+        Objects.requireNonNull(outputFile);
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Invalid partition count: " + partitionCount);
+        }
+        Locations locations1 = readLocations(file1);
+        Locations locations2 = readLocations(file2);
+        DiffEquipmentFilter filter = DiffEquipmentFilter.of(diffEquipment);
+        Map<String, List<String>> vlIdsByKey = new TreeMap<>();
+        Map<String, List<String>> branchIdsByKey = new TreeMap<>();
+        if (NetworkDiff.isVoltageLevelsDiff(diffEquipment)) {
+            groupByKey(diffEquipment.getVoltageLevels(), locations1, locations2, locations -> locations.voltageLevels.keySet(),
+                (locations, vlId) -> isVoltageLevelAccepted(locations, vlId, filter) ? locations.voltageLevels.get(vlId).getKey(partitionKey) : null,
+                vlIdsByKey);
+        }
+        if (NetworkDiff.isBranchesDiff(diffEquipment)) {
+            groupByKey(diffEquipment.getBranches(), locations1, locations2, locations -> locations.branches.keySet(),
+                (locations, branchId) -> isBranchAccepted(locations, branchId, filter) ? locations.voltageLevels.get(locations.branches.get(branchId)[0]).getKey(partitionKey) : null,
+                branchIdsByKey);
+        }
+        List<List<String>> partitionVlIds = new ArrayList<>();
+        List<List<String>> partitionBranchIds = new ArrayList<>();
+        partition(vlIdsByKey, branchIdsByKey, partitionCount, partitionVlIds, partitionBranchIds);
+
+        ObjectNode results = computationManager.execute(ExecutionEnvironment.createDefault().setWorkingDirPrefix(WORKING_DIR_PREFIX),
+                                                        new PartitionExecutionHandler(file1, file2, locations1.networkId, locations2.networkId, diffEquipment,
+                                                                                                       partitionVlIds, partitionBranchIds)).join();
+        CompressedStreams.writeJson(outputFile, false, 1, generator -> {
+            try {
+                new ObjectMapper().writeValue(generator, results);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static boolean isVoltageLevelAccepted(Locations locations, String vlId, DiffEquipmentFilter filter) {
+        VoltageLevelLocation location = locations.voltageLevels.get(vlId);
+        return location != null && filter.isIdAccepted(vlId) && filter.isLocationAccepted(location.substationId, location.country, location.nominalV);
+    }
+
+    private static boolean isBranchAccepted(Locations locations, String branchId, DiffEquipmentFilter filter) {
+        String[] vlIds = locations.branches.get(branchId);
+        if (vlIds == null || !filter.isIdAccepted(branchId)) {
+            return false;
+        }
+        for (String vlId : vlIds) {
+            VoltageLevelLocation location = locations.voltageLevels.get(vlId);
+            if (filter.isLocationAccepted(location.substationId, location.country, location.nominalV)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Groups the accepted ids of both files by partition key, the key of an id found in both files being its key in
+     * the first one.
+     */
+    private static void groupByKey(List<String> ids, Locations locations1, Locations locations2, Function<Locations, Iterable<String>> allIds,
+                                   BiFunction<Locations, String, String> key, Map<String, List<String>> idsByKey) {
+        TreeSet<String> sortedIds = new TreeSet<>();
+        if (ids != null) {
+            sortedIds.addAll(ids);
+        } else {
+            allIds.apply(locations1).forEach(sortedIds::add);
+            allIds.apply(locations2).forEach(sortedIds::add);
+        }
+        for (String id : sortedIds) {
+            String key1 = key.apply(locations1, id);
+            String k = key1 != null ? key1 : key.apply(locations2, id);
+            if (k != null) {
+                idsByKey.computeIfAbsent(k, x -> new ArrayList<>()).add(id);
+            }
+        }
+    }
+
+    /**
+     * Splits the sorted partition keys in contiguous ranges of about the same number of equipments.
+     */
+    private static void partition(Map<String, List<String>> vlIdsByKey, Map<String, List<String>> branchIdsByKey, int partitionCount,
+                                  List<List<String>> partitionVlIds, List<List<String>> partitionBranchIds) {
+        TreeSet<String> keys = new TreeSet<>(vlIdsByKey.keySet());
+        keys.addAll(branchIdsByKey.keySet());
+        int total = vlIdsByKey.values().stream().mapToInt(List::size).sum() + branchIdsByKey.values().stream().mapToInt(List::size).sum();
+        int partitionSize = Math.max(1, (total + partitionCount - 1) / partitionCount);
+        List<String> vlIds = new ArrayList<>();
+        List<String> branchIds = new ArrayList<>();
+        for (String key : keys) {
+            vlIds.addAll(vlIdsByKey.getOrDefault(key, List.of()));
+            branchIds.addAll(branchIdsByKey.getOrDefault(key, List.of()));
+            if (vlIds.size() + branchIds.size() >= partitionSize) {
+                partitionVlIds.add(vlIds);
+                partitionBranchIds.add(branchIds);
+                vlIds = new ArrayList<>();
+                branchIds = new ArrayList<>();
+            }
+        }
+        if (!vlIds.isEmpty() || !branchIds.isEmpty()) {
+            partitionVlIds.add(vlIds);
+            partitionBranchIds.add(branchIds);
+        }
+    }
+
+    private final class PartitionExecutionHandler extends AbstractExecutionHandler<ObjectNode> {
+
+        private final Path file1;
+        private final Path file2;
+        private final String networkId1;
+        private final String networkId2;
+        private final DiffEquipment diffEquipment;
+        private final List<List<String>> partitionVlIds;
+        private final List<List<String>> partitionBranchIds;
+
+        private PartitionExecutionHandler(Path file1, Path file2, String networkId1, String networkId2, DiffEquipment diffEquipment,
+                                          List<List<String>> partitionVlIds, List<List<String>> partitionBranchIds) {
+            this.file1 = file1;
+            this.file2 = file2;
+            this.networkId1 = networkId1;
+            this.networkId2 = networkId2;
+            this.diffEquipment = diffEquipment;
+            this.partitionVlIds = partitionVlIds;
+            this.partitionBranchIds = partitionBranchIds;
+        }
+
+        @Override
+        public List<CommandExecution> before(Path workingDir) throws IOException {
+            if (partitionVlIds.isEmpty()) {
+                return List.of();
+            }
+            Path localFile1 = toLocalFile(file1, workingDir.resolve("network1-" + file1.getFileName()));
+            Path localFile2 = toLocalFile(file2, workingDir.resolve("network2-" + file2.getFileName()));
+            ObjectMapper objectMapper = new ObjectMapper();
+            for (int i = 0; i < partitionVlIds.size(); i++) {
+                ObjectNode partition = objectMapper.createObjectNode();
+                partition.put(NetworkDiffWorker.INPUT_FILE1, localFile1.toAbsolutePath().toString());
+                partition.put(NetworkDiffWorker.INPUT_FILE2, localFile2.toAbsolutePath().toString());
+                partition.put(NetworkDiffWorker.OUTPUT_FILE, String.format(RESULT_FILE, i));
+                partition.put(NetworkDiffWorker.GENERIC_THRESHOLD, config.getGenericThreshold());
+                partition.put(NetworkDiffWorker.VOLTAGE_THRESHOLD, config.getVoltageThreshold());
+                partition.put(NetworkDiffWorker.FILTER_DIFFERENT, config.isFilterDifferent());
+                partition.putPOJO(NetworkDiffWorker.THRESHOLD_RULES, config.getThresholdRules().stream().map(ThresholdRule::toString).collect(Collectors.toList()));
+                partition.putPOJO(NetworkDiffWorker.VL_IDS, partitionVlIds.get(i));
+                partition.putPOJO(NetworkDiffWorker.BRANCH_IDS, partitionBranchIds.get(i));
+                if (diffEquipment.getCountries() != null) {
+                    partition.putPOJO(NetworkDiffWorker.COUNTRIES, diffEquipment.getCountries());
+                }
+                if (diffEquipment.getSubstations() != null) {
+                    partition.putPOJO(NetworkDiffWorker.SUBSTATION_IDS, diffEquipment.getSubstations());
+                }
+                partition.put(NetworkDiffWorker.MIN_NOMINAL_V, diffEquipment.getMinNominalV());
+                partition.put(NetworkDiffWorker.MAX_NOMINAL_V, diffEquipment.getMaxNominalV());
+                partition.put(NetworkDiffWorker.ID_REGEX, diffEquipment.getIdRegex());
+                objectMapper.writeValue(workingDir.resolve(String.format(PARTITION_FILE, i)).toFile(), partition);
+            }
+            SimpleCommand command = new SimpleCommandBuilder()
+                    .id("network-diff-worker")
+                    .program(Paths.get(System.getProperty("java.home"), "bin", "java").toString())
+                    .args(i -> List.of("-cp", System.getProperty("java.class.path"), NetworkDiffWorker.class.getName(), String.format(PARTITION_FILE, i)))
+                    .build();
+            return List.of(new CommandExecution(command, partitionVlIds.size()));
+        }
+
+        @Override
+        public ObjectNode after(Path workingDir, ExecutionReport report) throws IOException {
+            super.after(workingDir, report);
+            if (!report.getErrors().isEmpty()) {
+                throw new PowsyblException("Network diff of " + report.getErrors().size() + " partitions failed, see " + workingDir);
+            }
+            // the diff results contain NaN values for undefined quantities
+            ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+            List<JsonNode> partialResults = new ArrayList<>();
+            for (int i = 0; i < partitionVlIds.size(); i++) {
+                try (InputStream is = CompressedStreams.newInputStream(workingDir.resolve(String.format(RESULT_FILE, i)))) {
+                    partialResults.add(objectMapper.readTree(is));
+                }
+            }
+            return merge(networkId1, networkId2, partialResults, objectMapper);
+        }
+    }
+
+    /**
+     * Copies a file of another file system to the working directory, which is the only one visible by the workers.
+     */
+    private static Path toLocalFile(Path file, Path localFile) throws IOException {
+        if (file.getFileSystem().equals(FileSystems.getDefault())) {
+            return file;
+        }
+        Files.copy(file, localFile);
+        return localFile;
+    }
+
+    /**
+     * Merges the partial results in equipment id order, so that the result does not depend on the partitioning.
+     */
+    private static ObjectNode merge(String networkId1, String networkId2, List<JsonNode> partialResults, ObjectMapper objectMapper) {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("network1", networkId1);
+        result.put("network2", networkId2);
+        mergeArrays(partialResults, "diff.VoltageLevels", node -> node.get("vl.vlId1").asText(), result);
+        mergeArrays(partialResults, "diff.Branches", node -> node.get("branch.branchId1").asText(), result);
+        mergeArrays(partialResults, "diff.AddedVoltageLevels", JsonNode::asText, result);
+        mergeArrays(partialResults, "diff.RemovedVoltageLevels", JsonNode::asText, result);
+        mergeArrays(partialResults, "diff.AddedBranches", JsonNode::asText, result);
+        mergeArrays(partialResults, "diff.RemovedBranches", JsonNode::asText, result);
+        return result;
+    }
+
+    private static void mergeArrays(List<JsonNode> partialResults, String name, Function<JsonNode, String> id, ObjectNode result) {
+        List<JsonNode> elements = new ArrayList<>();
+        for (JsonNode partialResult : partialResults) {
+            partialResult.get(name).forEach(elements::add);
+        }
+        elements.sort(Comparator.comparing(id));
+        result.putArray(name).addAll(elements);
+    }
+
+    private static Locations readLocations(Path file) {
+        Locations locations = new Locations();
+        try (InputStream is = Files.newInputStream(file)) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(is);
+            try {
+                String substationId = null;
+                String country = null;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if (locations.networkId == null) {
+                        locations.networkId = reader.getAttributeValue(null, "id");
+                    } else if ("substation".equals(name)) {
+                        substationId = reader.getAttributeValue(null, "id");
+                        country = Objects.requireNonNullElse(reader.getAttributeValue(null, "country"), "");
+                    } else if ("voltageLevel".equals(name)) {
+                        locations.voltageLevels.put(reader.getAttributeValue(null, "id"),
+                                                    new VoltageLevelLocation(substationId, country, XmlUtil.readDoubleAttribute(reader, "nominalV")));
+                    } else if (XiidmSnapshotReader.BRANCHES.contains(name)) {
+                        locations.branches.put(reader.getAttributeValue(null, "id"),
+                                               new String[] {reader.getAttributeValue(null, "voltageLevelId1"), reader.getAttributeValue(null, "voltageLevelId2")});
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+        return locations;
+    }
+}
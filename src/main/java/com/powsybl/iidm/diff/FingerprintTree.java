@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Merkle-style tree of equipment fingerprints, grouped by country then by substation, so that identical
+ * regions of two networks are skipped with a single hash comparison.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class FingerprintTree {
+
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+        private long hash;
+        private boolean hashed;
+
+        private Node() {
+        }
+
+        private Node(long fingerprint) {
+            hash = fingerprint;
+            hashed = true;
+        }
+
+        private long hash() {
+            if (!hashed) {
+                Hasher hasher = Hashing.murmur3_128().newHasher();
+                for (Map.Entry<String, Node> e : children.entrySet()) {
+                    hasher.putString(e.getKey(), StandardCharsets.UTF_8).putLong(e.getValue().hash());
+                }
+                hash = hasher.hash().asLong();
+                hashed = true;
+            }
+            return hash;
+        }
+    }
+
+    private final Node root = new Node();
+
+    void add(String country, String substationId, String id, long fingerprint) {
+        Objects.requireNonNull(country);
+        Objects.requireNonNull(substationId);
+        Objects.requireNonNull(id);
+        root.hashed = false;
+        Node countryNode = root.children.computeIfAbsent(country, k -> new Node());
+        countryNode.hashed = false;
+        Node substationNode = countryNode.children.computeIfAbsent(substationId, k -> new Node());
+        substationNode.hashed = false;
+        substationNode.children.put(id, new Node(fingerprint));
+    }
+
+    /**
+     * Returns the hash of the whole tree, computing the hashes of all its nodes that are not known yet.
+     */
+    long hash() {
+        return root.hash();
+    }
+
+    /**
+     * Returns the ids of the equipments whose fingerprint differs in the other tree, or which are not found at the
+     * same place in it.
+     */
+    Set<String> getChangedIds(FingerprintTree other) {
+        Objects.requireNonNull(other);
+        Set<String> changedIds = new HashSet<>();
+        collectChangedIds(root, other.root, 0, changedIds);
+        return changedIds;
+    }
+
+    private static void collectChangedIds(Node node1, Node node2, int depth, Set<String> changedIds) {
+        if (node1 != null && node2 != null && node1.hash() == node2.hash()) {
+            return;
+        }
+        Set<String> keys = Sets.union(childKeys(node1), childKeys(node2));
+        for (String key : keys) {
+            Node child1 = node1 != null ? node1.children.get(key) : null;
+            Node child2 = node2 != null ? node2.children.get(key) : null;
+            if (depth == 2) {
+                // children of substations are the equipment fingerprints
+                if (child1 == null || child2 == null || child1.hash() != child2.hash()) {
+                    changedIds.add(key);
+                }
+            } else {
+                collectChangedIds(child1, child2, depth + 1, changedIds);
+            }
+        }
+    }
+
+    private static Set<String> childKeys(Node node) {
+        return node != null ? node.children.keySet() : Set.of();
+    }
+}
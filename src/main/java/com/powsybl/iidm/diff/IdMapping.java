@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Mapping of the ids of the voltage levels, branches and switches of the second network of a diff to the ids of
+ * the same equipments in the first network, for networks with a different naming. The second network is compared
+ * as if its equipments had the ids of the first network; unmapped ids are kept. Substation and bus ids may be mapped
+ * too, for the substation filter and the topology.
+ * <p>
+ * Mappings are read from CSV files of {@code id1,id2} lines, blank lines and lines starting with {@code #} being
+ * ignored. Ids are stored once in arrays, indexed in both directions by open addressing hash maps of array
+ * positions, so that large mappings are looked up in constant time without an entry object per id.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class IdMapping {
+
+    private static final int NO_ENTRY = -1;
+
+    private static final IdMapping EMPTY = new IdMapping(new String[0], new String[0]);
+
+    private final String[] ids1;
+    private final String[] ids2;
+    private final TObjectIntHashMap<String> index1;
+    private final TObjectIntHashMap<String> index2;
+
+    private IdMapping(String[] ids1, String[] ids2) {
+        this.ids1 = ids1;
+        this.ids2 = ids2;
+        this.index1 = new TObjectIntHashMap<>(Math.max(16, ids1.length * 2), 0.5f, NO_ENTRY);
+        this.index2 = new TObjectIntHashMap<>(Math.max(16, ids2.length * 2), 0.5f, NO_ENTRY);
+        for (int i = 0; i < ids1.length; i++) {
+            if (index1.putIfAbsent(ids1[i], i) != NO_ENTRY) {
+                throw new IllegalArgumentException("Id '" + ids1[i] + "' of the first network mapped twice");
+            }
+            if (index2.putIfAbsent(ids2[i], i) != NO_ENTRY) {
+                throw new IllegalArgumentException("Id '" + ids2[i] + "' of the second network mapped twice");
+            }
+        }
+    }
+
+    public static IdMapping empty() {
+        return EMPTY;
+    }
+
+    public static IdMapping read(Path file) {
+        Objects.requireNonNull(file);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static IdMapping read(BufferedReader reader) throws IOException {
+        Objects.requireNonNull(reader);
+        List<String> ids1 = new ArrayList<>();
+        List<String> ids2 = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int comma = trimmed.indexOf(',');
+            if (comma <= 0 || comma == trimmed.length() - 1 || trimmed.indexOf(',', comma + 1) >= 0) {
+                throw new IllegalArgumentException("Invalid id mapping at line " + lineNumber + ": '" + line + "'");
+            }
+            ids1.add(trimmed.substring(0, comma).trim());
+            ids2.add(trimmed.substring(comma + 1).trim());
+        }
+        return new IdMapping(ids1.toArray(new String[0]), ids2.toArray(new String[0]));
+    }
+
+    public int size() {
+        return ids1.length;
+    }
+
+    public boolean isEmpty() {
+        return ids1.length == 0;
+    }
+
+    /**
+     * Returns the id in the first network of an equipment of the second network.
+     */
+    public String toId1(String id2) {
+        int i = index2.get(id2);
+        return i == NO_ENTRY ? id2 : ids1[i];
+    }
+
+    /**
+     * Returns the id in the second network of an equipment of the first network.
+     */
+    public String toId2(String id1) {
+        int i = index1.get(id1);
+        return i == NO_ENTRY ? id1 : ids2[i];
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.powsybl.iidm.network.Branch.Side;
+
+/**
+ * The branch sides whose loading class changed between two networks, the loading classes being found from the
+ * current of each side and the {@link BranchLimitTable} of each network. A side staying in the temporary bands
+ * changes class when it moves to a band of another acceptable duration.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class LoadingDiffResults {
+
+    public enum LoadingClass {
+        /**
+         * The current or the permanent limit is not defined.
+         */
+        UNKNOWN,
+        BELOW_PERMANENT_LIMIT,
+        TEMPORARY_LIMIT_BAND,
+        ABOVE_ALL_LIMITS
+    }
+
+    /**
+     * The loading of a branch side in both networks.
+     */
+    public static final class LoadingChange {
+        private final String branchId;
+        private final Side side;
+        private final double i1;
+        private final double i2;
+        private final LoadingClass class1;
+        private final LoadingClass class2;
+        private final int acceptableDuration1;
+        private final int acceptableDuration2;
+
+        private LoadingChange(String branchId, Side side, double i1, double i2, LoadingClass class1, LoadingClass class2,
+                              int acceptableDuration1, int acceptableDuration2) {
+            this.branchId = branchId;
+            this.side = side;
+            this.i1 = i1;
+            this.i2 = i2;
+            this.class1 = class1;
+            this.class2 = class2;
+            this.acceptableDuration1 = acceptableDuration1;
+            this.acceptableDuration2 = acceptableDuration2;
+        }
+
+        public String getBranchId() {
+            return branchId;
+        }
+
+        public Side getSide() {
+            return side;
+        }
+
+        public double getI1() {
+            return i1;
+        }
+
+        public double getI2() {
+            return i2;
+        }
+
+        public LoadingClass getClass1() {
+            return class1;
+        }
+
+        public LoadingClass getClass2() {
+            return class2;
+        }
+
+        /**
+         * Returns the acceptable duration in seconds of the temporary band in the first network, -1 out of the
+         * temporary bands.
+         */
+        public int getAcceptableDuration1() {
+            return acceptableDuration1;
+        }
+
+        /**
+         * Returns the acceptable duration in seconds of the temporary band in the second network, -1 out of the
+         * temporary bands.
+         */
+        public int getAcceptableDuration2() {
+            return acceptableDuration2;
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("loading.branchId", branchId);
+            generator.writeStringField("loading.side", side.name());
+            generator.writeNumberField("loading.i1", i1);
+            generator.writeNumberField("loading.i2", i2);
+            generator.writeStringField("loading.class1", class1.name());
+            generator.writeStringField("loading.class2", class2.name());
+            generator.writeNumberField("loading.acceptableDuration1", acceptableDuration1);
+            generator.writeNumberField("loading.acceptableDuration2", acceptableDuration2);
+            generator.writeEndObject();
+        }
+    }
+
+    private static final int NO_DURATION = -1;
+
+    private final List<LoadingChange> changes;
+
+    private LoadingDiffResults(List<LoadingChange> changes) {
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Compares the loading of the sides of the given branches, found in both snapshots and both limit tables.
+     */
+    static LoadingDiffResults compare(List<String> branchIds, DiffSnapshot snapshot1, DiffSnapshot snapshot2) {
+        Objects.requireNonNull(branchIds);
+        BranchLimitTable limits1 = Objects.requireNonNull(snapshot1.getLimits());
+        BranchLimitTable limits2 = Objects.requireNonNull(snapshot2.getLimits());
+        List<LoadingChange> changes = new ArrayList<>();
+        for (String branchId : branchIds) {
+            if (!limits1.contains(branchId) || !limits2.contains(branchId)) {
+                continue;
+            }
+            for (Side side : Side.values()) {
+                double i1 = snapshot1.getBranches().get(branchId).getTerminalData(side).getI();
+                double i2 = snapshot2.getBranches().get(branchId).getTerminalData(side).getI();
+                int band1 = limits1.getLoadingBand(branchId, side, i1);
+                int band2 = limits2.getLoadingBand(branchId, side, i2);
+                LoadingClass class1 = getLoadingClass(band1, limits1.getTemporaryLimitCount(branchId, side));
+                LoadingClass class2 = getLoadingClass(band2, limits2.getTemporaryLimitCount(branchId, side));
+                int duration1 = class1 == LoadingClass.TEMPORARY_LIMIT_BAND ? limits1.getAcceptableDuration(branchId, side, band1) : NO_DURATION;
+                int duration2 = class2 == LoadingClass.TEMPORARY_LIMIT_BAND ? limits2.getAcceptableDuration(branchId, side, band2) : NO_DURATION;
+                if (class1 != class2 || duration1 != duration2) {
+                    changes.add(new LoadingChange(branchId, side, i1, i2, class1, class2, duration1, duration2));
+                }
+            }
+        }
+        return new LoadingDiffResults(changes);
+    }
+
+    private static LoadingClass getLoadingClass(int band, int temporaryLimitCount) {
+        if (band == BranchLimitTable.NO_BAND) {
+            return LoadingClass.UNKNOWN;
+        } else if (band == 0) {
+            return LoadingClass.BELOW_PERMANENT_LIMIT;
+        }
+        return band <= temporaryLimitCount ? LoadingClass.TEMPORARY_LIMIT_BAND : LoadingClass.ABOVE_ALL_LIMITS;
+    }
+
+    public boolean isDifferent() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Returns the branch sides whose loading class changed, by branch id then side.
+     */
+    public List<LoadingChange> getChanges() {
+        return changes;
+    }
+
+    void writeJson(JsonGenerator generator) {
+        Objects.requireNonNull(generator);
+        try {
+            generator.writeStartArray();
+            for (LoadingChange change : changes) {
+                change.writeJson(generator);
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
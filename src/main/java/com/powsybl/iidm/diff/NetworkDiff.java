@@ -10,16 +10,38 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.powsybl.commons.json.JsonUtil;
 import com.powsybl.iidm.network.Branch;
 import com.powsybl.iidm.network.Network;
@@ -33,21 +55,39 @@ public class NetworkDiff {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NetworkDiff.class);
 
-    private final DiffProc<VoltageLevel> voltagediff;
-    private final DiffProc<Branch> branchDiff;
+    private final DiffConfig config;
+    private final VoltageLevelDiffProc voltagediff;
+    private final BranchDiffProc branchDiff;
+    private final ThresholdTable thresholds;
+    private final IdMapping idMapping;
 
     public NetworkDiff(DiffConfig config) {
-        Objects.requireNonNull(config);
+        this(config, IdMapping.empty());
+    }
+
+    /**
+     * @param idMapping the ids of the equipments of the second network of the diffs in the first network
+     */
+    public NetworkDiff(DiffConfig config, IdMapping idMapping) {
+        this.config = Objects.requireNonNull(config);
+        this.idMapping = Objects.requireNonNull(idMapping);
         this.voltagediff = new VoltageLevelDiffProc(config);
+        this.thresholds = ThresholdTable.compile(config);
         this.branchDiff = new BranchDiffProc(config);
     }
 
     static void writeJson(JsonGenerator generator, List<? extends DiffResult> diffResults) {
+        writeJson(generator, diffResults, diffResult -> {
+        });
+    }
+
+    static void writeJson(JsonGenerator generator, List<? extends DiffResult> diffResults, Consumer<DiffResult> resultListener) {
         Objects.requireNonNull(generator);
         Objects.requireNonNull(diffResults);
         try {
             generator.writeStartArray();
             for (DiffResult diffResult : diffResults) {
+                resultListener.accept(diffResult);
                 diffResult.writeJson(generator);
             }
             generator.writeEndArray();
@@ -65,7 +105,7 @@ public class NetworkDiff {
     static void writeJson(Path file, List<? extends DiffResult> diffResults) {
         Objects.requireNonNull(file);
         Objects.requireNonNull(diffResults);
-        JsonUtil.writeJson(file, generator -> writeJson(generator, diffResults));
+        CompressedStreams.writeJson(file, false, 1, generator -> writeJson(generator, diffResults));
     }
 
     static String toJson(List<? extends DiffResult> diffResults) {
@@ -84,10 +124,50 @@ public class NetworkDiff {
         JsonUtil.writeJson(writer, ndifr::writeJson);
     }
 
+    /**
+     * Writes the results to a file, gzip compressed if its name ends with {@code .gz}.
+     */
     public static void writeJson(Path file, NetworkDiffResults ndifr) {
+        writeJson(file, ndifr, false, 1);
+    }
+
+    /**
+     * @param gzip compress the output, whatever the file name
+     * @param compressionThreads the number of threads compressing the output by blocks, 1 to compress it on the
+     *                           calling thread
+     */
+    public static void writeJson(Path file, NetworkDiffResults ndifr, boolean gzip, int compressionThreads) {
+        writeJson(file, ndifr, gzip, compressionThreads, false);
+    }
+
+    /**
+     * @param index also write the index of the results by id, next to the file, for
+     *              {@link NetworkDiffResultsReader#find} to seek to a result
+     */
+    public static void writeJson(Path file, NetworkDiffResults ndifr, boolean gzip, int compressionThreads, boolean index) {
         Objects.requireNonNull(file);
         Objects.requireNonNull(ndifr);
-        JsonUtil.writeJson(file, ndifr::writeJson);
+        if (index) {
+            NetworkDiffResultsIndex.writeJson(file, ndifr, gzip, compressionThreads);
+        } else {
+            CompressedStreams.writeJson(file, gzip, compressionThreads, ndifr::writeJson);
+        }
+    }
+
+    /**
+     * Writes the results to a directory, as shards written in parallel and a manifest listing them.
+     *
+     * @param shardCount the number of shards of each equipment type
+     */
+    public static void writeJsonShards(Path directory, NetworkDiffResults ndifr, int shardCount) {
+        writeJsonShards(directory, ndifr, shardCount, false);
+    }
+
+    /**
+     * @param gzip compress the shards, the manifest is not compressed
+     */
+    public static void writeJsonShards(Path directory, NetworkDiffResults ndifr, int shardCount, boolean gzip) {
+        ShardedResultsWriter.write(directory, ndifr, shardCount, gzip);
     }
 
     public NetworkDiffResults diff(Network network1, Network network2) {
@@ -100,61 +180,445 @@ public class NetworkDiff {
         Objects.requireNonNull(diffEquipment);
         long start = System.currentTimeMillis();
 
-        List<DiffResult> vlDiffs = getVoltageLevelDiffs(network1, network2, diffEquipment);
-        List<DiffResult> branchDiffs = getBranchDiffs(network1, network2, diffEquipment);
-        NetworkDiffResults ndifr = new NetworkDiffResults(network1.getId(), network2.getId(), vlDiffs, branchDiffs);
+        PowerBalance balance1 = null;
+        PowerBalance balance2 = null;
+        DiffEquipment comparedEquipment = diffEquipment;
+        if (config.isBalanceFilter()) {
+            balance1 = PowerBalance.of(network1);
+            balance2 = PowerBalance.of(network2, idMapping);
+            Set<String> changedVlIds = PowerBalanceDiffResults.compare(balance1, balance2, thresholds).getChangedVoltageLevelIds();
+            comparedEquipment = restrictToVoltageLevels(network1, network2, diffEquipment, changedVlIds);
+        }
+
+        ExecutorService executor = createPrefetchExecutor();
+        NetworkDiffResults ndifr;
+        try {
+            DiffPrefetcher prefetcher = new DiffPrefetcher(executor != null ? executor : MoreExecutors.directExecutor());
+            CompletableFuture<DiffSnapshot> snapshot1 = snapshot(network1, comparedEquipment, prefetcher, balance1, IdMapping.empty());
+            CompletableFuture<DiffSnapshot> snapshot2 = snapshot(network2, comparedEquipment, prefetcher, balance2, idMapping);
+            ndifr = diff(join(snapshot1), join(snapshot2));
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
 
         LOGGER.debug("diff generated in {} ms", System.currentTimeMillis() - start);
         return ndifr;
     }
 
-    private List<DiffResult> getVoltageLevelDiffs(Network network1, Network network2, DiffEquipment diffEquipment) {
-        if (diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.VOLTAGE_LEVELS)
-            || diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.ALL)) {
-            Set<String> vlIds = getVoltageLevelIds(network1, network2, diffEquipment.getVoltageLevels());
-            return vlIds.stream()
-                        .sorted()
-                        .map(vlId -> voltagediff.diff(network1.getVoltageLevel(vlId), network2.getVoltageLevel(vlId)))
-                        .filter(DiffResult::isDifferent)
-                        .collect(Collectors.toList());
+    /**
+     * Diffs two networks loaded one after the other: the first network is loaded and its compared quantities
+     * extracted, then it is released before loading the second one, so that at most one network is in memory.
+     *
+     * @throws IllegalArgumentException if the balance filter is enabled, it needs both networks at once
+     */
+    public NetworkDiffResults diffSequentially(Supplier<Network> network1, Supplier<Network> network2, DiffEquipment diffEquipment) {
+        Objects.requireNonNull(network1);
+        Objects.requireNonNull(network2);
+        Objects.requireNonNull(diffEquipment);
+        if (config.isBalanceFilter()) {
+            throw new IllegalArgumentException("The sequential diff does not support balance-filter");
+        }
+        DiffSnapshot snapshot1 = snapshot(network1.get(), diffEquipment, IdMapping.empty());
+        DiffSnapshot snapshot2 = snapshot(network2.get(), diffEquipment, idMapping);
+        return diff(snapshot1, snapshot2);
+    }
+
+    /**
+     * Estimates the differences of two networks from the diff of a random sample of their common voltage levels and
+     * branches, for a quick triage before a full diff. The sample only saves the extraction and the comparison of the
+     * unsampled equipments: the networks are already loaded, so the import cost is the same as for a full diff.
+     *
+     * @param fraction the fraction of the voltage levels and branches to sample, in ]0, 1]
+     * @param stratified sample each nominal voltage separately, so that every voltage is represented
+     * @param seed the seed of the random sampling
+     */
+    public ApproximateDiffResults approximateDiff(Network network1, Network network2, DiffEquipment diffEquipment,
+                                                  double fraction, boolean stratified, long seed) {
+        Objects.requireNonNull(network1);
+        Objects.requireNonNull(network2);
+        Objects.requireNonNull(diffEquipment);
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("Invalid sampling fraction: " + fraction);
+        }
+        DiffEquipmentFilter filter = DiffEquipmentFilter.of(diffEquipment);
+        List<String> vlIds = getVoltageLevelIds(network1, diffEquipment, filter, IdMapping.empty()).stream()
+                .filter(vlId -> network2.getVoltageLevel(idMapping.toId2(vlId)) != null)
+                .collect(Collectors.toList());
+        List<String> branchIds = getBranchIds(network1, diffEquipment, filter, IdMapping.empty()).stream()
+                .filter(branchId -> network2.getBranch(idMapping.toId2(branchId)) != null)
+                .collect(Collectors.toList());
+        List<List<String>> vlStrata = DiffSampler.stratify(vlIds, vlId -> network1.getVoltageLevel(vlId).getNominalV(), stratified);
+        List<List<String>> branchStrata = DiffSampler.stratify(branchIds,
+            branchId -> network1.getBranch(branchId).getTerminal1().getVoltageLevel().getNominalV(), stratified);
+        Random random = new Random(seed);
+        List<List<String>> vlSamples = vlStrata.stream().map(stratum -> DiffSampler.sample(stratum, fraction, random)).collect(Collectors.toList());
+        List<List<String>> branchSamples = branchStrata.stream().map(stratum -> DiffSampler.sample(stratum, fraction, random)).collect(Collectors.toList());
+
+        DiffEquipment sampledEquipment = new DiffEquipment();
+        sampledEquipment.setEquipmentTypes(diffEquipment.getEquipmentTypes());
+        sampledEquipment.setVoltageLevels(vlSamples.stream().flatMap(List::stream).collect(Collectors.toList()));
+        sampledEquipment.setBranches(branchSamples.stream().flatMap(List::stream).collect(Collectors.toList()));
+        // the estimates need the comparison outcome whatever the filtering of the output, and no topology
+        DiffConfig sampleConfig = new DiffConfig(config.getGenericThreshold(), config.getVoltageThreshold(), true);
+        sampleConfig.setThresholdRules(config.getThresholdRules());
+        NetworkDiff sampleDiff = new NetworkDiff(sampleConfig, idMapping);
+        DiffSnapshot snapshot1 = sampleDiff.snapshot(network1, sampledEquipment, IdMapping.empty());
+        DiffSnapshot snapshot2 = sampleDiff.snapshot(network2, sampledEquipment, idMapping);
+        NetworkDiffResults ndifr = sampleDiff.diff(snapshot1, snapshot2);
+
+        Set<String> differentVlIds = ndifr.vlDiffs.stream().map(DiffResult::getId).collect(Collectors.toSet());
+        Map<ThresholdRule.Quantity, Double> vlMaxDeltas = new EnumMap<>(ThresholdRule.Quantity.class);
+        double maxV = Double.NaN;
+        for (List<String> vlSample : vlSamples) {
+            for (String vlId : vlSample) {
+                VoltageLevelDiffInfo vlInfo1 = snapshot1.getVoltageLevels().get(vlId);
+                VoltageLevelDiffInfo vlInfo2 = snapshot2.getVoltageLevels().get(vlId);
+                maxV = DiffSampler.maxDelta(maxV, vlInfo1.getMinV(), vlInfo2.getMinV());
+                maxV = DiffSampler.maxDelta(maxV, vlInfo1.getMaxV(), vlInfo2.getMaxV());
+            }
+        }
+        vlMaxDeltas.put(ThresholdRule.Quantity.V, maxV);
+
+        Set<String> differentBranchIds = ndifr.branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toSet());
+        Map<ThresholdRule.Quantity, Double> branchMaxDeltas = new EnumMap<>(ThresholdRule.Quantity.class);
+        double maxP = Double.NaN;
+        double maxQ = Double.NaN;
+        double maxI = Double.NaN;
+        for (List<String> branchSample : branchSamples) {
+            for (String branchId : branchSample) {
+                for (Branch.Side side : Branch.Side.values()) {
+                    BranchDiffInfo.TerminalData terminalData1 = snapshot1.getBranches().get(branchId).getTerminalData(side);
+                    BranchDiffInfo.TerminalData terminalData2 = snapshot2.getBranches().get(branchId).getTerminalData(side);
+                    maxP = DiffSampler.maxDelta(maxP, terminalData1.getP(), terminalData2.getP());
+                    maxQ = DiffSampler.maxDelta(maxQ, terminalData1.getQ(), terminalData2.getQ());
+                    maxI = DiffSampler.maxDelta(maxI, terminalData1.getI(), terminalData2.getI());
+                }
+            }
+        }
+        branchMaxDeltas.put(ThresholdRule.Quantity.P, maxP);
+        branchMaxDeltas.put(ThresholdRule.Quantity.Q, maxQ);
+        branchMaxDeltas.put(ThresholdRule.Quantity.I, maxI);
+
+        return new ApproximateDiffResults(network1.getId(), network2.getId(), fraction, stratified,
+                                          estimate(vlStrata, vlSamples, differentVlIds, vlMaxDeltas),
+                                          estimate(branchStrata, branchSamples, differentBranchIds, branchMaxDeltas));
+    }
+
+    private static ApproximateDiffResults.Estimate estimate(List<List<String>> strata, List<List<String>> samples, Set<String> differentIds,
+                                                            Map<ThresholdRule.Quantity, Double> maxDeltas) {
+        int[] strataSizes = new int[strata.size()];
+        int[] sampleSizes = new int[strata.size()];
+        int[] differentCounts = new int[strata.size()];
+        for (int i = 0; i < strata.size(); i++) {
+            strataSizes[i] = strata.get(i).size();
+            sampleSizes[i] = samples.get(i).size();
+            differentCounts[i] = (int) samples.get(i).stream().filter(differentIds::contains).count();
+        }
+        return new ApproximateDiffResults.Estimate(strataSizes, sampleSizes, differentCounts, maxDeltas);
+    }
+
+    /**
+     * Extracts the quantities compared in the given network, so that the network can be released before the diff.
+     */
+    public DiffSnapshot snapshot(Network network, DiffEquipment diffEquipment) {
+        return snapshot(network, diffEquipment, IdMapping.empty());
+    }
+
+    DiffSnapshot snapshot(Network network, DiffEquipment diffEquipment, IdMapping mapping) {
+        Objects.requireNonNull(network);
+        Objects.requireNonNull(diffEquipment);
+        ExecutorService executor = createPrefetchExecutor();
+        try {
+            return join(snapshot(network, diffEquipment, new DiffPrefetcher(executor != null ? executor : MoreExecutors.directExecutor()), null, mapping));
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the topology or balance diff is enabled and a snapshot has no topology or
+     *                                  balance, like the snapshots read in streaming
+     */
+    public NetworkDiffResults diff(DiffSnapshot snapshot1, DiffSnapshot snapshot2) {
+        Objects.requireNonNull(snapshot1);
+        Objects.requireNonNull(snapshot2);
+        if (config.isTopologyDiff() && (snapshot1.getTopology() == null || snapshot2.getTopology() == null)) {
+            throw new IllegalArgumentException("topology-diff is enabled but a snapshot has no topology");
+        }
+        if (config.isBalanceDiff() && (snapshot1.getBalance() == null || snapshot2.getBalance() == null)) {
+            throw new IllegalArgumentException("balance-diff is enabled but a snapshot has no power balance");
+        }
+        SortedIdJoin vlIds = SortedIdJoin.of(snapshot1.getVoltageLevels().keySet().stream(), snapshot2.getVoltageLevels().keySet().stream());
+        SortedIdJoin branchIds = SortedIdJoin.of(snapshot1.getBranches().keySet().stream(), snapshot2.getBranches().keySet().stream());
+        Set<String> changedVlIds = null;
+        Set<String> changedBranchIds = null;
+        if (config.isFingerprintFilter()) {
+            // the trees cover all the equipments of each snapshot: added and removed ones are reported changed, but only
+            // the common ones are looked up
+            changedVlIds = snapshot1.getVoltageLevelFingerprints(thresholds).getChangedIds(snapshot2.getVoltageLevelFingerprints(thresholds));
+            changedBranchIds = snapshot1.getBranchFingerprints(thresholds).getChangedIds(snapshot2.getBranchFingerprints(thresholds));
+        }
+        List<DiffResult> vlDiffs = compare(vlIds.getCommon(), snapshot1.getVoltageLevels(), snapshot2.getVoltageLevels(), changedVlIds,
+            (vlInfos1, vlInfos2) -> diffOneByOne(vlInfos1, vlInfos2, voltagediff::diff));
+        List<DiffResult> branchDiffs = compare(branchIds.getCommon(), snapshot1.getBranches(), snapshot2.getBranches(), changedBranchIds, branchDiff::diff);
+        List<String> addedBranchIds = branchIds.getOnlyIn2();
+        List<String> removedBranchIds = branchIds.getOnlyIn1();
+        SortedMap<String, String> matchedBranchIds = Collections.emptySortedMap();
+        if (config.isStructuralMatching()) {
+            SortedMap<String, String> matches = BranchMatcher.match(removedBranchIds, addedBranchIds, snapshot1.getBranches(), snapshot2.getBranches());
+            if (!matches.isEmpty()) {
+                Set<String> matchedIds2 = new HashSet<>(matches.values());
+                addedBranchIds = addedBranchIds.stream().filter(id -> !matchedIds2.contains(id)).collect(Collectors.toList());
+                removedBranchIds = removedBranchIds.stream().filter(id -> !matches.containsKey(id)).collect(Collectors.toList());
+                branchDiffs.addAll(compareMatched(matches, snapshot1.getBranches(), snapshot2.getBranches()));
+                branchDiffs.sort(Comparator.comparing(DiffResult::getId));
+            }
+            matchedBranchIds = matches;
+        }
+        NetworkDiffResults ndifr = new NetworkDiffResults(snapshot1.getNetworkId(), snapshot2.getNetworkId(), vlDiffs, branchDiffs,
+                                                          vlIds.getOnlyIn2(), vlIds.getOnlyIn1(), addedBranchIds, removedBranchIds);
+        ndifr.setMatchedBranches(matchedBranchIds);
+        if (snapshot1.getTopology() != null && snapshot2.getTopology() != null) {
+            ndifr.setTopologyDiff(TopologyDiffResults.compare(snapshot1.getTopology(), snapshot2.getTopology()));
+        }
+        if (snapshot1.getBalance() != null && snapshot2.getBalance() != null) {
+            ndifr.setBalanceDiff(PowerBalanceDiffResults.compare(snapshot1.getBalance(), snapshot2.getBalance(), thresholds));
+        }
+        if (config.isLoadingDiff() && snapshot1.getLimits() != null && snapshot2.getLimits() != null) {
+            ndifr.setLoadingDiff(LoadingDiffResults.compare(branchIds.getCommon(), snapshot1, snapshot2));
+        }
+        if (config.isChangeSet()) {
+            ndifr.setChangeSet(ChangeSet.of(snapshot1, snapshot2, ndifr));
+        }
+        return ndifr;
+    }
+
+    private ExecutorService createPrefetchExecutor() {
+        return config.getPrefetchThreads() > 0
+                ? Executors.newFixedThreadPool(config.getPrefetchThreads(), new ThreadFactoryBuilder().setNameFormat("network-diff-prefetch-%d").setDaemon(true).build())
+                : null;
+    }
+
+    /**
+     * Reads voltage levels then branches of a network, so that the bus views are indexed by the voltage level tasks.
+     * The topology, when enabled, always covers the whole network since components are network-wide.
+     */
+    private CompletableFuture<DiffSnapshot> snapshot(Network network, DiffEquipment diffEquipment, DiffPrefetcher prefetcher, PowerBalance computedBalance,
+                                                     IdMapping mapping) {
+        PowerBalance balance = computedBalance != null || !config.isBalanceDiff() ? computedBalance : PowerBalance.of(network, mapping);
+        NetworkIndex index = new NetworkIndex();
+        DiffEquipmentFilter filter = DiffEquipmentFilter.of(diffEquipment);
+        List<String> vlIds = getVoltageLevelIds(network, diffEquipment, filter, mapping);
+        List<String> branchIds = getBranchIds(network, diffEquipment, filter, mapping);
+        BranchLimitTable limits = BranchLimitTable.of(branchIds.stream().<Branch<?>>map(network::getBranch).collect(Collectors.toList()), mapping);
+        return prefetcher.fetch(vlIds, vlId -> voltagediff.extract(network.getVoltageLevel(vlId), index, mapping))
+                         .thenCompose(vlInfos -> prefetcher.fetch(branchIds, branchId -> branchDiff.extract(network.getBranch(branchId), index, limits, mapping))
+                                                           .thenApply(branchInfos -> new DiffSnapshot(network.getId(), toSortedMap(vlIds, vlInfos, mapping),
+                                                                                                      toSortedMap(branchIds, branchInfos, mapping),
+                                                                                                      mapKeys(index.getSubstationIds(), mapping), index.getCountries(),
+                                                                                                      config.isTopologyDiff() ? TopologySnapshot.of(network, mapping) : null, balance, limits)));
+    }
+
+    private static <T> SortedMap<String, T> toSortedMap(List<String> ids, List<T> values, IdMapping mapping) {
+        SortedMap<String, T> map = new TreeMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            map.put(mapping.toId1(ids.get(i)), values.get(i));
         }
-        return Collections.emptyList();
+        return map;
     }
 
-    private Set<String> getVoltageLevelIds(Network network1, Network network2, List<String> vls) {
-        if (vls == null) {
-            return network1.getVoltageLevelStream()
-                           .map(VoltageLevel::getId)
-                           .filter(vlId -> network2.getVoltageLevel(vlId) != null)
-                           .collect(Collectors.toSet());
+    private static <T> Map<String, T> mapKeys(Map<String, T> map, IdMapping mapping) {
+        if (mapping.isEmpty()) {
+            return map;
         }
-        return vls.stream()
-                  .filter(vlId -> network1.getVoltageLevel(vlId) != null && network2.getVoltageLevel(vlId) != null)
-                  .collect(Collectors.toSet());
+        Map<String, T> mappedMap = new HashMap<>();
+        map.forEach((id, value) -> mappedMap.put(mapping.toId1(id), value));
+        return mappedMap;
+    }
+
+    public CompletableFuture<NetworkDiffResults> diffAsync(Network network1, Network network2, Executor executor) {
+        return diffAsync(network1, network2, new DiffEquipment(), executor);
+    }
+
+    /**
+     * Runs {@link #diff(Network, Network, DiffEquipment)} on the given executor, without blocking the caller.
+     */
+    public CompletableFuture<NetworkDiffResults> diffAsync(Network network1, Network network2, DiffEquipment diffEquipment, Executor executor) {
+        Objects.requireNonNull(network1);
+        Objects.requireNonNull(network2);
+        Objects.requireNonNull(diffEquipment);
+        Objects.requireNonNull(executor);
+        return CompletableFuture.supplyAsync(() -> diff(network1, network2, diffEquipment), executor);
+    }
+
+    public Flow.Publisher<DiffResult> diffPublisher(Network network1, Network network2, Executor executor) {
+        return diffPublisher(network1, network2, new DiffEquipment(), executor);
+    }
+
+    /**
+     * Returns a cold publisher of the voltage level and branch differences, in the same order as
+     * {@link #diff(Network, Network, DiffEquipment)}. Each result is computed on the given executor only when
+     * requested by the subscriber, so a slow subscriber never makes the results pile up in memory.
+     */
+    public Flow.Publisher<DiffResult> diffPublisher(Network network1, Network network2, DiffEquipment diffEquipment, Executor executor) {
+        Objects.requireNonNull(network1);
+        Objects.requireNonNull(network2);
+        Objects.requireNonNull(diffEquipment);
+        Objects.requireNonNull(executor);
+        return new DiffResultPublisher(() -> {
+            NetworkIndex index1 = new NetworkIndex();
+            NetworkIndex index2 = new NetworkIndex();
+            DiffEquipmentFilter filter = DiffEquipmentFilter.of(diffEquipment);
+            SortedIdJoin vlIds = SortedIdJoin.of(getVoltageLevelIds(network1, diffEquipment, filter, IdMapping.empty()).stream(),
+                                                 getVoltageLevelIds(network2, diffEquipment, filter, idMapping).stream().map(idMapping::toId1));
+            SortedIdJoin branchIds = SortedIdJoin.of(getBranchIds(network1, diffEquipment, filter, IdMapping.empty()).stream(),
+                                                     getBranchIds(network2, diffEquipment, filter, idMapping).stream().map(idMapping::toId1));
+            Stream<DiffResult> vlDiffs = vlIds.getCommon().stream()
+                    .map(vlId -> voltagediff.diff(voltagediff.extract(network1.getVoltageLevel(vlId), index1),
+                                                  voltagediff.extract(network2.getVoltageLevel(idMapping.toId2(vlId)), index2, idMapping)));
+            Stream<DiffResult> branchDiffs = branchIds.getCommon().stream()
+                    .map(branchId -> branchDiff.diff(branchDiff.extract(network1.getBranch(branchId), index1),
+                                                     extractMappedBranch(network2.getBranch(idMapping.toId2(branchId)), index2)));
+            return Stream.concat(vlDiffs, branchDiffs)
+                         .filter(DiffResult::isDifferent)
+                         .iterator();
+        }, executor);
+    }
+
+    /**
+     * Reads a branch of the second network, with its ids mapped to those of the first network.
+     */
+    private BranchDiffInfo extractMappedBranch(Branch<?> branch2, NetworkIndex index2) {
+        return branchDiff.extract(branch2, index2, BranchLimitTable.of(List.<Branch<?>>of(branch2), idMapping), idMapping);
+    }
+
+    static boolean isVoltageLevelsDiff(DiffEquipment diffEquipment) {
+        return diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.VOLTAGE_LEVELS)
+               || diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.ALL);
+    }
+
+    static boolean isBranchesDiff(DiffEquipment diffEquipment) {
+        return diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.BRANCHES)
+               || diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.ALL);
+    }
+
+    /**
+     * Compares the branches matched structurally, each one with the branch of the second network matched to it.
+     */
+    private List<DiffResult> compareMatched(SortedMap<String, String> matchedIds, Map<String, BranchDiffInfo> infos1, Map<String, BranchDiffInfo> infos2) {
+        List<BranchDiffInfo> matchedInfos1 = new ArrayList<>(matchedIds.size());
+        List<BranchDiffInfo> matchedInfos2 = new ArrayList<>(matchedIds.size());
+        for (Map.Entry<String, String> e : matchedIds.entrySet()) {
+            matchedInfos1.add(infos1.get(e.getKey()));
+            matchedInfos2.add(infos2.get(e.getValue()));
+        }
+        return branchDiff.diff(matchedInfos1, matchedInfos2).stream().filter(DiffResult::isDifferent).collect(Collectors.toList());
+    }
+
+    /**
+     * Compares the equipments of the given ids, all of them if changedIds is null, only the changed ones otherwise.
+     */
+    private static <T> List<DiffResult> compare(List<String> ids, Map<String, T> infos1, Map<String, T> infos2, Set<String> changedIds,
+                                                BiFunction<List<T>, List<T>, List<DiffResult>> diff) {
+        List<T> comparedInfos1 = new ArrayList<>();
+        List<T> comparedInfos2 = new ArrayList<>();
+        for (String id : ids) {
+            if (changedIds == null || changedIds.contains(id)) {
+                comparedInfos1.add(infos1.get(id));
+                comparedInfos2.add(infos2.get(id));
+            }
+        }
+        List<DiffResult> diffResults = new ArrayList<>();
+        for (DiffResult diffResult : diff.apply(comparedInfos1, comparedInfos2)) {
+            if (diffResult.isDifferent()) {
+                diffResults.add(diffResult);
+            }
+        }
+        return diffResults;
+    }
+
+    private static <T> List<DiffResult> diffOneByOne(List<T> infos1, List<T> infos2, BiFunction<T, T, DiffResult> diff) {
+        List<DiffResult> diffResults = new ArrayList<>(infos1.size());
+        for (int i = 0; i < infos1.size(); i++) {
+            diffResults.add(diff.apply(infos1.get(i), infos2.get(i)));
+        }
+        return diffResults;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Restricts the compared equipments to the given voltage levels and to the branches connected to them.
+     */
+    private DiffEquipment restrictToVoltageLevels(Network network1, Network network2, DiffEquipment diffEquipment, Set<String> vlIds) {
+        DiffEquipment restricted = new DiffEquipment();
+        restricted.setEquipmentTypes(diffEquipment.getEquipmentTypes());
+        restricted.setCountries(diffEquipment.getCountries());
+        restricted.setSubstations(diffEquipment.getSubstations());
+        restricted.setMinNominalV(diffEquipment.getMinNominalV());
+        restricted.setMaxNominalV(diffEquipment.getMaxNominalV());
+        restricted.setIdRegex(diffEquipment.getIdRegex());
+        Set<String> selectedVlIds = diffEquipment.getVoltageLevels() != null ? new HashSet<>(diffEquipment.getVoltageLevels()) : null;
+        restricted.setVoltageLevels(vlIds.stream()
+                                         .filter(vlId -> selectedVlIds == null || selectedVlIds.contains(vlId))
+                                         .collect(Collectors.toList()));
+        Set<String> selectedBranchIds = diffEquipment.getBranches() != null ? new HashSet<>(diffEquipment.getBranches()) : null;
+        Set<String> branchIds = new TreeSet<>();
+        addConnectedBranchIds(network1, IdMapping.empty(), selectedBranchIds, vlIds, branchIds);
+        addConnectedBranchIds(network2, idMapping, selectedBranchIds, vlIds, branchIds);
+        restricted.setBranches(new ArrayList<>(branchIds));
+        return restricted;
+    }
+
+    /**
+     * @param selectedBranchIds the compared branches, null for all of them
+     */
+    private static void addConnectedBranchIds(Network network, IdMapping mapping, Set<String> selectedBranchIds, Set<String> vlIds, Set<String> branchIds) {
+        network.getBranchStream()
+               .filter(branch -> vlIds.contains(mapping.toId1(branch.getTerminal1().getVoltageLevel().getId()))
+                       || vlIds.contains(mapping.toId1(branch.getTerminal2().getVoltageLevel().getId())))
+               .map(branch -> mapping.toId1(branch.getId()))
+               .filter(branchId -> selectedBranchIds == null || selectedBranchIds.contains(branchId))
+               .forEach(branchIds::add);
     }
 
-    private List<DiffResult> getBranchDiffs(Network network1, Network network2, DiffEquipment diffEquipment) {
-        if (diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.BRANCHES)
-            || diffEquipment.getEquipmentTypes().contains(DiffEquipmentType.ALL)) {
-            Set<String> branchIds = getBranchIds(network1, network2, diffEquipment.getBranches());
-            return branchIds.stream()
-                            .sorted()
-                            .map(branchId -> branchDiff.diff(network1.getBranch(branchId), network2.getBranch(branchId)))
-                            .filter(DiffResult::isDifferent)
-                            .collect(Collectors.toList());
+    /**
+     * Enumerates the ids of the compared voltage levels of a network, applying the filter before any voltage level data is read.
+     * Voltage levels requested by id are looked up with their id in the network.
+     */
+    private static List<String> getVoltageLevelIds(Network network, DiffEquipment diffEquipment, DiffEquipmentFilter filter, IdMapping mapping) {
+        if (!isVoltageLevelsDiff(diffEquipment)) {
+            return Collections.emptyList();
         }
-        return Collections.emptyList();
+        Stream<VoltageLevel> vls = diffEquipment.getVoltageLevels() == null
+                ? network.getVoltageLevelStream()
+                : diffEquipment.getVoltageLevels().stream().distinct().map(mapping::toId2).map(network::getVoltageLevel).filter(Objects::nonNull);
+        return vls.filter(vl -> filter.test(vl, mapping)).map(VoltageLevel::getId).collect(Collectors.toList());
     }
 
-    private Set<String> getBranchIds(Network network1, Network network2, List<String> branches) {
-        if (branches == null) {
-            return network1.getBranchStream()
-                           .map(Branch::getId)
-                           .filter(branchId -> network2.getBranch(branchId) != null)
-                           .collect(Collectors.toSet());
+    /**
+     * Enumerates the ids of the compared branches of a network, applying the filter before any branch data is read.
+     */
+    private static List<String> getBranchIds(Network network, DiffEquipment diffEquipment, DiffEquipmentFilter filter, IdMapping mapping) {
+        if (!isBranchesDiff(diffEquipment)) {
+            return Collections.emptyList();
         }
-        return branches.stream()
-                       .filter(branchId -> network1.getBranch(branchId) != null && network2.getBranch(branchId) != null)
-                       .collect(Collectors.toSet());
+        Stream<Branch<?>> branches = diffEquipment.getBranches() == null
+                ? network.getBranchStream().map(branch -> (Branch<?>) branch)
+                : diffEquipment.getBranches().stream().distinct().map(mapping::toId2).<Branch<?>>map(network::getBranch).filter(Objects::nonNull);
+        return branches.filter(branch -> filter.test(branch, mapping)).map(Branch::getId).collect(Collectors.toList());
     }
 }
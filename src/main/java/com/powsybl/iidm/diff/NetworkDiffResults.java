@@ -10,24 +10,60 @@ import com.fasterxml.jackson.core.JsonGenerator;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
 
 /**
  * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
  */
 public class NetworkDiffResults {
+    static final String VOLTAGE_LEVELS_FIELD = "diff.VoltageLevels";
+    static final String BRANCHES_FIELD = "diff.Branches";
+
     final String networkId1;
     final String networkId2;
 
     final List<DiffResult> vlDiffs;
     final List<DiffResult> branchDiffs;
 
+    final List<String> addedVoltageLevels;
+    final List<String> removedVoltageLevels;
+    final List<String> addedBranches;
+    final List<String> removedBranches;
+
+    private TopologyDiffResults topologyDiff;
+
+    private PowerBalanceDiffResults balanceDiff;
+
+    private LoadingDiffResults loadingDiff;
+
+    private SortedMap<String, String> matchedBranches = Collections.emptySortedMap();
+
+    private ChangeSet changeSet;
+
     public NetworkDiffResults(String networkId1, String networkId2, List<DiffResult> vlDiffs, List<DiffResult> branchDiffs) {
+        this(networkId1, networkId2, vlDiffs, branchDiffs, Collections.emptyList(), Collections.emptyList(),
+             Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Added equipments are only found in the second network, removed ones only in the first network.
+     */
+    public NetworkDiffResults(String networkId1, String networkId2, List<DiffResult> vlDiffs, List<DiffResult> branchDiffs,
+                              List<String> addedVoltageLevels, List<String> removedVoltageLevels,
+                              List<String> addedBranches, List<String> removedBranches) {
         this.networkId1 = Objects.requireNonNull(networkId1);
         this.networkId2 = Objects.requireNonNull(networkId2);
         this.vlDiffs = Objects.requireNonNull(vlDiffs);
         this.branchDiffs = Objects.requireNonNull(branchDiffs);
+        this.addedVoltageLevels = Objects.requireNonNull(addedVoltageLevels);
+        this.removedVoltageLevels = Objects.requireNonNull(removedVoltageLevels);
+        this.addedBranches = Objects.requireNonNull(addedBranches);
+        this.removedBranches = Objects.requireNonNull(removedBranches);
     }
 
     public boolean isDifferent() {
@@ -35,19 +71,146 @@ public class NetworkDiffResults {
                 || branchDiffs.stream().anyMatch(DiffResult::isDifferent);
     }
 
+    /**
+     * Tells whether some voltage levels or branches are found in one network only.
+     */
+    public boolean hasAddedOrRemovedEquipments() {
+        return !addedVoltageLevels.isEmpty() || !removedVoltageLevels.isEmpty()
+                || !addedBranches.isEmpty() || !removedBranches.isEmpty();
+    }
+
+    /**
+     * Returns the topology diff of the networks, null if it has not been computed.
+     */
+    public TopologyDiffResults getTopologyDiff() {
+        return topologyDiff;
+    }
+
+    void setTopologyDiff(TopologyDiffResults topologyDiff) {
+        this.topologyDiff = topologyDiff;
+    }
+
+    /**
+     * Returns the power balance diff of the networks, null if it has not been computed.
+     */
+    public PowerBalanceDiffResults getBalanceDiff() {
+        return balanceDiff;
+    }
+
+    void setBalanceDiff(PowerBalanceDiffResults balanceDiff) {
+        this.balanceDiff = balanceDiff;
+    }
+
+    /**
+     * Returns the loading class changes of the branches, null if they have not been computed.
+     */
+    public LoadingDiffResults getLoadingDiff() {
+        return loadingDiff;
+    }
+
+    void setLoadingDiff(LoadingDiffResults loadingDiff) {
+        this.loadingDiff = loadingDiff;
+    }
+
+    /**
+     * Returns the ids of the branches of the second network matched structurally to branches of the first network,
+     * by id of the first network.
+     */
+    public SortedMap<String, String> getMatchedBranches() {
+        return matchedBranches;
+    }
+
+    /**
+     * Returns the changed equipments, null if they have not been collected.
+     */
+    public ChangeSet getChangeSet() {
+        return changeSet;
+    }
+
+    void setChangeSet(ChangeSet changeSet) {
+        this.changeSet = changeSet;
+    }
+
+    void setMatchedBranches(SortedMap<String, String> matchedBranches) {
+        this.matchedBranches = Collections.unmodifiableSortedMap(Objects.requireNonNull(matchedBranches));
+    }
+
+    public List<String> getAddedVoltageLevels() {
+        return addedVoltageLevels;
+    }
+
+    public List<String> getRemovedVoltageLevels() {
+        return removedVoltageLevels;
+    }
+
+    public List<String> getAddedBranches() {
+        return addedBranches;
+    }
+
+    public List<String> getRemovedBranches() {
+        return removedBranches;
+    }
+
     void writeJson(JsonGenerator generator) {
+        writeJson(generator, (field, diffResult) -> {
+        });
+    }
+
+    /**
+     * @param resultListener called with the array field and the result before writing each result
+     */
+    void writeJson(JsonGenerator generator, BiConsumer<String, DiffResult> resultListener) {
         Objects.requireNonNull(generator);
+        Objects.requireNonNull(resultListener);
         try {
             generator.writeStartObject();
             generator.writeStringField("network1", networkId1);
             generator.writeStringField("network2", networkId2);
-            generator.writeFieldName("diff.VoltageLevels");
-            NetworkDiff.writeJson(generator, vlDiffs);
-            generator.writeFieldName("diff.Branches");
-            NetworkDiff.writeJson(generator, branchDiffs);
+            generator.writeFieldName(VOLTAGE_LEVELS_FIELD);
+            NetworkDiff.writeJson(generator, vlDiffs, diffResult -> resultListener.accept(VOLTAGE_LEVELS_FIELD, diffResult));
+            generator.writeFieldName(BRANCHES_FIELD);
+            NetworkDiff.writeJson(generator, branchDiffs, diffResult -> resultListener.accept(BRANCHES_FIELD, diffResult));
+            writeIds(generator, "diff.AddedVoltageLevels", addedVoltageLevels);
+            writeIds(generator, "diff.RemovedVoltageLevels", removedVoltageLevels);
+            writeIds(generator, "diff.AddedBranches", addedBranches);
+            writeIds(generator, "diff.RemovedBranches", removedBranches);
+            if (topologyDiff != null) {
+                generator.writeFieldName("diff.Topology");
+                topologyDiff.writeJson(generator);
+            }
+            if (balanceDiff != null) {
+                generator.writeFieldName("diff.Balance");
+                balanceDiff.writeJson(generator);
+            }
+            if (loadingDiff != null) {
+                generator.writeFieldName("diff.Loading");
+                loadingDiff.writeJson(generator);
+            }
+            writeMatchedBranches(generator);
             generator.writeEndObject();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    void writeMatchedBranches(JsonGenerator generator) throws IOException {
+        if (!matchedBranches.isEmpty()) {
+            generator.writeArrayFieldStart("diff.MatchedBranches");
+            for (Map.Entry<String, String> e : matchedBranches.entrySet()) {
+                generator.writeStartObject();
+                generator.writeStringField("branch.branchId1", e.getKey());
+                generator.writeStringField("branch.branchId2", e.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeIds(JsonGenerator generator, String name, List<String> ids) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (String id : ids) {
+            generator.writeString(id);
+        }
+        generator.writeEndArray();
+    }
 }
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.io.CountingOutputStream;
+import com.powsybl.commons.PowsyblException;
+import com.powsybl.commons.json.JsonUtil;
+
+/**
+ * Sidecar index of a diff results file, written with it. For each result array, the index maps the id of each result
+ * to the offset of the result in the uncompressed results document, so that a single result is read by seeking to it
+ * instead of parsing the whole document. The offset points at the separator preceding the result.
+ * <p>
+ * The index is binary: for each result array, its field name, fixed-width records sorted by id, holding the position
+ * and length of the id in an id block and the offset of the result, then the id block. It is loaded once and searched
+ * by dichotomy, without being parsed.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class NetworkDiffResultsIndex {
+
+    static final String INDEX_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x4e444958;
+
+    private static final int VERSION = 1;
+
+    // position and length of the id in the id block, offset of the result
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+    private static final class Section {
+        private final int recordsStart;
+        private final int count;
+        private final int idsStart;
+
+        private Section(int recordsStart, int count, int idsStart) {
+            this.recordsStart = recordsStart;
+            this.count = count;
+            this.idsStart = idsStart;
+        }
+    }
+
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+    private final Map<String, Section> sections;
+
+    private NetworkDiffResultsIndex(byte[] bytes, Map<String, Section> sections) {
+        this.bytes = bytes;
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.sections = sections;
+    }
+
+    static Path getIndexFile(Path resultsFile) {
+        return resultsFile.resolveSibling(resultsFile.getFileName().toString() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Records the offset of each result as it is written, the results arrays being written one after the other.
+     */
+    private static final class IndexWriter implements BiConsumer<String, DiffResult> {
+
+        private final JsonGenerator generator;
+        private final CountingOutputStream os;
+        private final Map<String, SortedMap<String, Long>> offsets = new LinkedHashMap<>();
+
+        private IndexWriter(JsonGenerator generator, CountingOutputStream os) {
+            this.generator = generator;
+            this.os = os;
+        }
+
+        @Override
+        public void accept(String resultField, DiffResult diffResult) {
+            try {
+                // the generator buffer is written to the counting stream, without flushing the file
+                generator.flush();
+                offsets.computeIfAbsent(resultField, k -> new TreeMap<>()).put(diffResult.getId(), os.getCount());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(Path indexFile) throws IOException {
+            try (DataOutputStream indexOs = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+                indexOs.writeInt(MAGIC);
+                indexOs.writeInt(VERSION);
+                indexOs.writeInt(offsets.size());
+                for (Map.Entry<String, SortedMap<String, Long>> e : offsets.entrySet()) {
+                    writeString(indexOs, e.getKey());
+                    indexOs.writeInt(e.getValue().size());
+                    List<byte[]> ids = new ArrayList<>(e.getValue().size());
+                    int idPosition = 0;
+                    for (Map.Entry<String, Long> offset : e.getValue().entrySet()) {
+                        byte[] id = offset.getKey().getBytes(StandardCharsets.UTF_8);
+                        ids.add(id);
+                        indexOs.writeInt(idPosition);
+                        indexOs.writeInt(id.length);
+                        indexOs.writeLong(offset.getValue());
+                        idPosition += id.length;
+                    }
+                    indexOs.writeInt(idPosition);
+                    for (byte[] id : ids) {
+                        indexOs.write(id);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(b.length);
+        os.write(b);
+    }
+
+    static void writeJson(Path file, NetworkDiffResults ndifr, boolean gzip, int compressionThreads) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(ndifr);
+        try (CountingOutputStream os = new CountingOutputStream(CompressedStreams.newOutputStream(file, gzip, compressionThreads));
+             JsonGenerator generator = JsonUtil.createJsonFactory().createGenerator(os, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            generator.useDefaultPrettyPrinter();
+            IndexWriter indexWriter = new IndexWriter(generator, os);
+            ndifr.writeJson(generator, indexWriter);
+            indexWriter.write(getIndexFile(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads an index, to look up any number of results.
+     */
+    static NetworkDiffResultsIndex read(Path indexFile) {
+        Objects.requireNonNull(indexFile);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new PowsyblException("Not a results index file: " + indexFile);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new PowsyblException("Unsupported results index version " + version + ": " + indexFile);
+            }
+            int sectionCount = buffer.getInt();
+            Map<String, Section> sections = new HashMap<>();
+            for (int i = 0; i < sectionCount; i++) {
+                byte[] field = new byte[buffer.getInt()];
+                buffer.get(field);
+                int count = buffer.getInt();
+                int recordsStart = buffer.position();
+                buffer.position(recordsStart + count * RECORD_SIZE);
+                int idsLength = buffer.getInt();
+                int idsStart = buffer.position();
+                buffer.position(idsStart + idsLength);
+                sections.put(new String(field, StandardCharsets.UTF_8), new Section(recordsStart, count, idsStart));
+            }
+            return new NetworkDiffResultsIndex(bytes, sections);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new PowsyblException("Truncated results index file: " + indexFile);
+        }
+    }
+
+    /**
+     * Returns the offset of a result, -1 if it is not in the index.
+     */
+    long findOffset(String field, String id) {
+        Objects.requireNonNull(field);
+        Objects.requireNonNull(id);
+        Section section = sections.get(field);
+        if (section == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = section.count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = section.recordsStart + middle * RECORD_SIZE;
+            int comparison = new String(bytes, section.idsStart + buffer.getInt(record), buffer.getInt(record + Integer.BYTES), StandardCharsets.UTF_8)
+                    .compareTo(id);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return buffer.getLong(record + 2 * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+}
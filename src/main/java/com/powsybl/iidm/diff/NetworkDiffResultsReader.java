@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.ByteStreams;
+import com.powsybl.commons.PowsyblException;
+
+/**
+ * Reads the results written by {@link NetworkDiff#writeJson(Path, NetworkDiffResults)}, plain or gzip compressed,
+ * with a streaming parser. Results are read one at a time, and the results rejected by the id filter are skipped
+ * without being parsed into a tree, so that the size of the document does not matter.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class NetworkDiffResultsReader {
+
+    /**
+     * A voltage level or branch result, with its fields as written.
+     */
+    public static final class Element {
+
+        private final DiffEquipmentType equipmentType;
+        private final String id;
+        private final ObjectNode values;
+
+        private Element(DiffEquipmentType equipmentType, String id, ObjectNode values) {
+            this.equipmentType = equipmentType;
+            this.id = id;
+            this.values = values;
+        }
+
+        public DiffEquipmentType getEquipmentType() {
+            return equipmentType;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isDifferent() {
+            return values.path(getPrefix(equipmentType) + "isDifferent").asBoolean();
+        }
+
+        public JsonNode getValues() {
+            return values;
+        }
+    }
+
+    // the diff results contain NaN values for undefined quantities
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+
+    private NetworkDiffResultsReader() {
+    }
+
+    private static String getPrefix(DiffEquipmentType equipmentType) {
+        return equipmentType == DiffEquipmentType.VOLTAGE_LEVELS ? "vl." : "branch.";
+    }
+
+    private static String getField(DiffEquipmentType equipmentType) {
+        return equipmentType == DiffEquipmentType.VOLTAGE_LEVELS ? NetworkDiffResults.VOLTAGE_LEVELS_FIELD : NetworkDiffResults.BRANCHES_FIELD;
+    }
+
+    private static DiffEquipmentType getEquipmentType(String field) {
+        if (NetworkDiffResults.VOLTAGE_LEVELS_FIELD.equals(field)) {
+            return DiffEquipmentType.VOLTAGE_LEVELS;
+        } else if (NetworkDiffResults.BRANCHES_FIELD.equals(field)) {
+            return DiffEquipmentType.BRANCHES;
+        }
+        return null;
+    }
+
+    public static Stream<Element> read(Path file) {
+        return read(file, DiffEquipmentType.ALL, id -> true);
+    }
+
+    /**
+     * Returns the results of an equipment type, {@link DiffEquipmentType#ALL} for all of them, accepted by an id
+     * filter, in file order. The stream holds the file open until it is closed.
+     */
+    public static Stream<Element> read(Path file, DiffEquipmentType equipmentType, Predicate<String> idFilter) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(equipmentType);
+        Objects.requireNonNull(idFilter);
+        try {
+            JsonParser parser = OBJECT_MAPPER.getFactory().createParser(CompressedStreams.newInputStream(file));
+            return StreamSupport.stream(new ElementSpliterator(parser, equipmentType, idFilter), false)
+                                .onClose(() -> {
+                                    try {
+                                        parser.close();
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds single results of a file written with its index, the index being loaded once for all the lookups.
+     */
+    public static final class IndexedResults {
+
+        private final Path file;
+        private final Path indexFile;
+        private final NetworkDiffResultsIndex index;
+
+        private IndexedResults(Path file, Path indexFile) {
+            this.file = file;
+            this.indexFile = indexFile;
+            this.index = NetworkDiffResultsIndex.read(indexFile);
+        }
+
+        /**
+         * @param equipmentType {@link DiffEquipmentType#VOLTAGE_LEVELS} or {@link DiffEquipmentType#BRANCHES}
+         */
+        public Optional<Element> find(DiffEquipmentType equipmentType, String id) {
+            checkEquipmentType(equipmentType);
+            long offset = index.findOffset(getField(equipmentType), Objects.requireNonNull(id));
+            if (offset < 0) {
+                return Optional.empty();
+            }
+            try (InputStream is = openAt(file, offset);
+                 JsonParser parser = OBJECT_MAPPER.getFactory().createParser(is)) {
+                parser.nextToken();
+                Element element = readElement(parser, equipmentType, id::equals);
+                if (element == null) {
+                    throw new PowsyblException("Index " + indexFile + " does not match " + file);
+                }
+                return Optional.of(element);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Loads the index of a file, to read single results at their offset. Compressed files still have to be
+     * decompressed up to the offset of each result.
+     *
+     * @throws IllegalArgumentException if the file has been written without its index
+     */
+    public static IndexedResults openIndexed(Path file) {
+        Objects.requireNonNull(file);
+        Path indexFile = NetworkDiffResultsIndex.getIndexFile(file);
+        if (!Files.exists(indexFile)) {
+            throw new IllegalArgumentException("No index found for " + file);
+        }
+        return new IndexedResults(file, indexFile);
+    }
+
+    /**
+     * Returns the result of an equipment. If the file has been written with its index, the result is read at its
+     * offset, otherwise the results are scanned. The index is loaded on each call: use {@link #openIndexed} to look up
+     * several results.
+     *
+     * @param equipmentType {@link DiffEquipmentType#VOLTAGE_LEVELS} or {@link DiffEquipmentType#BRANCHES}
+     */
+    public static Optional<Element> find(Path file, DiffEquipmentType equipmentType, String id) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(id);
+        checkEquipmentType(equipmentType);
+        if (!Files.exists(NetworkDiffResultsIndex.getIndexFile(file))) {
+            try (Stream<Element> elements = read(file, equipmentType, id::equals)) {
+                return elements.findFirst();
+            }
+        }
+        return openIndexed(file).find(equipmentType, id);
+    }
+
+    private static void checkEquipmentType(DiffEquipmentType equipmentType) {
+        if (equipmentType != DiffEquipmentType.VOLTAGE_LEVELS && equipmentType != DiffEquipmentType.BRANCHES) {
+            throw new IllegalArgumentException("Invalid equipment type: " + equipmentType);
+        }
+    }
+
+    /**
+     * Opens the results at the start of the result following an offset. Plain files are read from the offset,
+     * compressed ones have to be decompressed up to it.
+     */
+    private static InputStream openAt(Path file, long offset) throws IOException {
+        InputStream is;
+        if (CompressedStreams.isGzip(file)) {
+            is = CompressedStreams.newInputStream(file);
+            ByteStreams.skipFully(is, offset);
+        } else {
+            SeekableByteChannel channel = Files.newByteChannel(file);
+            channel.position(offset);
+            is = new BufferedInputStream(Channels.newInputStream(channel));
+        }
+        InputStream bis = is.markSupported() ? is : new BufferedInputStream(is);
+        // skip the array separator and the indentation
+        int b;
+        do {
+            bis.mark(1);
+            b = bis.read();
+        } while (b != '{' && b != -1);
+        bis.reset();
+        return bis;
+    }
+
+    /**
+     * Reads a result from its start object token, returns null if its id is rejected.
+     */
+    private static Element readElement(JsonParser parser, DiffEquipmentType equipmentType, Predicate<String> idFilter) throws IOException {
+        // the id is the first field of a result
+        parser.nextToken();
+        String idField = parser.getCurrentName();
+        String id = parser.nextTextValue();
+        if (!idFilter.test(id)) {
+            while (parser.nextToken() != JsonToken.END_OBJECT) {
+                parser.nextToken();
+                parser.skipChildren();
+            }
+            return null;
+        }
+        ObjectNode values = OBJECT_MAPPER.createObjectNode();
+        values.put(idField, id);
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            values.set(name, parser.readValueAsTree());
+        }
+        return new Element(equipmentType, id, values);
+    }
+
+    private static final class ElementSpliterator extends Spliterators.AbstractSpliterator<Element> {
+
+        private final JsonParser parser;
+        private final DiffEquipmentType equipmentType;
+        private final Predicate<String> idFilter;
+        private DiffEquipmentType currentType;
+
+        private ElementSpliterator(JsonParser parser, DiffEquipmentType equipmentType, Predicate<String> idFilter) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.parser = parser;
+            this.equipmentType = equipmentType;
+            this.idFilter = idFilter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Element> action) {
+            try {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (currentType == null) {
+                        if (token == JsonToken.FIELD_NAME) {
+                            DiffEquipmentType fieldType = getEquipmentType(parser.getCurrentName());
+                            parser.nextToken();
+                            if (fieldType != null && (equipmentType == DiffEquipmentType.ALL || equipmentType == fieldType)) {
+                                currentType = fieldType;
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else if (token == JsonToken.END_ARRAY) {
+                        currentType = null;
+                    } else {
+                        Element element = readElement(parser, currentType, idFilter);
+                        if (element != null) {
+                            action.accept(element);
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
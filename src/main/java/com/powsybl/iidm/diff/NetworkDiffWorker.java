@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.powsybl.computation.local.LocalComputationManager;
+import com.powsybl.iidm.import_.ImportConfig;
+import com.powsybl.iidm.network.Country;
+import com.powsybl.iidm.network.Network;
+
+/**
+ * Worker process of a {@link DistributedNetworkDiff}: diffs the equipments of one partition, described by a JSON file
+ * given as the single argument, importing only the part of the networks they need.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class NetworkDiffWorker {
+
+    static final String INPUT_FILE1 = "input-file1";
+    static final String INPUT_FILE2 = "input-file2";
+    static final String OUTPUT_FILE = "output-file";
+    static final String GENERIC_THRESHOLD = "generic-threshold";
+    static final String VOLTAGE_THRESHOLD = "voltage-threshold";
+    static final String THRESHOLD_RULES = "threshold-rules";
+    static final String FILTER_DIFFERENT = "filter-different";
+    static final String VL_IDS = "vl-ids";
+    static final String BRANCH_IDS = "branch-ids";
+    static final String COUNTRIES = "countries";
+    static final String SUBSTATION_IDS = "substation-ids";
+    static final String MIN_NOMINAL_V = "min-nominal-v";
+    static final String MAX_NOMINAL_V = "max-nominal-v";
+    static final String ID_REGEX = "id-regex";
+
+    private NetworkDiffWorker() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: NetworkDiffWorker PARTITION_FILE");
+        }
+        JsonNode partition;
+        try {
+            partition = new ObjectMapper().readTree(Paths.get(args[0]).toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        DiffConfig config = new DiffConfig(partition.get(GENERIC_THRESHOLD).asDouble(), partition.get(VOLTAGE_THRESHOLD).asDouble(),
+                                           partition.get(FILTER_DIFFERENT).asBoolean());
+        if (partition.hasNonNull(THRESHOLD_RULES)) {
+            config.setThresholdRules(toList(partition.get(THRESHOLD_RULES)).stream().map(ThresholdRule::parse).collect(Collectors.toList()));
+        }
+        DiffEquipment diffEquipment = new DiffEquipment();
+        diffEquipment.setVoltageLevels(toList(partition.get(VL_IDS)));
+        diffEquipment.setBranches(toList(partition.get(BRANCH_IDS)));
+        if (partition.hasNonNull(COUNTRIES)) {
+            List<Country> countries = new ArrayList<>();
+            toList(partition.get(COUNTRIES)).forEach(country -> countries.add(Country.valueOf(country)));
+            diffEquipment.setCountries(countries);
+        }
+        if (partition.hasNonNull(SUBSTATION_IDS)) {
+            diffEquipment.setSubstations(toList(partition.get(SUBSTATION_IDS)));
+        }
+        // NaN bounds are written as strings
+        diffEquipment.setMinNominalV(partition.get(MIN_NOMINAL_V).asDouble(Double.NaN));
+        diffEquipment.setMaxNominalV(partition.get(MAX_NOMINAL_V).asDouble(Double.NaN));
+        if (partition.hasNonNull(ID_REGEX)) {
+            diffEquipment.setIdRegex(partition.get(ID_REGEX).asText());
+        }
+
+        Network network1 = XiidmPartialImporter.load(Paths.get(partition.get(INPUT_FILE1).asText()), diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        Network network2 = XiidmPartialImporter.load(Paths.get(partition.get(INPUT_FILE2).asText()), diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        Path outputFile = Paths.get(partition.get(OUTPUT_FILE).asText());
+        NetworkDiff.writeJson(outputFile, new NetworkDiff(config).diff(network1, network2, diffEquipment));
+    }
+
+    private static List<String> toList(JsonNode array) {
+        List<String> values = new ArrayList<>(array.size());
+        array.forEach(value -> values.add(value.asText()));
+        return values;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.powsybl.iidm.network.Bus;
+import com.powsybl.iidm.network.BusbarSection;
+import com.powsybl.iidm.network.Country;
+import com.powsybl.iidm.network.Substation;
+import com.powsybl.iidm.network.TopologyKind;
+import com.powsybl.iidm.network.VoltageLevel;
+
+/**
+ * Bus view data of a network, shared by the diff procedures of a single diff, so that the bus view of a voltage
+ * level is resolved only once. Voltage levels are indexed on first access, so that prefetching tasks build the
+ * index in parallel, one voltage level at a time.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class NetworkIndex {
+
+    static final class VoltageLevelData {
+        private final String substationId;
+        private final String country;
+        private final double nominalV;
+        private final double lowVoltageLimit;
+        private final double highVoltageLimit;
+        private final String[] busIds;
+        private final double[] busV;
+        private final String[] busbarSectionIds;
+        private final int[] busbarSectionBuses;
+
+        private VoltageLevelData(VoltageLevel vl) {
+            Substation substation = vl.getSubstation();
+            substationId = substation.getId();
+            country = substation.getCountry().map(Country::name).orElse("");
+            nominalV = vl.getNominalV();
+            lowVoltageLimit = vl.getLowVoltageLimit();
+            highVoltageLimit = vl.getHighVoltageLimit();
+            List<Bus> buses = vl.getBusView().getBusStream().collect(Collectors.toList());
+            busIds = new String[buses.size()];
+            busV = new double[buses.size()];
+            for (int i = 0; i < buses.size(); i++) {
+                busIds[i] = buses.get(i).getId();
+                busV[i] = buses.get(i).getV();
+            }
+            if (TopologyKind.NODE_BREAKER.equals(vl.getTopologyKind())) {
+                List<BusbarSection> busbarSections = vl.getNodeBreakerView().getBusbarSectionStream().collect(Collectors.toList());
+                busbarSectionIds = new String[busbarSections.size()];
+                busbarSectionBuses = new int[busbarSections.size()];
+                for (int i = 0; i < busbarSections.size(); i++) {
+                    busbarSectionIds[i] = busbarSections.get(i).getId();
+                    // BusbarSection::getV is not yet implemented in the network store
+                    Bus bus = busbarSections.get(i).getTerminal().getBusView().getBus();
+                    busbarSectionBuses[i] = bus != null ? indexOf(bus.getId()) : -1;
+                }
+            } else {
+                busbarSectionIds = new String[0];
+                busbarSectionBuses = new int[0];
+            }
+        }
+
+        private int indexOf(String busId) {
+            for (int i = 0; i < busIds.length; i++) {
+                if (busIds[i].equals(busId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        String getSubstationId() {
+            return substationId;
+        }
+
+        /**
+         * Returns the country of the substation, an empty string if it is not defined.
+         */
+        String getCountry() {
+            return country;
+        }
+
+        double getNominalV() {
+            return nominalV;
+        }
+
+        double getLowVoltageLimit() {
+            return lowVoltageLimit;
+        }
+
+        double getHighVoltageLimit() {
+            return highVoltageLimit;
+        }
+
+        int getBusCount() {
+            return busIds.length;
+        }
+
+        String getBusId(int bus) {
+            return busIds[bus];
+        }
+
+        double getBusV(int bus) {
+            return busV[bus];
+        }
+
+        int getBusbarSectionCount() {
+            return busbarSectionIds.length;
+        }
+
+        String getBusbarSectionId(int busbarSection) {
+            return busbarSectionIds[busbarSection];
+        }
+
+        /**
+         * Returns the index of the bus of a busbar section, -1 if it is not connected to any bus.
+         */
+        int getBusbarSectionBus(int busbarSection) {
+            return busbarSectionBuses[busbarSection];
+        }
+
+        double getBusbarSectionV(int busbarSection) {
+            int bus = busbarSectionBuses[busbarSection];
+            return bus >= 0 ? busV[bus] : Double.NaN;
+        }
+    }
+
+    private final Map<String, VoltageLevelData> voltageLevels = new ConcurrentHashMap<>();
+
+    VoltageLevelData get(VoltageLevel vl) {
+        Objects.requireNonNull(vl);
+        return voltageLevels.computeIfAbsent(vl.getId(), vlId -> new VoltageLevelData(vl));
+    }
+
+    /**
+     * Returns the data of an already indexed voltage level, null otherwise.
+     */
+    VoltageLevelData get(String vlId) {
+        return voltageLevels.get(Objects.requireNonNull(vlId));
+    }
+
+    /**
+     * Returns the substation id of each indexed voltage level.
+     */
+    Map<String, String> getSubstationIds() {
+        Map<String, String> substationIds = new HashMap<>();
+        voltageLevels.forEach((vlId, vlData) -> substationIds.put(vlId, vlData.getSubstationId()));
+        return substationIds;
+    }
+
+    /**
+     * Returns the country of each substation of the indexed voltage levels.
+     */
+    Map<String, String> getCountries() {
+        Map<String, String> countries = new HashMap<>();
+        voltageLevels.values().forEach(vlData -> countries.put(vlData.getSubstationId(), vlData.getCountry()));
+        return countries;
+    }
+}
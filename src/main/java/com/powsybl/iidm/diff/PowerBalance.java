@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.powsybl.iidm.network.Bus;
+import com.powsybl.iidm.network.Connectable;
+import com.powsybl.iidm.network.ConnectableType;
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.network.Terminal;
+import com.powsybl.iidm.network.VoltageLevel;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Active and reactive power balances of the voltage levels and synchronous components of a network, computed in a
+ * single traversal of its connected terminals. The injections are the sum of the flows of the terminals of all
+ * equipments but branches, the flows are the sum of the flows of the branch terminals, and the mismatch is their
+ * sum, zero for a converged load flow. Terminals without a flow are ignored.
+ * <p>
+ * A synchronous component is identified by the smallest id of its voltage levels, since component numbers depend on
+ * the order of the network elements.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class PowerBalance {
+
+    static final int INJECTION_P = 0;
+    static final int INJECTION_Q = 1;
+    static final int FLOW_P = 2;
+    static final int FLOW_Q = 3;
+    static final int VALUE_COUNT = 4;
+
+    /**
+     * The balance of a voltage level or of a synchronous component, with the highest nominal voltage of its
+     * voltage levels.
+     */
+    static final class Entry {
+        private final double[] values = new double[VALUE_COUNT];
+        private double nominalV = Double.NaN;
+
+        double get(int value) {
+            return values[value];
+        }
+
+        double getMismatchP() {
+            return values[INJECTION_P] + values[FLOW_P];
+        }
+
+        double getMismatchQ() {
+            return values[INJECTION_Q] + values[FLOW_Q];
+        }
+
+        double getNominalV() {
+            return nominalV;
+        }
+
+        private void add(VoltageLevel vl, boolean branch, double p, double q) {
+            if (!Double.isNaN(p)) {
+                values[branch ? FLOW_P : INJECTION_P] += p;
+            }
+            if (!Double.isNaN(q)) {
+                values[branch ? FLOW_Q : INJECTION_Q] += q;
+            }
+            if (Double.isNaN(nominalV) || vl.getNominalV() > nominalV) {
+                nominalV = vl.getNominalV();
+            }
+        }
+    }
+
+    private final SortedMap<String, Entry> voltageLevels;
+    private final SortedMap<String, Entry> synchronousComponents;
+
+    private PowerBalance(SortedMap<String, Entry> voltageLevels, SortedMap<String, Entry> synchronousComponents) {
+        this.voltageLevels = Collections.unmodifiableSortedMap(voltageLevels);
+        this.synchronousComponents = Collections.unmodifiableSortedMap(synchronousComponents);
+    }
+
+    private static boolean isBranch(Connectable<?> connectable) {
+        ConnectableType type = connectable.getType();
+        return type == ConnectableType.LINE || type == ConnectableType.TWO_WINDINGS_TRANSFORMER || type == ConnectableType.THREE_WINDINGS_TRANSFORMER;
+    }
+
+    public static PowerBalance of(Network network) {
+        return of(network, IdMapping.empty());
+    }
+
+    /**
+     * Computes the balances of a network, keyed by the voltage level ids of the first network.
+     */
+    public static PowerBalance of(Network network, IdMapping mapping) {
+        Objects.requireNonNull(network);
+        Objects.requireNonNull(mapping);
+        SortedMap<String, Entry> voltageLevels = new TreeMap<>();
+        TIntObjectHashMap<Entry> componentEntries = new TIntObjectHashMap<>();
+        TIntObjectHashMap<String> componentIds = new TIntObjectHashMap<>();
+        network.getVoltageLevelStream().forEach(vl -> {
+            String vlId = mapping.toId1(vl.getId());
+            Entry vlEntry = new Entry();
+            vlEntry.nominalV = vl.getNominalV();
+            voltageLevels.put(vlId, vlEntry);
+            vl.getConnectableStream().forEach(c -> {
+                // the stream is raw, the wildcard type gives typed terminals without an unchecked cast
+                Connectable<?> connectable = c;
+                if (connectable.getType() == ConnectableType.BUSBAR_SECTION) {
+                    return;
+                }
+                boolean branch = isBranch(connectable);
+                for (Terminal terminal : connectable.getTerminals()) {
+                    if (terminal.getVoltageLevel() != vl || !terminal.isConnected()) {
+                        continue;
+                    }
+                    vlEntry.add(vl, branch, terminal.getP(), terminal.getQ());
+                    Bus bus = terminal.getBusView().getBus();
+                    if (bus != null) {
+                        int num = bus.getSynchronousComponent().getNum();
+                        Entry componentEntry = componentEntries.get(num);
+                        if (componentEntry == null) {
+                            componentEntry = new Entry();
+                            componentEntries.put(num, componentEntry);
+                        }
+                        componentEntry.add(vl, branch, terminal.getP(), terminal.getQ());
+                        String componentId = componentIds.get(num);
+                        if (componentId == null || vlId.compareTo(componentId) < 0) {
+                            componentIds.put(num, vlId);
+                        }
+                    }
+                }
+            });
+        });
+        SortedMap<String, Entry> synchronousComponents = new TreeMap<>();
+        componentEntries.forEachEntry((num, entry) -> {
+            synchronousComponents.put(componentIds.get(num), entry);
+            return true;
+        });
+        return new PowerBalance(voltageLevels, synchronousComponents);
+    }
+
+    SortedMap<String, Entry> getVoltageLevels() {
+        return voltageLevels;
+    }
+
+    SortedMap<String, Entry> getSynchronousComponents() {
+        return synchronousComponents;
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The voltage levels and synchronous components whose power balance changed between two {@link PowerBalance}s.
+ * Balances are compared under the tolerances of the voltage levels, a component having those of its highest nominal
+ * voltage. A balance found in one network only is changed.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class PowerBalanceDiffResults {
+
+    public enum Value {
+        INJECTION_P("injectionP", ThresholdRule.Quantity.P),
+        INJECTION_Q("injectionQ", ThresholdRule.Quantity.Q),
+        FLOW_P("flowP", ThresholdRule.Quantity.P),
+        FLOW_Q("flowQ", ThresholdRule.Quantity.Q),
+        MISMATCH_P("mismatchP", ThresholdRule.Quantity.P),
+        MISMATCH_Q("mismatchQ", ThresholdRule.Quantity.Q);
+
+        private final String fieldName;
+        private final ThresholdRule.Quantity quantity;
+
+        Value(String fieldName, ThresholdRule.Quantity quantity) {
+            this.fieldName = fieldName;
+            this.quantity = quantity;
+        }
+
+        private double get(PowerBalance.Entry entry) {
+            if (entry == null) {
+                return Double.NaN;
+            }
+            switch (this) {
+                case INJECTION_P:
+                    return entry.get(PowerBalance.INJECTION_P);
+                case INJECTION_Q:
+                    return entry.get(PowerBalance.INJECTION_Q);
+                case FLOW_P:
+                    return entry.get(PowerBalance.FLOW_P);
+                case FLOW_Q:
+                    return entry.get(PowerBalance.FLOW_Q);
+                case MISMATCH_P:
+                    return entry.getMismatchP();
+                case MISMATCH_Q:
+                    return entry.getMismatchQ();
+                default:
+                    throw new IllegalStateException("Unknown value " + this);
+            }
+        }
+    }
+
+    /**
+     * The balances of a voltage level or synchronous component in both networks.
+     */
+    public static final class BalanceDiff {
+        private final String id;
+        private final PowerBalance.Entry entry1;
+        private final PowerBalance.Entry entry2;
+
+        private BalanceDiff(String id, PowerBalance.Entry entry1, PowerBalance.Entry entry2) {
+            this.id = id;
+            this.entry1 = entry1;
+            this.entry2 = entry2;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns a value in the first network, NaN if the balance is not in it.
+         */
+        public double getValue1(Value value) {
+            return value.get(entry1);
+        }
+
+        /**
+         * Returns a value in the second network, NaN if the balance is not in it.
+         */
+        public double getValue2(Value value) {
+            return value.get(entry2);
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("balance.id", id);
+            for (Value value : Value.values()) {
+                generator.writeNumberField("balance." + value.fieldName + "1", getValue1(value));
+                generator.writeNumberField("balance." + value.fieldName + "2", getValue2(value));
+                generator.writeNumberField("balance." + value.fieldName + "-delta", getValue2(value) - getValue1(value));
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private final List<BalanceDiff> voltageLevelDiffs;
+    private final List<BalanceDiff> synchronousComponentDiffs;
+
+    private PowerBalanceDiffResults(List<BalanceDiff> voltageLevelDiffs, List<BalanceDiff> synchronousComponentDiffs) {
+        this.voltageLevelDiffs = Collections.unmodifiableList(voltageLevelDiffs);
+        this.synchronousComponentDiffs = Collections.unmodifiableList(synchronousComponentDiffs);
+    }
+
+    static PowerBalanceDiffResults compare(PowerBalance balance1, PowerBalance balance2, ThresholdTable thresholds) {
+        Objects.requireNonNull(balance1);
+        Objects.requireNonNull(balance2);
+        Objects.requireNonNull(thresholds);
+        return new PowerBalanceDiffResults(compare(balance1.getVoltageLevels(), balance2.getVoltageLevels(), thresholds),
+                                           compare(balance1.getSynchronousComponents(), balance2.getSynchronousComponents(), thresholds));
+    }
+
+    private static List<BalanceDiff> compare(SortedMap<String, PowerBalance.Entry> entries1, SortedMap<String, PowerBalance.Entry> entries2,
+                                             ThresholdTable thresholds) {
+        SortedIdJoin ids = SortedIdJoin.of(entries1.keySet().stream(), entries2.keySet().stream());
+        List<BalanceDiff> diffs = new ArrayList<>();
+        for (String id : ids.getCommon()) {
+            PowerBalance.Entry entry1 = entries1.get(id);
+            PowerBalance.Entry entry2 = entries2.get(id);
+            int offset = thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, entry1.getNominalV());
+            for (Value value : Value.values()) {
+                if (!thresholds.areEqual(value.get(entry1), value.get(entry2), offset, value.quantity)) {
+                    diffs.add(new BalanceDiff(id, entry1, entry2));
+                    break;
+                }
+            }
+        }
+        ids.getOnlyIn1().forEach(id -> diffs.add(new BalanceDiff(id, entries1.get(id), null)));
+        ids.getOnlyIn2().forEach(id -> diffs.add(new BalanceDiff(id, null, entries2.get(id))));
+        diffs.sort(Comparator.comparing(BalanceDiff::getId));
+        return diffs;
+    }
+
+    public boolean isDifferent() {
+        return !voltageLevelDiffs.isEmpty() || !synchronousComponentDiffs.isEmpty();
+    }
+
+    public List<BalanceDiff> getVoltageLevelDiffs() {
+        return voltageLevelDiffs;
+    }
+
+    /**
+     * Returns the changed synchronous components, each one identified by the smallest id of its voltage levels.
+     */
+    public List<BalanceDiff> getSynchronousComponentDiffs() {
+        return synchronousComponentDiffs;
+    }
+
+    public Set<String> getChangedVoltageLevelIds() {
+        return voltageLevelDiffs.stream().map(BalanceDiff::getId).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    void writeJson(JsonGenerator generator) {
+        Objects.requireNonNull(generator);
+        try {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("voltageLevels");
+            for (BalanceDiff diff : voltageLevelDiffs) {
+                diff.writeJson(generator);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("synchronousComponents");
+            for (BalanceDiff diff : synchronousComponentDiffs) {
+                diff.writeJson(generator);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
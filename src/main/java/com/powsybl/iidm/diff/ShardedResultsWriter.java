@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.powsybl.commons.json.JsonUtil;
+
+/**
+ * Writes diff results as shards written in parallel, each one by its own generator, and a manifest listing them.
+ * The results of each equipment type are split in contiguous ranges of equal size, in id order. A shard is a diff
+ * document with the network ids and a single result array, so that shards can also be read in parallel. The
+ * manifest holds the shard files with their array field, result count and id range, the added and removed
+ * equipments, the branches matched by structure, and the files of the topology, power balance and loading diffs when
+ * computed, each written as its own document. It is written last, once all the shards are complete. Shards and
+ * documents can be gzip compressed, the manifest is not.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class ShardedResultsWriter {
+
+    static final String MANIFEST_FILE = "manifest.json";
+    static final String TOPOLOGY_FILE = "topology.json";
+    static final String BALANCE_FILE = "balance.json";
+    static final String LOADING_FILE = "loading.json";
+
+    private static final class Shard {
+        private final String file;
+        private final String field;
+        private final List<DiffResult> results;
+
+        private Shard(String file, String field, List<DiffResult> results) {
+            this.file = file;
+            this.field = field;
+            this.results = results;
+        }
+    }
+
+    private ShardedResultsWriter() {
+    }
+
+    static void write(Path directory, NetworkDiffResults ndifr, int shardCount, boolean gzip) {
+        Objects.requireNonNull(directory);
+        Objects.requireNonNull(ndifr);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Invalid shard count: " + shardCount);
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Shard> shards = new ArrayList<>();
+        String extension = gzip ? ".json" + CompressedStreams.GZIP_EXTENSION : ".json";
+        addShards(shards, "voltageLevels-%d" + extension, NetworkDiffResults.VOLTAGE_LEVELS_FIELD, ndifr.vlDiffs, shardCount);
+        addShards(shards, "branches-%d" + extension, NetworkDiffResults.BRANCHES_FIELD, ndifr.branchDiffs, shardCount);
+
+        String documentExtension = gzip ? CompressedStreams.GZIP_EXTENSION : "";
+        int threads = Math.max(1, Math.min(shards.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("network-diff-writer-%d").setDaemon(true).build());
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Shard shard : shards) {
+                futures.add(CompletableFuture.runAsync(() -> writeShard(directory.resolve(shard.file), ndifr, shard), executor));
+            }
+            if (ndifr.getTopologyDiff() != null) {
+                futures.add(CompletableFuture.runAsync(() -> CompressedStreams.writeJson(directory.resolve(TOPOLOGY_FILE + documentExtension), false, 1, ndifr.getTopologyDiff()::writeJson), executor));
+            }
+            if (ndifr.getBalanceDiff() != null) {
+                futures.add(CompletableFuture.runAsync(() -> CompressedStreams.writeJson(directory.resolve(BALANCE_FILE + documentExtension), false, 1, ndifr.getBalanceDiff()::writeJson), executor));
+            }
+            if (ndifr.getLoadingDiff() != null) {
+                futures.add(CompletableFuture.runAsync(() -> CompressedStreams.writeJson(directory.resolve(LOADING_FILE + documentExtension), false, 1, ndifr.getLoadingDiff()::writeJson), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        JsonUtil.writeJson(directory.resolve(MANIFEST_FILE), generator -> writeManifest(generator, ndifr, shards, documentExtension));
+    }
+
+    private static void addShards(List<Shard> shards, String fileFormat, String field, List<DiffResult> results, int shardCount) {
+        int count = Math.min(shardCount, results.size());
+        for (int i = 0; i < count; i++) {
+            List<DiffResult> shardResults = results.subList(i * results.size() / count, (i + 1) * results.size() / count);
+            shards.add(new Shard(String.format(fileFormat, i), field, shardResults));
+        }
+    }
+
+    private static void writeShard(Path file, NetworkDiffResults ndifr, Shard shard) {
+        CompressedStreams.writeJson(file, false, 1, generator -> {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("network1", ndifr.networkId1);
+                generator.writeStringField("network2", ndifr.networkId2);
+                generator.writeFieldName(shard.field);
+                NetworkDiff.writeJson(generator, shard.results);
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static void writeManifest(JsonGenerator generator, NetworkDiffResults ndifr, List<Shard> shards, String documentExtension) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("network1", ndifr.networkId1);
+            generator.writeStringField("network2", ndifr.networkId2);
+            generator.writeStringField("ordering", "id");
+            generator.writeArrayFieldStart("shards");
+            for (Shard shard : shards) {
+                generator.writeStartObject();
+                generator.writeStringField("file", shard.file);
+                generator.writeStringField("field", shard.field);
+                generator.writeNumberField("count", shard.results.size());
+                generator.writeStringField("firstId", shard.results.get(0).getId());
+                generator.writeStringField("lastId", shard.results.get(shard.results.size() - 1).getId());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            if (ndifr.getTopologyDiff() != null) {
+                generator.writeStringField("topology", TOPOLOGY_FILE + documentExtension);
+            }
+            if (ndifr.getBalanceDiff() != null) {
+                generator.writeStringField("balance", BALANCE_FILE + documentExtension);
+            }
+            if (ndifr.getLoadingDiff() != null) {
+                generator.writeStringField("loading", LOADING_FILE + documentExtension);
+            }
+            writeIds(generator, "diff.AddedVoltageLevels", ndifr.addedVoltageLevels);
+            writeIds(generator, "diff.RemovedVoltageLevels", ndifr.removedVoltageLevels);
+            writeIds(generator, "diff.AddedBranches", ndifr.addedBranches);
+            writeIds(generator, "diff.RemovedBranches", ndifr.removedBranches);
+            ndifr.writeMatchedBranches(generator);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeIds(JsonGenerator generator, String name, List<String> ids) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (String id : ids) {
+            generator.writeString(id);
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diffs the snapshot files dropped in a directory against a reference snapshot kept in memory, and writes the
+ * results of each one to {@code <snapshot file name>.json} in an output directory.
+ * <p>
+ * New files are detected by a {@link WatchService} and go through a pipeline of two stages, each one on its own
+ * thread: the import of the snapshot, then its diff and the writing of its results. Stages are connected by bounded
+ * queues, so that when the diff is slower than the snapshots arrive, the import and then the detection of new files
+ * wait instead of piling up snapshots in memory. The latency of each snapshot, from its detection to its results
+ * being written, is logged.
+ * <p>
+ * Snapshot files should be dropped atomically, by moving them to the directory once written. Files whose name
+ * starts with a dot are ignored.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public class SnapshotWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotWatcher.class);
+
+    private static final long POLL_TIMEOUT_MS = 500;
+
+    private static final class Task {
+        private final Path file;
+        private final long detectionTime;
+        private DiffSnapshot snapshot;
+        private long importTime;
+
+        private Task(Path file, long detectionTime) {
+            this.file = file;
+            this.detectionTime = detectionTime;
+        }
+    }
+
+    /**
+     * Tells the stages to stop.
+     */
+    private static final Task END = new Task(null, 0);
+
+    private final NetworkDiff networkDiff;
+    private final DiffSnapshot reference;
+    private final Function<Path, DiffSnapshot> snapshotReader;
+    private final Path outputDirectory;
+    private final int queueCapacity;
+    private final AtomicInteger diffCount = new AtomicInteger();
+
+    /**
+     * @param snapshotReader reads the snapshot of a file, with the same config and compared equipments as the
+     *                       reference
+     * @param queueCapacity the number of snapshots waiting for each stage of the pipeline
+     */
+    public SnapshotWatcher(NetworkDiff networkDiff, DiffSnapshot reference, Function<Path, DiffSnapshot> snapshotReader,
+                           Path outputDirectory, int queueCapacity) {
+        this.networkDiff = Objects.requireNonNull(networkDiff);
+        this.reference = Objects.requireNonNull(reference);
+        this.snapshotReader = Objects.requireNonNull(snapshotReader);
+        this.outputDirectory = Objects.requireNonNull(outputDirectory);
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid queue capacity: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the number of snapshots diffed so far.
+     */
+    public int getDiffCount() {
+        return diffCount.get();
+    }
+
+    /**
+     * Diffs a snapshot file against the reference, on the calling thread.
+     */
+    public void diff(Path file) {
+        Objects.requireNonNull(file);
+        Task task = new Task(file, System.nanoTime());
+        importSnapshot(task);
+        diffSnapshot(task);
+    }
+
+    private void importSnapshot(Task task) {
+        long start = System.nanoTime();
+        task.snapshot = snapshotReader.apply(task.file);
+        task.importTime = System.nanoTime() - start;
+    }
+
+    private void diffSnapshot(Task task) {
+        long start = System.nanoTime();
+        NetworkDiffResults ndifr = networkDiff.diff(reference, task.snapshot);
+        NetworkDiff.writeJson(outputDirectory.resolve(task.file.getFileName().toString() + ".json"), ndifr);
+        long end = System.nanoTime();
+        diffCount.incrementAndGet();
+        LOGGER.info("Snapshot {} diffed in {} ms: import {} ms, diff and write {} ms, waiting {} ms", task.file.getFileName(),
+                    TimeUnit.NANOSECONDS.toMillis(end - task.detectionTime), TimeUnit.NANOSECONDS.toMillis(task.importTime),
+                    TimeUnit.NANOSECONDS.toMillis(end - start), TimeUnit.NANOSECONDS.toMillis(start - task.detectionTime - task.importTime));
+    }
+
+    /**
+     * Watches a directory for new snapshot files and diffs them, until the given number of files is detected or the
+     * calling thread is interrupted. The files already in the directory when the watch starts are diffed first, in
+     * name order. The snapshots detected are all diffed before returning. A snapshot failing to be imported or diffed
+     * is logged and skipped.
+     *
+     * @param maxSnapshots the number of files to detect, 0 for no limit
+     */
+    public void watch(Path directory, int maxSnapshots) {
+        Objects.requireNonNull(directory);
+        BlockingQueue<Task> detected = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Task> imported = new ArrayBlockingQueue<>(queueCapacity);
+        Thread importThread = new Thread(() -> runStage(detected, imported, this::importSnapshot), "network-diff-watch-import");
+        Thread diffThread = new Thread(() -> runStage(imported, null, this::diffSnapshot), "network-diff-watch-diff");
+        importThread.start();
+        diffThread.start();
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            LOGGER.info("Watching {}", directory);
+            // files created between the registration and the scan are both listed and notified, they are diffed once
+            Set<Path> scannedFiles = new TreeSet<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(SnapshotWatcher::isSnapshot).forEach(scannedFiles::add);
+            }
+            int count = 0;
+            for (Path file : scannedFiles) {
+                if (maxSnapshots != 0 && count >= maxSnapshots) {
+                    break;
+                }
+                // blocks while the import is late
+                detected.put(new Task(file, System.nanoTime()));
+                count++;
+            }
+            while (maxSnapshots == 0 || count < maxSnapshots) {
+                WatchKey key = watchService.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.warn("Snapshots of {} lost, too many of them were dropped at once", directory);
+                    } else if (count < maxSnapshots || maxSnapshots == 0) {
+                        Path file = directory.resolve((Path) event.context());
+                        if (isSnapshot(file) && !scannedFiles.remove(file)) {
+                            detected.put(new Task(file, System.nanoTime()));
+                            count++;
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            stop(detected, importThread, diffThread);
+        }
+    }
+
+    /**
+     * Hidden files are the snapshots being written, to be moved in the directory once complete.
+     */
+    private static boolean isSnapshot(Path file) {
+        return !file.getFileName().toString().startsWith(".");
+    }
+
+    private static void stop(BlockingQueue<Task> detected, Thread importThread, Thread diffThread) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            detected.put(END);
+            importThread.join();
+            diffThread.join();
+        } catch (InterruptedException e) {
+            importThread.interrupt();
+            diffThread.interrupt();
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runStage(BlockingQueue<Task> input, BlockingQueue<Task> output, Consumer<Task> stage) {
+        try {
+            while (true) {
+                Task task = input.take();
+                if (task != END) {
+                    try {
+                        stage.accept(task);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Diff of snapshot {} failed", task.file, e);
+                        continue;
+                    }
+                }
+                if (output != null) {
+                    output.put(task);
+                }
+                if (task == END) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Matches the ids of two networks with a single merge-join of both sorted id arrays, splitting them into
+ * the ids found in both networks, in the first one only and in the second one only. All lists are sorted.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class SortedIdJoin {
+
+    private final List<String> common;
+    private final List<String> onlyIn1;
+    private final List<String> onlyIn2;
+
+    private SortedIdJoin(List<String> common, List<String> onlyIn1, List<String> onlyIn2) {
+        this.common = Collections.unmodifiableList(common);
+        this.onlyIn1 = Collections.unmodifiableList(onlyIn1);
+        this.onlyIn2 = Collections.unmodifiableList(onlyIn2);
+    }
+
+    static SortedIdJoin of(Stream<String> ids1, Stream<String> ids2) {
+        Objects.requireNonNull(ids1);
+        Objects.requireNonNull(ids2);
+        String[] sortedIds1 = sortDistinct(ids1.toArray(String[]::new));
+        String[] sortedIds2 = sortDistinct(ids2.toArray(String[]::new));
+        List<String> common = new ArrayList<>(Math.min(sortedIds1.length, sortedIds2.length));
+        List<String> onlyIn1 = new ArrayList<>();
+        List<String> onlyIn2 = new ArrayList<>();
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < sortedIds1.length || i2 < sortedIds2.length) {
+            int cmp;
+            if (i1 == sortedIds1.length) {
+                cmp = 1;
+            } else if (i2 == sortedIds2.length) {
+                cmp = -1;
+            } else {
+                cmp = sortedIds1[i1].compareTo(sortedIds2[i2]);
+            }
+            if (cmp == 0) {
+                common.add(sortedIds1[i1]);
+                i1++;
+                i2++;
+            } else if (cmp < 0) {
+                onlyIn1.add(sortedIds1[i1++]);
+            } else {
+                onlyIn2.add(sortedIds2[i2++]);
+            }
+        }
+        return new SortedIdJoin(common, onlyIn1, onlyIn2);
+    }
+
+    private static String[] sortDistinct(String[] ids) {
+        Arrays.parallelSort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (distinct == 0 || !ids[distinct - 1].equals(ids[i])) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return distinct == ids.length ? ids : Arrays.copyOf(ids, distinct);
+    }
+
+    List<String> getCommon() {
+        return common;
+    }
+
+    List<String> getOnlyIn1() {
+        return onlyIn1;
+    }
+
+    List<String> getOnlyIn2() {
+        return onlyIn2;
+    }
+}
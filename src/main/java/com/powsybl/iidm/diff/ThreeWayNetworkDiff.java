@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.powsybl.iidm.network.Network;
+
+/**
+ * Three-way diff of two networks A and B derived from a common base network, classifying each voltage level and
+ * branch by where it changed, with the thresholds of the {@link DiffConfig}. The equipments of the three snapshots are
+ * walked once, in id order, and the results are streamed.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public class ThreeWayNetworkDiff {
+
+    public enum Status {
+        UNCHANGED,
+        CHANGED_IN_A,
+        CHANGED_IN_B,
+        SAME_CHANGE,
+        CONFLICT
+    }
+
+    public static final class ThreeWayDiffResult {
+
+        private final String id;
+        private final DiffEquipmentType equipmentType;
+        private final Status status;
+        private final boolean inBase;
+        private final boolean inA;
+        private final boolean inB;
+        private final DiffResult diffA;
+        private final DiffResult diffB;
+
+        private ThreeWayDiffResult(String id, DiffEquipmentType equipmentType, Status status, boolean inBase, boolean inA, boolean inB,
+                                   DiffResult diffA, DiffResult diffB) {
+            this.id = id;
+            this.equipmentType = equipmentType;
+            this.status = status;
+            this.inBase = inBase;
+            this.inA = inA;
+            this.inB = inB;
+            this.diffA = diffA;
+            this.diffB = diffB;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public DiffEquipmentType getEquipmentType() {
+            return equipmentType;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void writeJson(JsonGenerator generator) {
+            Objects.requireNonNull(generator);
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("id", id);
+                generator.writeStringField("type", equipmentType.name());
+                generator.writeStringField("status", status.name());
+                generator.writeBooleanField("inBase", inBase);
+                generator.writeBooleanField("inA", inA);
+                generator.writeBooleanField("inB", inB);
+                if (diffA != null) {
+                    generator.writeFieldName("diffA");
+                    diffA.writeJson(generator);
+                }
+                if (diffB != null) {
+                    generator.writeFieldName("diffB");
+                    diffB.writeJson(generator);
+                }
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final DiffConfig config;
+    private final VoltageLevelDiffProc voltageLevelDiff;
+    private final BranchDiffProc branchDiff;
+
+    public ThreeWayNetworkDiff(DiffConfig config) {
+        this.config = Objects.requireNonNull(config);
+        // the classification needs the comparison outcome whatever the filtering of the output
+        DiffConfig classificationConfig = new DiffConfig(config.getGenericThreshold(), config.getVoltageThreshold(), true);
+        classificationConfig.setThresholdRules(config.getThresholdRules());
+        voltageLevelDiff = new VoltageLevelDiffProc(classificationConfig);
+        branchDiff = new BranchDiffProc(classificationConfig);
+    }
+
+    public Stream<ThreeWayDiffResult> diff(Network base, Network networkA, Network networkB, DiffEquipment diffEquipment) {
+        NetworkDiff networkDiff = new NetworkDiff(config);
+        return diff(networkDiff.snapshot(base, diffEquipment), networkDiff.snapshot(networkA, diffEquipment), networkDiff.snapshot(networkB, diffEquipment));
+    }
+
+    /**
+     * Returns the results of all the equipments of the snapshots, or only of the changed ones if the config filters
+     * the differences.
+     */
+    public Stream<ThreeWayDiffResult> diff(DiffSnapshot base, DiffSnapshot snapshotA, DiffSnapshot snapshotB) {
+        Objects.requireNonNull(base);
+        Objects.requireNonNull(snapshotA);
+        Objects.requireNonNull(snapshotB);
+        Stream<ThreeWayDiffResult> results = Stream.concat(
+            diff(DiffEquipmentType.VOLTAGE_LEVELS, base.getVoltageLevels(), snapshotA.getVoltageLevels(), snapshotB.getVoltageLevels(), voltageLevelDiff::diff),
+            diff(DiffEquipmentType.BRANCHES, base.getBranches(), snapshotA.getBranches(), snapshotB.getBranches(), branchDiff::diff));
+        return config.isFilterDifferent() ? results.filter(result -> result.getStatus() != Status.UNCHANGED) : results;
+    }
+
+    private static <T> Stream<ThreeWayDiffResult> diff(DiffEquipmentType equipmentType, Map<String, T> base, Map<String, T> infosA, Map<String, T> infosB,
+                                                       BiFunction<T, T, DiffResult> diff) {
+        Iterator<String> ids = new SortedUnionIterator(List.of(base.keySet().iterator(), infosA.keySet().iterator(), infosB.keySet().iterator()));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(ids, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT), false)
+                            .map(id -> classify(id, equipmentType, base.get(id), infosA.get(id), infosB.get(id), diff));
+    }
+
+    private static <T> ThreeWayDiffResult classify(String id, DiffEquipmentType equipmentType, T baseInfo, T infoA, T infoB, BiFunction<T, T, DiffResult> diff) {
+        DiffResult diffA = baseInfo != null && infoA != null ? diff.apply(baseInfo, infoA) : null;
+        DiffResult diffB = baseInfo != null && infoB != null ? diff.apply(baseInfo, infoB) : null;
+        boolean changedInA = isChanged(baseInfo, infoA, diffA);
+        boolean changedInB = isChanged(baseInfo, infoB, diffB);
+        Status status;
+        if (changedInA && changedInB) {
+            boolean sameChange = infoA == null && infoB == null
+                    || infoA != null && infoB != null && !diff.apply(infoA, infoB).isDifferent();
+            status = sameChange ? Status.SAME_CHANGE : Status.CONFLICT;
+        } else if (changedInA) {
+            status = Status.CHANGED_IN_A;
+        } else if (changedInB) {
+            status = Status.CHANGED_IN_B;
+        } else {
+            status = Status.UNCHANGED;
+        }
+        return new ThreeWayDiffResult(id, equipmentType, status, baseInfo != null, infoA != null, infoB != null, diffA, diffB);
+    }
+
+    /**
+     * An equipment changed if it has been added, removed, or if its compared quantities differ.
+     */
+    private static <T> boolean isChanged(T baseInfo, T info, DiffResult diffResult) {
+        return diffResult != null ? diffResult.isDifferent() : (baseInfo == null) != (info == null);
+    }
+
+    public static void writeJson(Path file, DiffSnapshot base, DiffSnapshot snapshotA, DiffSnapshot snapshotB, Stream<ThreeWayDiffResult> results) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(results);
+        CompressedStreams.writeJson(file, false, 1, generator -> {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("base", base.getNetworkId());
+                generator.writeStringField("networkA", snapshotA.getNetworkId());
+                generator.writeStringField("networkB", snapshotB.getNetworkId());
+                generator.writeArrayFieldStart("diff.ThreeWay");
+                results.forEach(result -> result.writeJson(generator));
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Merges sorted iterators of distinct ids into a sorted iterator of distinct ids.
+     */
+    private static final class SortedUnionIterator implements Iterator<String> {
+
+        private final List<Iterator<String>> iterators;
+        private final String[] heads;
+
+        private SortedUnionIterator(List<Iterator<String>> iterators) {
+            this.iterators = iterators;
+            heads = new String[iterators.size()];
+            for (int i = 0; i < heads.length; i++) {
+                heads[i] = nextOrNull(iterators.get(i));
+            }
+        }
+
+        private static String nextOrNull(Iterator<String> iterator) {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (String head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String next() {
+            String min = null;
+            for (String head : heads) {
+                if (head != null && (min == null || head.compareTo(min) < 0)) {
+                    min = head;
+                }
+            }
+            if (min == null) {
+                throw new NoSuchElementException();
+            }
+            for (int i = 0; i < heads.length; i++) {
+                if (min.equals(heads[i])) {
+                    heads[i] = nextOrNull(iterators.get(i));
+                }
+            }
+            return min;
+        }
+    }
+}
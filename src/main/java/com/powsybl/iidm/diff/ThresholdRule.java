@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Objects;
+
+/**
+ * Absolute and relative tolerances of a compared quantity, for an equipment type and a range of nominal voltages.
+ * Two values are equal if their difference is within the absolute tolerance, or within the relative tolerance times
+ * the largest of their magnitudes.
+ * <p>
+ * In the {@code threshold-rules} list of the {@code networks-diff} config, a rule is written as
+ * {@code "<equipment type> <quantity> <min nominal V> <max nominal V> <absolute> <relative>"}, where {@code *}
+ * matches any equipment type, quantity or voltage bound, for instance {@code "BRANCHES P 0 150 0.5 0.01"}.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class ThresholdRule {
+
+    public enum Quantity {
+        P,
+        Q,
+        I,
+        V
+    }
+
+    private static final String ANY = "*";
+
+    private final DiffEquipmentType equipmentType;
+    private final Quantity quantity;
+    private final double minNominalV;
+    private final double maxNominalV;
+    private final double absoluteThreshold;
+    private final double relativeThreshold;
+
+    /**
+     * @param equipmentType the equipment type, {@link DiffEquipmentType#ALL} for any type
+     * @param quantity the quantity, null for any quantity
+     * @param minNominalV the inclusive lower bound of the nominal voltages, NaN if unbounded
+     * @param maxNominalV the exclusive upper bound of the nominal voltages, NaN if unbounded
+     */
+    public ThresholdRule(DiffEquipmentType equipmentType, Quantity quantity, double minNominalV, double maxNominalV,
+                         double absoluteThreshold, double relativeThreshold) {
+        if (absoluteThreshold < 0 || relativeThreshold < 0) {
+            throw new IllegalArgumentException("Negative values for threshold not permitted");
+        }
+        this.equipmentType = Objects.requireNonNull(equipmentType);
+        this.quantity = quantity;
+        this.minNominalV = minNominalV;
+        this.maxNominalV = maxNominalV;
+        this.absoluteThreshold = absoluteThreshold;
+        this.relativeThreshold = relativeThreshold;
+    }
+
+    public static ThresholdRule parse(String rule) {
+        Objects.requireNonNull(rule);
+        String[] fields = rule.trim().split("\\s+");
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("Invalid threshold rule '" + rule
+                    + "', expected '<equipment type> <quantity> <min nominal V> <max nominal V> <absolute> <relative>'");
+        }
+        return new ThresholdRule(ANY.equals(fields[0]) ? DiffEquipmentType.ALL : DiffEquipmentType.valueOf(fields[0]),
+                                 ANY.equals(fields[1]) ? null : Quantity.valueOf(fields[1]),
+                                 parseBound(fields[2]),
+                                 parseBound(fields[3]),
+                                 Double.parseDouble(fields[4]),
+                                 Double.parseDouble(fields[5]));
+    }
+
+    private static double parseBound(String bound) {
+        return ANY.equals(bound) ? Double.NaN : Double.parseDouble(bound);
+    }
+
+    private static String formatBound(double bound) {
+        return Double.isNaN(bound) ? ANY : Double.toString(bound);
+    }
+
+    public DiffEquipmentType getEquipmentType() {
+        return equipmentType;
+    }
+
+    public Quantity getQuantity() {
+        return quantity;
+    }
+
+    public double getMinNominalV() {
+        return minNominalV;
+    }
+
+    public double getMaxNominalV() {
+        return maxNominalV;
+    }
+
+    public double getAbsoluteThreshold() {
+        return absoluteThreshold;
+    }
+
+    public double getRelativeThreshold() {
+        return relativeThreshold;
+    }
+
+    boolean matches(DiffEquipmentType type, Quantity q, double nominalV) {
+        return (equipmentType == DiffEquipmentType.ALL || equipmentType == type)
+                && (quantity == null || quantity == q)
+                && (Double.isNaN(minNominalV) || nominalV >= minNominalV)
+                && (Double.isNaN(maxNominalV) || nominalV < maxNominalV);
+    }
+
+    /**
+     * Returns the rule in the format of the config.
+     */
+    @Override
+    public String toString() {
+        return (equipmentType == DiffEquipmentType.ALL ? ANY : equipmentType.name()) + " "
+                + (quantity == null ? ANY : quantity.name()) + " "
+                + formatBound(minNominalV) + " "
+                + formatBound(maxNominalV) + " "
+                + absoluteThreshold + " "
+                + relativeThreshold;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * The {@link ThresholdRule}s of a config compiled into flat arrays of tolerances indexed by equipment type, voltage
+ * class and quantity. Voltage classes are the intervals between the bounds of the rules, so that every rule either
+ * covers a whole class or none of it. A comparison is an array access, without any rule lookup.
+ * <p>
+ * The global thresholds of the config are the default absolute tolerances, the voltage threshold for V and the
+ * generic one for P, Q and I, and later rules override earlier ones.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+final class ThresholdTable {
+
+    private static final int QUANTITIES = ThresholdRule.Quantity.values().length;
+
+    private final double[] voltageBounds;
+    private final int classCount;
+    private final double[] absoluteThresholds;
+    private final double[] relativeThresholds;
+
+    private ThresholdTable(double[] voltageBounds, double[] absoluteThresholds, double[] relativeThresholds) {
+        this.voltageBounds = voltageBounds;
+        this.classCount = voltageBounds.length + 1;
+        this.absoluteThresholds = absoluteThresholds;
+        this.relativeThresholds = relativeThresholds;
+    }
+
+    static ThresholdTable compile(DiffConfig config) {
+        Objects.requireNonNull(config);
+        TreeSet<Double> bounds = new TreeSet<>();
+        for (ThresholdRule rule : config.getThresholdRules()) {
+            if (!Double.isNaN(rule.getMinNominalV())) {
+                bounds.add(rule.getMinNominalV());
+            }
+            if (!Double.isNaN(rule.getMaxNominalV())) {
+                bounds.add(rule.getMaxNominalV());
+            }
+        }
+        double[] voltageBounds = bounds.stream().mapToDouble(Double::doubleValue).toArray();
+        int classCount = voltageBounds.length + 1;
+        DiffEquipmentType[] types = DiffEquipmentType.values();
+        double[] absoluteThresholds = new double[types.length * classCount * QUANTITIES];
+        double[] relativeThresholds = new double[absoluteThresholds.length];
+        for (DiffEquipmentType type : types) {
+            for (int voltageClass = 0; voltageClass < classCount; voltageClass++) {
+                // any voltage of the class is matched by the same rules, its lower bound is used
+                double nominalV = voltageClass == 0 ? Double.NEGATIVE_INFINITY : voltageBounds[voltageClass - 1];
+                for (ThresholdRule.Quantity quantity : ThresholdRule.Quantity.values()) {
+                    int cell = (type.ordinal() * classCount + voltageClass) * QUANTITIES + quantity.ordinal();
+                    absoluteThresholds[cell] = quantity == ThresholdRule.Quantity.V ? config.getVoltageThreshold() : config.getGenericThreshold();
+                    for (ThresholdRule rule : config.getThresholdRules()) {
+                        if (rule.matches(type, quantity, nominalV)) {
+                            absoluteThresholds[cell] = rule.getAbsoluteThreshold();
+                            relativeThresholds[cell] = rule.getRelativeThreshold();
+                        }
+                    }
+                }
+            }
+        }
+        return new ThresholdTable(voltageBounds, absoluteThresholds, relativeThresholds);
+    }
+
+    /**
+     * Returns the offset of the tolerances of an equipment, to be computed once per equipment.
+     */
+    int getOffset(DiffEquipmentType type, double nominalV) {
+        int index = Arrays.binarySearch(voltageBounds, nominalV);
+        int voltageClass = index >= 0 ? index + 1 : -index - 1;
+        return (type.ordinal() * classCount + voltageClass) * QUANTITIES;
+    }
+
+    double getAbsoluteThreshold(int offset, ThresholdRule.Quantity quantity) {
+        return absoluteThresholds[offset + quantity.ordinal()];
+    }
+
+    double getRelativeThreshold(int offset, ThresholdRule.Quantity quantity) {
+        return relativeThresholds[offset + quantity.ordinal()];
+    }
+
+    boolean areEqual(double value1, double value2, int offset, ThresholdRule.Quantity quantity) {
+        int cell = offset + quantity.ordinal();
+        return DiffKernel.areEqual(value1, value2, absoluteThresholds[cell], relativeThresholds[cell]);
+    }
+}
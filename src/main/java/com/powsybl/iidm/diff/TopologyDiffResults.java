@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Bus splits and merges per voltage level, and synchronous and connected component changes of the whole network,
+ * between two {@link TopologySnapshot}s. Groups are compared on the vertices found in both networks, each group
+ * being identified by its first vertex.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class TopologyDiffResults {
+
+    private static final int NO_ENTRY = -1;
+
+    /**
+     * A group of the first network split into several groups of the second network, or several groups of the first
+     * network merged into one group of the second network.
+     */
+    public static final class GroupChange {
+        private final List<String> groups1;
+        private final List<String> groups2;
+
+        private GroupChange(List<String> groups1, List<String> groups2) {
+            this.groups1 = Collections.unmodifiableList(groups1);
+            this.groups2 = Collections.unmodifiableList(groups2);
+        }
+
+        public List<String> getGroups1() {
+            return groups1;
+        }
+
+        public List<String> getGroups2() {
+            return groups2;
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            writeIds(generator, "groups1", groups1);
+            writeIds(generator, "groups2", groups2);
+            generator.writeEndObject();
+        }
+    }
+
+    public static final class VoltageLevelTopologyDiff {
+        private final String vlId;
+        private final int busCount1;
+        private final int busCount2;
+        private final List<GroupChange> busSplits = new ArrayList<>();
+        private final List<GroupChange> busMerges = new ArrayList<>();
+
+        private VoltageLevelTopologyDiff(String vlId, int busCount1, int busCount2) {
+            this.vlId = vlId;
+            this.busCount1 = busCount1;
+            this.busCount2 = busCount2;
+        }
+
+        public String getVlId() {
+            return vlId;
+        }
+
+        public int getBusCount1() {
+            return busCount1;
+        }
+
+        public int getBusCount2() {
+            return busCount2;
+        }
+
+        public List<GroupChange> getBusSplits() {
+            return busSplits;
+        }
+
+        public List<GroupChange> getBusMerges() {
+            return busMerges;
+        }
+
+        private boolean isDifferent() {
+            return busCount1 != busCount2 || !busSplits.isEmpty() || !busMerges.isEmpty();
+        }
+
+        private void writeJson(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("vl.vlId", vlId);
+            generator.writeNumberField("vl.busCount1", busCount1);
+            generator.writeNumberField("vl.busCount2", busCount2);
+            writeChanges(generator, "vl.busSplits", busSplits);
+            writeChanges(generator, "vl.busMerges", busMerges);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Splits and merges between the groups of two networks.
+     */
+    private static final class GroupChanges {
+        private final List<GroupChange> splits = new ArrayList<>();
+        private final List<GroupChange> merges = new ArrayList<>();
+    }
+
+    private final int synchronousComponentCount1;
+    private final int synchronousComponentCount2;
+    private final int connectedComponentCount1;
+    private final int connectedComponentCount2;
+    private final GroupChanges synchronousComponentChanges;
+    private final GroupChanges connectedComponentChanges;
+    private final List<VoltageLevelTopologyDiff> voltageLevelDiffs;
+
+    private TopologyDiffResults(TopologySnapshot snapshot1, TopologySnapshot snapshot2, TIntArrayList common1, TIntArrayList common2) {
+        synchronousComponentCount1 = countGroups(snapshot1, TopologySnapshot::getSynchronousComponent);
+        synchronousComponentCount2 = countGroups(snapshot2, TopologySnapshot::getSynchronousComponent);
+        connectedComponentCount1 = countGroups(snapshot1, TopologySnapshot::getConnectedComponent);
+        connectedComponentCount2 = countGroups(snapshot2, TopologySnapshot::getConnectedComponent);
+        synchronousComponentChanges = compare(snapshot1, snapshot2, common1, common2, TopologySnapshot::getSynchronousComponent);
+        connectedComponentChanges = compare(snapshot1, snapshot2, common1, common2, TopologySnapshot::getConnectedComponent);
+        voltageLevelDiffs = compareBuses(snapshot1, snapshot2, common1, common2);
+    }
+
+    public static TopologyDiffResults compare(TopologySnapshot snapshot1, TopologySnapshot snapshot2) {
+        Objects.requireNonNull(snapshot1);
+        Objects.requireNonNull(snapshot2);
+        TIntArrayList common1 = new TIntArrayList();
+        TIntArrayList common2 = new TIntArrayList();
+        for (int vertex1 = 0; vertex1 < snapshot1.getVertexCount(); vertex1++) {
+            int vertex2 = snapshot2.indexOf(snapshot1.getVertexId(vertex1));
+            if (vertex2 != NO_ENTRY) {
+                common1.add(vertex1);
+                common2.add(vertex2);
+            }
+        }
+        return new TopologyDiffResults(snapshot1, snapshot2, common1, common2);
+    }
+
+    @FunctionalInterface
+    private interface GroupFunction {
+        int getGroup(TopologySnapshot snapshot, int vertex);
+    }
+
+    private static int countGroups(TopologySnapshot snapshot, GroupFunction group) {
+        TIntHashSet groups = new TIntHashSet();
+        for (int vertex = 0; vertex < snapshot.getVertexCount(); vertex++) {
+            groups.add(group.getGroup(snapshot, vertex));
+        }
+        return groups.size();
+    }
+
+    /**
+     * Finds the groups of the first network whose common vertices are in several groups of the second network, and
+     * conversely, in a first linear pass on primitive maps. Only the changed groups are detailed in a second pass.
+     */
+    private static GroupChanges compare(TopologySnapshot snapshot1, TopologySnapshot snapshot2, TIntArrayList common1, TIntArrayList common2,
+                                        GroupFunction group) {
+        TIntIntHashMap firstGroups2 = new TIntIntHashMap(16, 0.5f, NO_ENTRY, NO_ENTRY);
+        TIntIntHashMap firstGroups1 = new TIntIntHashMap(16, 0.5f, NO_ENTRY, NO_ENTRY);
+        TIntObjectHashMap<String> representatives1 = new TIntObjectHashMap<>();
+        TIntObjectHashMap<String> representatives2 = new TIntObjectHashMap<>();
+        TIntHashSet split = new TIntHashSet();
+        TIntHashSet merged = new TIntHashSet();
+        for (int i = 0; i < common1.size(); i++) {
+            int group1 = group.getGroup(snapshot1, common1.getQuick(i));
+            int group2 = group.getGroup(snapshot2, common2.getQuick(i));
+            int firstGroup2 = firstGroups2.putIfAbsent(group1, group2);
+            if (firstGroup2 == NO_ENTRY) {
+                representatives1.put(group1, snapshot1.getVertexId(common1.getQuick(i)));
+            } else if (firstGroup2 != group2) {
+                split.add(group1);
+            }
+            int firstGroup1 = firstGroups1.putIfAbsent(group2, group1);
+            if (firstGroup1 == NO_ENTRY) {
+                representatives2.put(group2, snapshot1.getVertexId(common1.getQuick(i)));
+            } else if (firstGroup1 != group1) {
+                merged.add(group2);
+            }
+        }
+        GroupChanges changes = new GroupChanges();
+        if (split.isEmpty() && merged.isEmpty()) {
+            return changes;
+        }
+        Map<Integer, Set<Integer>> splits = new LinkedHashMap<>();
+        Map<Integer, Set<Integer>> merges = new LinkedHashMap<>();
+        for (int i = 0; i < common1.size(); i++) {
+            int group1 = group.getGroup(snapshot1, common1.getQuick(i));
+            int group2 = group.getGroup(snapshot2, common2.getQuick(i));
+            if (split.contains(group1)) {
+                splits.computeIfAbsent(group1, g -> new LinkedHashSet<>()).add(group2);
+            }
+            if (merged.contains(group2)) {
+                merges.computeIfAbsent(group2, g -> new LinkedHashSet<>()).add(group1);
+            }
+        }
+        splits.forEach((group1, groups2) -> changes.splits.add(new GroupChange(List.of(representatives1.get(group1)), getRepresentatives(groups2, representatives2))));
+        merges.forEach((group2, groups1) -> changes.merges.add(new GroupChange(getRepresentatives(groups1, representatives1), List.of(representatives2.get(group2)))));
+        return changes;
+    }
+
+    private static List<String> getRepresentatives(Set<Integer> groups, TIntObjectHashMap<String> representatives) {
+        List<String> ids = new ArrayList<>(groups.size());
+        for (int group : groups) {
+            ids.add(representatives.get(group));
+        }
+        return ids;
+    }
+
+    /**
+     * Buses never span several voltage levels, so that the bus changes are computed network-wide, then dispatched to
+     * the voltage level of their first vertex.
+     */
+    private static List<VoltageLevelTopologyDiff> compareBuses(TopologySnapshot snapshot1, TopologySnapshot snapshot2, TIntArrayList common1,
+                                                               TIntArrayList common2) {
+        Map<String, Integer> busCounts1 = countBuses(snapshot1);
+        Map<String, Integer> busCounts2 = countBuses(snapshot2);
+        Map<String, VoltageLevelTopologyDiff> vlDiffs = new TreeMap<>();
+        busCounts1.forEach((vlId, busCount1) -> {
+            Integer busCount2 = busCounts2.get(vlId);
+            if (busCount2 != null) {
+                vlDiffs.put(vlId, new VoltageLevelTopologyDiff(vlId, busCount1, busCount2));
+            }
+        });
+        GroupChanges busChanges = compare(snapshot1, snapshot2, common1, common2, TopologySnapshot::getBus);
+        for (GroupChange split : busChanges.splits) {
+            vlDiffs.get(snapshot1.getVoltageLevelId(snapshot1.indexOf(split.getGroups1().get(0)))).busSplits.add(split);
+        }
+        for (GroupChange merge : busChanges.merges) {
+            vlDiffs.get(snapshot1.getVoltageLevelId(snapshot1.indexOf(merge.getGroups2().get(0)))).busMerges.add(merge);
+        }
+        List<VoltageLevelTopologyDiff> differentVlDiffs = new ArrayList<>();
+        for (VoltageLevelTopologyDiff vlDiff : vlDiffs.values()) {
+            if (vlDiff.isDifferent()) {
+                differentVlDiffs.add(vlDiff);
+            }
+        }
+        return differentVlDiffs;
+    }
+
+    /**
+     * Counts the buses of each voltage level, relying on the vertices of a voltage level being contiguous.
+     */
+    private static Map<String, Integer> countBuses(TopologySnapshot snapshot) {
+        Map<String, Integer> busCounts = new LinkedHashMap<>();
+        TIntHashSet buses = new TIntHashSet();
+        String vlId = null;
+        for (int vertex = 0; vertex < snapshot.getVertexCount(); vertex++) {
+            String vertexVlId = snapshot.getVoltageLevelId(vertex);
+            if (!vertexVlId.equals(vlId)) {
+                if (vlId != null) {
+                    busCounts.put(vlId, buses.size());
+                }
+                buses.clear();
+                vlId = vertexVlId;
+            }
+            buses.add(snapshot.getBus(vertex));
+        }
+        if (vlId != null) {
+            busCounts.put(vlId, buses.size());
+        }
+        return busCounts;
+    }
+
+    public int getSynchronousComponentCount1() {
+        return synchronousComponentCount1;
+    }
+
+    public int getSynchronousComponentCount2() {
+        return synchronousComponentCount2;
+    }
+
+    public int getConnectedComponentCount1() {
+        return connectedComponentCount1;
+    }
+
+    public int getConnectedComponentCount2() {
+        return connectedComponentCount2;
+    }
+
+    public List<GroupChange> getSynchronousComponentSplits() {
+        return synchronousComponentChanges.splits;
+    }
+
+    public List<GroupChange> getSynchronousComponentMerges() {
+        return synchronousComponentChanges.merges;
+    }
+
+    public List<GroupChange> getConnectedComponentSplits() {
+        return connectedComponentChanges.splits;
+    }
+
+    public List<GroupChange> getConnectedComponentMerges() {
+        return connectedComponentChanges.merges;
+    }
+
+    /**
+     * Returns the voltage levels of both networks whose buses differ.
+     */
+    public List<VoltageLevelTopologyDiff> getVoltageLevelDiffs() {
+        return voltageLevelDiffs;
+    }
+
+    public boolean isDifferent() {
+        return synchronousComponentCount1 != synchronousComponentCount2 || connectedComponentCount1 != connectedComponentCount2
+                || !synchronousComponentChanges.splits.isEmpty() || !synchronousComponentChanges.merges.isEmpty()
+                || !connectedComponentChanges.splits.isEmpty() || !connectedComponentChanges.merges.isEmpty()
+                || !voltageLevelDiffs.isEmpty();
+    }
+
+    void writeJson(JsonGenerator generator) {
+        Objects.requireNonNull(generator);
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("synchronousComponentCount1", synchronousComponentCount1);
+            generator.writeNumberField("synchronousComponentCount2", synchronousComponentCount2);
+            generator.writeNumberField("connectedComponentCount1", connectedComponentCount1);
+            generator.writeNumberField("connectedComponentCount2", connectedComponentCount2);
+            writeChanges(generator, "synchronousComponentSplits", synchronousComponentChanges.splits);
+            writeChanges(generator, "synchronousComponentMerges", synchronousComponentChanges.merges);
+            writeChanges(generator, "connectedComponentSplits", connectedComponentChanges.splits);
+            writeChanges(generator, "connectedComponentMerges", connectedComponentChanges.merges);
+            generator.writeArrayFieldStart("voltageLevels");
+            for (VoltageLevelTopologyDiff vlDiff : voltageLevelDiffs) {
+                vlDiff.writeJson(generator);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeChanges(JsonGenerator generator, String name, List<GroupChange> changes) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (GroupChange change : changes) {
+            change.writeJson(generator);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeIds(JsonGenerator generator, String name, List<String> ids) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (String id : ids) {
+            generator.writeString(id);
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.util.Objects;
+
+import com.powsybl.iidm.network.Branch;
+import com.powsybl.iidm.network.Bus;
+import com.powsybl.iidm.network.HvdcLine;
+import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.network.Switch;
+import com.powsybl.iidm.network.Terminal;
+import com.powsybl.iidm.network.ThreeWindingsTransformer;
+import com.powsybl.iidm.network.TopologyKind;
+import com.powsybl.iidm.network.VoltageLevel;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Connectivity of a network: the electrical bus, synchronous component and connected component of each vertex of
+ * the bus-breaker topology. The vertices are the configured buses of bus-breaker voltage levels, and the nodes with
+ * a terminal of node-breaker voltage levels, identified by voltage level id and node number since node-breaker
+ * voltage levels have no stable bus-breaker bus ids.
+ * <p>
+ * The groups are computed with a union-find over all the vertices, merged along closed switches and internal
+ * connections first, then along AC branches, then along HVDC lines, in near-linear time.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class TopologySnapshot {
+
+    private static final int NO_ENTRY = -1;
+
+    private final String networkId;
+    private final String[] voltageLevelIds;
+    private final String[] vertexIds;
+    private final int[] vertexVoltageLevels;
+    private final int[] buses;
+    private final int[] synchronousComponents;
+    private final int[] connectedComponents;
+    private final TObjectIntHashMap<String> vertexIndex;
+
+    /**
+     * Union-find over the vertices, with path halving and union by size.
+     */
+    private static final class Builder {
+        private final TObjectIntHashMap<String> index = new TObjectIntHashMap<>(1024, 0.5f, NO_ENTRY);
+        private final TIntArrayList parents = new TIntArrayList();
+        private final TIntArrayList sizes = new TIntArrayList();
+        private final TIntArrayList retained = new TIntArrayList();
+        private final TIntArrayList retainedVoltageLevels = new TIntArrayList();
+
+        private int vertex(String vertexId) {
+            int vertex = index.get(vertexId);
+            if (vertex == NO_ENTRY) {
+                vertex = parents.size();
+                index.put(vertexId, vertex);
+                parents.add(vertex);
+                sizes.add(1);
+            }
+            return vertex;
+        }
+
+        private void retain(String vertexId, int voltageLevel) {
+            int vertex = vertex(vertexId);
+            retained.add(vertex);
+            retainedVoltageLevels.add(voltageLevel);
+        }
+
+        private int find(int vertex) {
+            int v = vertex;
+            while (parents.getQuick(v) != v) {
+                int grandParent = parents.getQuick(parents.getQuick(v));
+                parents.setQuick(v, grandParent);
+                v = grandParent;
+            }
+            return v;
+        }
+
+        private void union(int vertex1, int vertex2) {
+            int root1 = find(vertex1);
+            int root2 = find(vertex2);
+            if (root1 != root2) {
+                if (sizes.getQuick(root1) < sizes.getQuick(root2)) {
+                    int root = root1;
+                    root1 = root2;
+                    root2 = root;
+                }
+                parents.setQuick(root2, root1);
+                sizes.setQuick(root1, sizes.getQuick(root1) + sizes.getQuick(root2));
+            }
+        }
+
+        private int[] groups() {
+            int[] groups = new int[retained.size()];
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = find(retained.getQuick(i));
+            }
+            return groups;
+        }
+    }
+
+    private TopologySnapshot(String networkId, String[] voltageLevelIds, Builder builder, int[] buses, int[] synchronousComponents,
+                             int[] connectedComponents) {
+        this.networkId = networkId;
+        this.voltageLevelIds = voltageLevelIds;
+        this.buses = buses;
+        this.synchronousComponents = synchronousComponents;
+        this.connectedComponents = connectedComponents;
+        vertexVoltageLevels = builder.retainedVoltageLevels.toArray();
+        vertexIds = new String[buses.length];
+        vertexIndex = new TObjectIntHashMap<>(Math.max(16, 2 * buses.length), 0.5f, NO_ENTRY);
+        String[] allVertexIds = new String[builder.parents.size()];
+        builder.index.forEachEntry((vertexId, vertex) -> {
+            allVertexIds[vertex] = vertexId;
+            return true;
+        });
+        for (int i = 0; i < vertexIds.length; i++) {
+            vertexIds[i] = allVertexIds[builder.retained.getQuick(i)];
+            vertexIndex.put(vertexIds[i], i);
+        }
+    }
+
+    public static TopologySnapshot of(Network network) {
+        return of(network, IdMapping.empty());
+    }
+
+    /**
+     * Builds the connectivity of a network with the voltage level and bus ids of the first network, so that the
+     * vertices of renamed voltage levels match those of the first network.
+     */
+    static TopologySnapshot of(Network network, IdMapping mapping) {
+        Objects.requireNonNull(network);
+        Objects.requireNonNull(mapping);
+        Builder builder = new Builder();
+        VoltageLevel[] voltageLevels = network.getVoltageLevelStream().toArray(VoltageLevel[]::new);
+        String[] voltageLevelIds = new String[voltageLevels.length];
+        for (int i = 0; i < voltageLevels.length; i++) {
+            voltageLevelIds[i] = mapping.toId1(voltageLevels[i].getId());
+            addVoltageLevel(builder, voltageLevels[i], i, mapping);
+        }
+        int[] buses = builder.groups();
+        for (Branch<?> branch : network.getBranches()) {
+            union(builder, branch.getTerminal1(), branch.getTerminal2(), mapping);
+        }
+        for (ThreeWindingsTransformer twt : network.getThreeWindingsTransformers()) {
+            union(builder, twt.getLeg1().getTerminal(), twt.getLeg2().getTerminal(), mapping);
+            union(builder, twt.getLeg1().getTerminal(), twt.getLeg3().getTerminal(), mapping);
+        }
+        int[] synchronousComponents = builder.groups();
+        for (HvdcLine hvdcLine : network.getHvdcLines()) {
+            union(builder, hvdcLine.getConverterStation1().getTerminal(), hvdcLine.getConverterStation2().getTerminal(), mapping);
+        }
+        int[] connectedComponents = builder.groups();
+        return new TopologySnapshot(network.getId(), voltageLevelIds, builder, buses, synchronousComponents, connectedComponents);
+    }
+
+    private static void addVoltageLevel(Builder builder, VoltageLevel vl, int voltageLevel, IdMapping mapping) {
+        String vlId = mapping.toId1(vl.getId());
+        if (TopologyKind.NODE_BREAKER.equals(vl.getTopologyKind())) {
+            VoltageLevel.NodeBreakerView view = vl.getNodeBreakerView();
+            for (int node : view.getNodes()) {
+                if (view.getTerminal(node) != null) {
+                    builder.retain(nodeId(vlId, node), voltageLevel);
+                }
+            }
+            for (Switch sw : view.getSwitches()) {
+                if (!sw.isOpen()) {
+                    builder.union(builder.vertex(nodeId(vlId, view.getNode1(sw.getId()))), builder.vertex(nodeId(vlId, view.getNode2(sw.getId()))));
+                }
+            }
+            for (VoltageLevel.NodeBreakerView.InternalConnection connection : view.getInternalConnections()) {
+                builder.union(builder.vertex(nodeId(vlId, connection.getNode1())), builder.vertex(nodeId(vlId, connection.getNode2())));
+            }
+        } else {
+            VoltageLevel.BusBreakerView view = vl.getBusBreakerView();
+            for (Bus bus : view.getBuses()) {
+                builder.retain(mapping.toId1(bus.getId()), voltageLevel);
+            }
+            for (Switch sw : view.getSwitches()) {
+                if (!sw.isOpen()) {
+                    builder.union(builder.vertex(mapping.toId1(view.getBus1(sw.getId()).getId())), builder.vertex(mapping.toId1(view.getBus2(sw.getId()).getId())));
+                }
+            }
+        }
+    }
+
+    private static void union(Builder builder, Terminal terminal1, Terminal terminal2, IdMapping mapping) {
+        String vertexId1 = getVertexId(terminal1, mapping);
+        String vertexId2 = getVertexId(terminal2, mapping);
+        if (vertexId1 != null && vertexId2 != null) {
+            builder.union(builder.vertex(vertexId1), builder.vertex(vertexId2));
+        }
+    }
+
+    /**
+     * Returns the vertex of a terminal, null if it is disconnected from a bus-breaker voltage level. A node-breaker
+     * terminal is always on its node, its disconnection is given by the switches.
+     */
+    private static String getVertexId(Terminal terminal, IdMapping mapping) {
+        VoltageLevel vl = terminal.getVoltageLevel();
+        if (TopologyKind.NODE_BREAKER.equals(vl.getTopologyKind())) {
+            return nodeId(mapping.toId1(vl.getId()), terminal.getNodeBreakerView().getNode());
+        }
+        Bus bus = terminal.getBusBreakerView().getBus();
+        return bus != null ? mapping.toId1(bus.getId()) : null;
+    }
+
+    private static String nodeId(String vlId, int node) {
+        return vlId + "#" + node;
+    }
+
+    public String getNetworkId() {
+        return networkId;
+    }
+
+    int getVertexCount() {
+        return vertexIds.length;
+    }
+
+    String getVertexId(int vertex) {
+        return vertexIds[vertex];
+    }
+
+    /**
+     * Returns the index of a vertex, -1 if it is not found.
+     */
+    int indexOf(String vertexId) {
+        return vertexIndex.get(vertexId);
+    }
+
+    String getVoltageLevelId(int vertex) {
+        return voltageLevelIds[vertexVoltageLevels[vertex]];
+    }
+
+    int getBus(int vertex) {
+        return buses[vertex];
+    }
+
+    int getSynchronousComponent(int vertex) {
+        return synchronousComponents[vertex];
+    }
+
+    int getConnectedComponent(int vertex) {
+        return connectedComponents[vertex];
+    }
+}
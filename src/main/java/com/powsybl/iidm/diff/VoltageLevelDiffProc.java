@@ -11,20 +11,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Equivalence;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
-import com.google.common.math.DoubleMath;
-import com.powsybl.iidm.network.Bus;
-import com.powsybl.iidm.network.BusbarSection;
 import com.powsybl.iidm.network.Switch;
-import com.powsybl.iidm.network.TopologyKind;
 import com.powsybl.iidm.network.VoltageLevel;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.IntStream;
 
 /**
  * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
@@ -32,17 +28,25 @@ import java.util.stream.StreamSupport;
 class VoltageLevelDiffProc implements DiffProc<VoltageLevel> {
 
     private final DiffConfig config;
-    private final Equivalence<Double> diffEq;
+    private final ThresholdTable thresholds;
 
     public VoltageLevelDiffProc(DiffConfig config) {
         this.config = config;
-        diffEq = new Equivalence<Double>() {
+        this.thresholds = ThresholdTable.compile(config);
+    }
+
+    private Equivalence<Double> getVoltageEquivalence(VoltageLevelDiffInfo vlInfo) {
+        return getVoltageEquivalence(thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, vlInfo.getNominalVoltage()));
+    }
+
+    private Equivalence<Double> getVoltageEquivalence(int offset) {
+        return new Equivalence<Double>() {
 
             @Override
             protected boolean doEquivalent(Double val1, Double val2) {
-                Double value1 = Double.isNaN(val1) ? 0 : val1;
-                Double value2 = Double.isNaN(val2) ? 0 : val2;
-                return DoubleMath.fuzzyEquals(value1, value2, config.getVoltageThreshold());
+                double value1 = Double.isNaN(val1) ? 0 : val1;
+                double value2 = Double.isNaN(val2) ? 0 : val2;
+                return thresholds.areEqual(value1, value2, offset, ThresholdRule.Quantity.V);
             }
 
             @Override
@@ -64,6 +68,11 @@ class VoltageLevelDiffProc implements DiffProc<VoltageLevel> {
             this.isDifferent = isDifferent;
         }
 
+        @Override
+        public String getId() {
+            return vlInfo1.getVlId();
+        }
+
         @Override
         public boolean isDifferent() {
             return config.isFilterDifferent() && isDifferent;
@@ -123,7 +132,7 @@ class VoltageLevelDiffProc implements DiffProc<VoltageLevel> {
 
         private void writeBusbarsVoltageDeltaJson(JsonGenerator generator, String name, VoltageLevelDiffInfo vlInfo1, VoltageLevelDiffInfo vlInfo2) throws IOException {
             generator.writeFieldName(name);
-            new ObjectMapper().writeValue(generator, Maps.difference(vlInfo1.getBusbarsVoltage(), vlInfo2.getBusbarsVoltage(), diffEq)
+            new ObjectMapper().writeValue(generator, Maps.difference(vlInfo1.getBusbarsVoltage(), vlInfo2.getBusbarsVoltage(), getVoltageEquivalence(vlInfo1))
                                                          .entriesDiffering()
                                                          .entrySet()
                                                          .stream()
@@ -136,7 +145,7 @@ class VoltageLevelDiffProc implements DiffProc<VoltageLevel> {
 
         private void writeBusbarsVoltageDeltaPercentJson(JsonGenerator generator, String name, VoltageLevelDiffInfo vlInfo1, VoltageLevelDiffInfo vlInfo2) throws IOException {
             generator.writeFieldName(name);
-            new ObjectMapper().writeValue(generator, Maps.difference(vlInfo1.getBusbarsVoltage(), vlInfo2.getBusbarsVoltage(), diffEq)
+            new ObjectMapper().writeValue(generator, Maps.difference(vlInfo1.getBusbarsVoltage(), vlInfo2.getBusbarsVoltage(), getVoltageEquivalence(vlInfo1))
                                                          .entriesDiffering()
                                                          .entrySet()
                                                          .stream()
@@ -156,37 +165,54 @@ class VoltageLevelDiffProc implements DiffProc<VoltageLevel> {
 
     @Override
     public DiffResult diff(VoltageLevel vl1, VoltageLevel vl2) {
-        double maxV1 = vl1.getBusView().getBusStream().mapToDouble(Bus::getV).filter(v -> !Double.isNaN(v)).max().orElse(0);
-        double minV1 = vl1.getBusView().getBusStream().mapToDouble(Bus::getV).filter(v -> !Double.isNaN(v)).min().orElse(0);
-        double maxV2 = vl2.getBusView().getBusStream().mapToDouble(Bus::getV).filter(v -> !Double.isNaN(v)).max().orElse(0);
-        double minV2 = vl2.getBusView().getBusStream().mapToDouble(Bus::getV).filter(v -> !Double.isNaN(v)).min().orElse(0);
-
-        long noBusesVl1 = vl1.getBusView().getBusStream().count();
-        long noBusesVl2 = vl2.getBusView().getBusStream().count();
-
-        Map<String, Boolean> switchesStatusVl1 = StreamSupport.stream(vl1.getSwitches().spliterator(), false).collect(Collectors.toMap(Switch::getId, Switch::isOpen));
-        Map<String, Boolean> switchesStatusVl2 = StreamSupport.stream(vl2.getSwitches().spliterator(), false).collect(Collectors.toMap(Switch::getId, Switch::isOpen));
-        MapDifference<String, Boolean> switchesDiff = Maps.difference(switchesStatusVl1, switchesStatusVl2);
-
-        Map<String, Double> busbarsVoltageVl1 = TopologyKind.NODE_BREAKER.equals(vl1.getTopologyKind())
-                                                //? vl1.getNodeBreakerView().getBusbarSectionStream().collect(Collectors.toMap(BusbarSection::getId, BusbarSection::getV)) // BusbarSection::getV is not yet implemented in the network store
-                                                ? vl1.getNodeBreakerView().getBusbarSectionStream().collect(Collectors.toMap(BusbarSection::getId, busbar -> busbar.getTerminal().getBusView().getBus() != null ? busbar.getTerminal().getBusView().getBus().getV() : Double.NaN))
-                                                : Collections.emptyMap();
-        Map<String, Double> busbarsVoltageVl2 = TopologyKind.NODE_BREAKER.equals(vl2.getTopologyKind())
-                                                //? vl2.getNodeBreakerView().getBusbarSectionStream().collect(Collectors.toMap(BusbarSection::getId, BusbarSection::getV)) // BusbarSection::getV is not yet implemented in the network store
-                                                ? vl2.getNodeBreakerView().getBusbarSectionStream().collect(Collectors.toMap(BusbarSection::getId, busbar -> busbar.getTerminal().getBusView().getBus() != null ? busbar.getTerminal().getBusView().getBus().getV() : Double.NaN))
-                                                : Collections.emptyMap();
-        MapDifference<String, Double> busbarsDiff = Maps.difference(busbarsVoltageVl1, busbarsVoltageVl2, diffEq);
-
-        boolean isEqual = DoubleMath.fuzzyEquals(maxV1, maxV2, config.getVoltageThreshold())
-                && DoubleMath.fuzzyEquals(minV1, minV2, config.getVoltageThreshold())
-                && (noBusesVl1 == noBusesVl2)
+        Objects.requireNonNull(vl1);
+        Objects.requireNonNull(vl2);
+        return diff(extract(vl1, new NetworkIndex()), extract(vl2, new NetworkIndex()));
+    }
+
+    /**
+     * Reads the compared quantities of a voltage level, so that they can be fetched ahead of the comparison.
+     * Bus view data come from the index shared by all the procedures of a diff.
+     */
+    VoltageLevelDiffInfo extract(VoltageLevel vl, NetworkIndex index) {
+        return extract(vl, index, IdMapping.empty());
+    }
+
+    /**
+     * Reads the compared quantities of a voltage level, with the ids of the voltage level, of its switches and of
+     * its busbar sections mapped to those of the first network.
+     */
+    VoltageLevelDiffInfo extract(VoltageLevel vl, NetworkIndex index, IdMapping mapping) {
+        Objects.requireNonNull(vl);
+        Objects.requireNonNull(index);
+        Objects.requireNonNull(mapping);
+        NetworkIndex.VoltageLevelData vlData = index.get(vl);
+        double maxV = IntStream.range(0, vlData.getBusCount()).mapToDouble(vlData::getBusV).filter(v -> !Double.isNaN(v)).max().orElse(0);
+        double minV = IntStream.range(0, vlData.getBusCount()).mapToDouble(vlData::getBusV).filter(v -> !Double.isNaN(v)).min().orElse(0);
+        // sorted maps, so that fingerprints hash them without copying
+        Map<String, Boolean> switchesStatus = new TreeMap<>();
+        for (Switch sw : vl.getSwitches()) {
+            switchesStatus.put(mapping.toId1(sw.getId()), sw.isOpen());
+        }
+        Map<String, Double> busbarsVoltage = new TreeMap<>();
+        for (int i = 0; i < vlData.getBusbarSectionCount(); i++) {
+            busbarsVoltage.put(mapping.toId1(vlData.getBusbarSectionId(i)), vlData.getBusbarSectionV(i));
+        }
+        return new VoltageLevelDiffInfo(mapping.toId1(vl.getId()), vlData.getBusCount(), minV, maxV, switchesStatus, vlData.getLowVoltageLimit(), vlData.getHighVoltageLimit(),
+                                        busbarsVoltage, vlData.getNominalV());
+    }
+
+    DiffResult diff(VoltageLevelDiffInfo vlInfo1, VoltageLevelDiffInfo vlInfo2) {
+        Objects.requireNonNull(vlInfo1);
+        Objects.requireNonNull(vlInfo2);
+        MapDifference<String, Boolean> switchesDiff = Maps.difference(vlInfo1.getSwitchesStatus(), vlInfo2.getSwitchesStatus());
+        int offset = thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, vlInfo1.getNominalVoltage());
+        MapDifference<String, Double> busbarsDiff = Maps.difference(vlInfo1.getBusbarsVoltage(), vlInfo2.getBusbarsVoltage(), getVoltageEquivalence(offset));
+        boolean isEqual = thresholds.areEqual(vlInfo1.getMaxV(), vlInfo2.getMaxV(), offset, ThresholdRule.Quantity.V)
+                && thresholds.areEqual(vlInfo1.getMinV(), vlInfo2.getMinV(), offset, ThresholdRule.Quantity.V)
+                && (vlInfo1.getNoBus() == vlInfo2.getNoBus())
                 && (switchesDiff.areEqual())
                 && (busbarsDiff.areEqual());
-        return new VoltageLevelDiffResult(new VoltageLevelDiffInfo(vl1.getId(), noBusesVl1, minV1, maxV1, switchesStatusVl1, vl1.getLowVoltageLimit(), vl1.getHighVoltageLimit(),
-                                                                   busbarsVoltageVl1, vl1.getNominalV()),
-                                          new VoltageLevelDiffInfo(vl2.getId(), noBusesVl2, minV2, maxV2, switchesStatusVl2, vl2.getLowVoltageLimit(), vl2.getHighVoltageLimit(),
-                                                                   busbarsVoltageVl2, vl2.getNominalV()),
-                                          !isEqual);
+        return new VoltageLevelDiffResult(vlInfo1, vlInfo2, !isEqual);
     }
 }
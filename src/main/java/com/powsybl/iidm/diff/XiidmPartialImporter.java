@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.powsybl.commons.PowsyblException;
+import com.powsybl.computation.ComputationManager;
+import com.powsybl.iidm.import_.ImportConfig;
+import com.powsybl.iidm.import_.Importers;
+import com.powsybl.iidm.network.Network;
+
+/**
+ * Imports only the part of an XIIDM file needed by a diff scoped by voltage level or branch ids. The requested
+ * voltage levels are expanded to the voltage levels connected to them by a branch, the requested lines to their
+ * voltage levels, then these voltage levels to their substations; the requested transformers keep their substation. A first StAX pass locates the equipments, a second
+ * one copies the kept substations, the branches and HVDC lines between them and the network level data to a reduced
+ * XIIDM document in a temporary file, which is imported instead of the whole file.
+ * <p>
+ * Extensions are not copied, and references to equipments which are not kept, like remote voltage regulations, are
+ * dropped. Other formats, or diffs in which an equipment type is not scoped by ids, are imported as a whole.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class XiidmPartialImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XiidmPartialImporter.class);
+
+    private static final Set<String> XIIDM_EXTENSIONS = Set.of("xiidm", "iidm", "xml");
+
+    private static final String SUBSTATION = "substation";
+    private static final String EXTENSION = "extension";
+    private static final String HVDC_LINE = "hvdcLine";
+
+    // elements referencing another equipment by id
+    private static final Set<String> REFERENCES = Set.of("regulatingTerminal", "terminalRef");
+
+    /**
+     * Locations of the equipments of an XIIDM file: the substation of each voltage level and of each equipment
+     * contained in a substation, and the voltage levels of each network level branch.
+     */
+    private static final class Locations {
+        private final Map<String, String> substationIds = new HashMap<>();
+        private final Map<String, List<String>> branchVoltageLevels = new HashMap<>();
+
+        private Set<String> getSubstationIds(DiffEquipment diffEquipment) {
+            Set<String> vlIds = new HashSet<>();
+            if (diffEquipment.getVoltageLevels() != null) {
+                Set<String> requestedVlIds = new HashSet<>(diffEquipment.getVoltageLevels());
+                vlIds.addAll(requestedVlIds);
+                for (List<String> branchVlIds : branchVoltageLevels.values()) {
+                    if (!Collections.disjoint(branchVlIds, requestedVlIds)) {
+                        vlIds.addAll(branchVlIds);
+                    }
+                }
+            }
+            Set<String> keptSubstationIds = new HashSet<>();
+            if (diffEquipment.getBranches() != null) {
+                for (String branchId : diffEquipment.getBranches()) {
+                    // transformers are contained in their substation, lines are network level elements
+                    String substationId = substationIds.get(branchId);
+                    if (substationId != null) {
+                        keptSubstationIds.add(substationId);
+                    } else {
+                        vlIds.addAll(branchVoltageLevels.getOrDefault(branchId, Collections.emptyList()));
+                    }
+                }
+            }
+            for (String vlId : vlIds) {
+                String substationId = substationIds.get(vlId);
+                if (substationId != null) {
+                    keptSubstationIds.add(substationId);
+                }
+            }
+            return keptSubstationIds;
+        }
+
+        private boolean isKept(String id, Set<String> keptSubstationIds) {
+            String substationId = substationIds.get(id);
+            if (substationId != null) {
+                return keptSubstationIds.contains(substationId);
+            }
+            List<String> vlIds = branchVoltageLevels.get(id);
+            return vlIds != null && vlIds.stream().allMatch(vlId -> keptSubstationIds.contains(substationIds.get(vlId)));
+        }
+    }
+
+    private XiidmPartialImporter() {
+    }
+
+    /**
+     * Imports the compared equipments of a file, or the whole file when the config compares the topology or the power
+     * balances, or filters by the balances, which cover the whole network.
+     */
+    public static Network load(Path file, DiffEquipment diffEquipment, DiffConfig config, ComputationManager computationManager, ImportConfig importConfig) {
+        Objects.requireNonNull(config);
+        if (config.isTopologyDiff() || config.isBalanceDiff() || config.isBalanceFilter()) {
+            return Importers.loadNetwork(Objects.requireNonNull(file), computationManager, importConfig, null);
+        }
+        return load(file, diffEquipment, computationManager, importConfig);
+    }
+
+    public static Network load(Path file, DiffEquipment diffEquipment, ComputationManager computationManager, ImportConfig importConfig) {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(diffEquipment);
+        String fileName = file.getFileName().toString();
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+        if (!XIIDM_EXTENSIONS.contains(extension) || !isScopedByIds(diffEquipment)) {
+            return Importers.loadNetwork(file, computationManager, importConfig, null);
+        }
+        long start = System.currentTimeMillis();
+        Locations locations;
+        try (InputStream is = Files.newInputStream(file)) {
+            locations = readLocations(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Set<String> substationIds = locations.getSubstationIds(diffEquipment);
+        // the reduced document is streamed through a temporary file, it may still be large
+        Path reducedFile = null;
+        try {
+            reducedFile = Files.createTempFile("network-diff-partial-", "." + extension);
+            try (InputStream is = Files.newInputStream(file);
+                 OutputStream os = new BufferedOutputStream(Files.newOutputStream(reducedFile))) {
+                copy(is, os, substationIds, locations);
+            }
+            Network network;
+            try (InputStream is = Files.newInputStream(reducedFile)) {
+                network = Importers.loadNetwork(fileName, is, computationManager, importConfig, null);
+            } catch (PowsyblException e) {
+                LOGGER.warn("Partial import of {} failed ({}), importing the whole file", file, e.getMessage());
+                return Importers.loadNetwork(file, computationManager, importConfig, null);
+            }
+            LOGGER.debug("{} substations of {} imported in {} ms", substationIds.size(), file, System.currentTimeMillis() - start);
+            return network;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteIfExists(reducedFile);
+        }
+    }
+
+    private static void deleteIfExists(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Temporary file {} not deleted", file, e);
+            }
+        }
+    }
+
+    /**
+     * Checks that every compared equipment type is restricted to a list of ids, otherwise the whole network is needed.
+     */
+    private static boolean isScopedByIds(DiffEquipment diffEquipment) {
+        return (!NetworkDiff.isVoltageLevelsDiff(diffEquipment) || diffEquipment.getVoltageLevels() != null)
+                && (!NetworkDiff.isBranchesDiff(diffEquipment) || diffEquipment.getBranches() != null);
+    }
+
+    private static Locations readLocations(InputStream is) {
+        Locations locations = new Locations();
+        try {
+            XMLStreamReader reader = newInputFactory().createXMLStreamReader(is);
+            try {
+                String substationId = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        String id = reader.getAttributeValue(null, "id");
+                        if (SUBSTATION.equals(name)) {
+                            substationId = id;
+                        } else if (substationId != null && id != null && !REFERENCES.contains(name)) {
+                            locations.substationIds.put(id, substationId);
+                        } else if (substationId == null && reader.getAttributeValue(null, "voltageLevelId1") != null) {
+                            List<String> vlIds = new ArrayList<>(2);
+                            for (int side = 1; reader.getAttributeValue(null, "voltageLevelId" + side) != null; side++) {
+                                vlIds.add(reader.getAttributeValue(null, "voltageLevelId" + side));
+                            }
+                            locations.branchVoltageLevels.put(id, vlIds);
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && SUBSTATION.equals(reader.getLocalName())) {
+                        substationId = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+        return locations;
+    }
+
+    private static void copy(InputStream is, OutputStream os, Set<String> substationIds, Locations locations) {
+        try {
+            XMLEventReader reader = newInputFactory().createXMLEventReader(is);
+            XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(os, "UTF-8");
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement()) {
+                        depth++;
+                        if (!isCopied(event.asStartElement(), depth, substationIds, locations)) {
+                            skipElement(reader);
+                            depth--;
+                            continue;
+                        }
+                    } else if (event.isEndElement()) {
+                        depth--;
+                    }
+                    writer.add(event);
+                }
+                writer.flush();
+            } finally {
+                writer.close();
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    private static boolean isCopied(StartElement element, int depth, Set<String> substationIds, Locations locations) {
+        String name = element.getName().getLocalPart();
+        if (EXTENSION.equals(name)) {
+            return false;
+        }
+        String id = getAttribute(element, "id");
+        if (depth == 2) {
+            // children of the network
+            if (SUBSTATION.equals(name)) {
+                return substationIds.contains(id);
+            } else if (HVDC_LINE.equals(name)) {
+                return locations.isKept(getAttribute(element, "converterStation1"), substationIds)
+                        && locations.isKept(getAttribute(element, "converterStation2"), substationIds);
+            } else if (getAttribute(element, "voltageLevelId1") != null) {
+                return locations.isKept(id, substationIds);
+            }
+        } else if (REFERENCES.contains(name)) {
+            return id == null || locations.isKept(id, substationIds);
+        }
+        return true;
+    }
+
+    private static String getAttribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+}
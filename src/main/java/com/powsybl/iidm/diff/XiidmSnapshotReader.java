@@ -0,0 +1,502 @@
+/**
+ * Copyright (c) 2021, RTE (http://www.rte-france.com)
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.powsybl.iidm.diff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.powsybl.commons.PowsyblException;
+import com.powsybl.commons.xml.XmlUtil;
+import com.powsybl.iidm.network.Branch.Side;
+import com.powsybl.iidm.network.ConnectableType;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Reads a {@link DiffSnapshot} from an XIIDM file with a single StAX pass, without building the network. Only
+ * compact records are kept in memory: the bus-breaker buses or nodes of each voltage level with their voltage and
+ * feeder counts, the switches, and the terminal flows and permanent limits of the compared branches. The bus view
+ * is rebuilt at the end of the file, with the bus validity rules of the in-memory implementation.
+ * <p>
+ * The voltage of a merged bus is the first defined voltage of its buses, in file order. Extensions are skipped.
+ * The snapshots have no topology, power balance or current limit table, so they cannot be diffed with the topology,
+ * balance or loading diffs enabled.
+ *
+ * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
+ */
+public final class XiidmSnapshotReader {
+
+    private static final String SUBSTATION = "substation";
+    private static final String VOLTAGE_LEVEL = "voltageLevel";
+    private static final String BUS = "bus";
+    private static final String NODE = "node";
+    private static final String SWITCH = "switch";
+    private static final String BUSBAR_SECTION = "busbarSection";
+    private static final String INTERNAL_CONNECTION = "internalConnection";
+    private static final String EXTENSION = "extension";
+
+    static final Set<String> BRANCHES = Set.of("line", "tieLine", "twoWindingsTransformer");
+
+    // connectables counted as branches by the node-breaker bus validity check
+    private static final Set<String> BRANCH_FEEDERS = Set.of("line", "tieLine", "twoWindingsTransformer", "threeWindingsTransformer",
+                                                             "danglingLine", "vscConverterStation", "lccConverterStation");
+
+    private static final Set<String> TOPOLOGY_ELEMENTS = Set.of(BUS, SWITCH, BUSBAR_SECTION, INTERNAL_CONNECTION);
+
+    private static final double SQRT3 = Math.sqrt(3);
+
+    private static final class VoltageLevelRecord {
+        private final String id;
+        private final String substationId;
+        private final boolean nodeBreaker;
+        private final double nominalV;
+        private final double lowVoltageLimit;
+        private final double highVoltageLimit;
+
+        // vertices are the configured buses of a bus-breaker topology or the nodes of a node-breaker topology
+        private final TObjectIntHashMap<String> busIndexes = new TObjectIntHashMap<>(10, 0.5f, -1);
+        private final TDoubleArrayList vertexV = new TDoubleArrayList();
+        private final TIntArrayList feederCounts = new TIntArrayList();
+        private final TIntArrayList branchCounts = new TIntArrayList();
+        private final TIntArrayList busbarSectionCounts = new TIntArrayList();
+
+        private final List<String> switchIds = new ArrayList<>();
+        private final BitSet switchesOpen = new BitSet();
+        private final TIntArrayList edges1 = new TIntArrayList();
+        private final TIntArrayList edges2 = new TIntArrayList();
+        private final List<String> busbarSectionIds = new ArrayList<>();
+        private final TIntArrayList busbarSectionNodes = new TIntArrayList();
+
+        private int[] roots;
+        private BitSet validRoots;
+        private double[] rootV;
+
+        private VoltageLevelRecord(String id, String substationId, boolean nodeBreaker, double nominalV, double lowVoltageLimit, double highVoltageLimit) {
+            this.id = id;
+            this.substationId = substationId;
+            this.nodeBreaker = nodeBreaker;
+            this.nominalV = nominalV;
+            this.lowVoltageLimit = lowVoltageLimit;
+            this.highVoltageLimit = highVoltageLimit;
+        }
+
+        private void ensureVertex(int vertex) {
+            while (vertexV.size() <= vertex) {
+                vertexV.add(Double.NaN);
+                feederCounts.add(0);
+                branchCounts.add(0);
+                busbarSectionCounts.add(0);
+            }
+        }
+
+        private int addBus(String busId, double v) {
+            int vertex = vertexV.size();
+            ensureVertex(vertex);
+            vertexV.set(vertex, v);
+            busIndexes.put(busId, vertex);
+            return vertex;
+        }
+
+        private int getBus(String busId) {
+            int vertex = busIndexes.get(busId);
+            if (vertex < 0) {
+                throw new PowsyblException("Bus '" + busId + "' not found in voltage level '" + id + "'");
+            }
+            return vertex;
+        }
+
+        private void addEdge(int vertex1, int vertex2, String switchId, boolean open) {
+            ensureVertex(Math.max(vertex1, vertex2));
+            if (switchId != null) {
+                if (open) {
+                    switchesOpen.set(switchIds.size());
+                }
+                switchIds.add(switchId);
+            }
+            if (!open) {
+                edges1.add(vertex1);
+                edges2.add(vertex2);
+            }
+        }
+
+        private void addFeeder(int vertex, boolean branch) {
+            ensureVertex(vertex);
+            feederCounts.set(vertex, feederCounts.get(vertex) + 1);
+            if (branch) {
+                branchCounts.set(vertex, branchCounts.get(vertex) + 1);
+            }
+        }
+
+        private void addBusbarSection(String busbarSectionId, int node) {
+            ensureVertex(node);
+            busbarSectionCounts.set(node, busbarSectionCounts.get(node) + 1);
+            busbarSectionIds.add(busbarSectionId);
+            busbarSectionNodes.add(node);
+        }
+
+        /**
+         * Merges the vertices connected by closed switches and internal connections, and computes the validity and
+         * the voltage of the resulting buses.
+         */
+        private void resolve() {
+            int vertexCount = vertexV.size();
+            roots = new int[vertexCount];
+            for (int i = 0; i < vertexCount; i++) {
+                roots[i] = i;
+            }
+            for (int i = 0; i < edges1.size(); i++) {
+                int root1 = find(edges1.get(i));
+                int root2 = find(edges2.get(i));
+                if (root1 != root2) {
+                    roots[Math.max(root1, root2)] = Math.min(root1, root2);
+                }
+            }
+            int[] feeders = new int[vertexCount];
+            int[] branches = new int[vertexCount];
+            int[] busbarSections = new int[vertexCount];
+            rootV = new double[vertexCount];
+            Arrays.fill(rootV, Double.NaN);
+            for (int i = 0; i < vertexCount; i++) {
+                int root = find(i);
+                feeders[root] += feederCounts.get(i);
+                branches[root] += branchCounts.get(i);
+                busbarSections[root] += busbarSectionCounts.get(i);
+                if (Double.isNaN(rootV[root])) {
+                    rootV[root] = vertexV.get(i);
+                }
+            }
+            validRoots = new BitSet(vertexCount);
+            for (int i = 0; i < vertexCount; i++) {
+                if (roots[i] == i && isBusValid(feeders[i], branches[i], busbarSections[i])) {
+                    validRoots.set(i);
+                }
+            }
+        }
+
+        private boolean isBusValid(int feeders, int branches, int busbarSections) {
+            if (nodeBreaker) {
+                return busbarSections >= 1 && feeders >= 1 || branches >= 1 && feeders >= 2;
+            }
+            return feeders >= 1;
+        }
+
+        private int find(int vertex) {
+            int root = vertex;
+            while (roots[root] != root) {
+                root = roots[root];
+            }
+            // path compression
+            int v = vertex;
+            while (roots[v] != root) {
+                int next = roots[v];
+                roots[v] = root;
+                v = next;
+            }
+            return root;
+        }
+
+        private boolean isInValidBus(int vertex) {
+            return validRoots.get(find(vertex));
+        }
+
+        private double getBusV(int vertex) {
+            return isInValidBus(vertex) ? rootV[find(vertex)] : Double.NaN;
+        }
+
+        private VoltageLevelDiffInfo toDiffInfo() {
+            long noBus = validRoots.cardinality();
+            double minV = validRoots.stream().mapToDouble(root -> rootV[root]).filter(v -> !Double.isNaN(v)).min().orElse(0);
+            double maxV = validRoots.stream().mapToDouble(root -> rootV[root]).filter(v -> !Double.isNaN(v)).max().orElse(0);
+            Map<String, Boolean> switchesStatus = new TreeMap<>();
+            for (int i = 0; i < switchIds.size(); i++) {
+                switchesStatus.put(switchIds.get(i), switchesOpen.get(i));
+            }
+            Map<String, Double> busbarsVoltage = new TreeMap<>();
+            for (int i = 0; i < busbarSectionIds.size(); i++) {
+                busbarsVoltage.put(busbarSectionIds.get(i), getBusV(busbarSectionNodes.get(i)));
+            }
+            return new VoltageLevelDiffInfo(id, noBus, minV, maxV, switchesStatus, lowVoltageLimit, highVoltageLimit, busbarsVoltage, nominalV);
+        }
+    }
+
+    private static final class TerminalRecord {
+        private final VoltageLevelRecord voltageLevel;
+        private final int vertex;
+        private final boolean connected;
+        private final double p;
+        private final double q;
+        private double currentLimit = Double.NaN;
+
+        private TerminalRecord(VoltageLevelRecord voltageLevel, int vertex, boolean connected, double p, double q) {
+            this.voltageLevel = voltageLevel;
+            this.vertex = vertex;
+            this.connected = connected;
+            this.p = p;
+            this.q = q;
+        }
+
+        private BranchDiffInfo.TerminalData toTerminalData(BranchDiffInfo branchInfo) {
+            boolean terminalConnected;
+            double v;
+            if (voltageLevel.nodeBreaker) {
+                terminalConnected = voltageLevel.isInValidBus(vertex);
+                v = voltageLevel.getBusV(vertex);
+            } else {
+                terminalConnected = connected;
+                v = connected ? voltageLevel.vertexV.get(vertex) : Double.NaN;
+            }
+            double i = Math.hypot(p, q) / (SQRT3 * v / 1000);
+            return branchInfo.new TerminalData(voltageLevel.id, terminalConnected, p, q, i, currentLimit, voltageLevel.nominalV);
+        }
+    }
+
+    private final DiffEquipment diffEquipment;
+    private final Set<String> selectedVoltageLevels;
+    private final Set<String> selectedBranches;
+    private final DiffEquipmentFilter filter;
+
+    private String networkId;
+    private String substationId;
+    private final Map<String, String> substationIds = new HashMap<>();
+    private final Map<String, String> countries = new HashMap<>();
+    private final Map<String, VoltageLevelRecord> voltageLevels = new HashMap<>();
+    private final Map<String, TerminalRecord[]> branches = new TreeMap<>();
+    private final Map<String, ConnectableType> branchTypes = new HashMap<>();
+    private final Map<String, double[]> branchParameters = new HashMap<>();
+    private VoltageLevelRecord voltageLevel;
+    private TerminalRecord[] branch;
+
+    private XiidmSnapshotReader(DiffEquipment diffEquipment) {
+        this.diffEquipment = Objects.requireNonNull(diffEquipment);
+        selectedVoltageLevels = diffEquipment.getVoltageLevels() != null ? new HashSet<>(diffEquipment.getVoltageLevels()) : null;
+        selectedBranches = diffEquipment.getBranches() != null ? new HashSet<>(diffEquipment.getBranches()) : null;
+        filter = DiffEquipmentFilter.of(diffEquipment);
+    }
+
+    public static DiffSnapshot read(Path file, DiffEquipment diffEquipment) {
+        Objects.requireNonNull(file);
+        try (InputStream is = Files.newInputStream(file)) {
+            return read(is, diffEquipment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static DiffSnapshot read(InputStream is, DiffEquipment diffEquipment) {
+        Objects.requireNonNull(is);
+        XiidmSnapshotReader reader = new XiidmSnapshotReader(diffEquipment);
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader xmlReader = factory.createXMLStreamReader(is);
+            try {
+                reader.read(xmlReader);
+            } finally {
+                xmlReader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+        return reader.toSnapshot();
+    }
+
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                readStartElement(reader);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (VOLTAGE_LEVEL.equals(name)) {
+                    voltageLevel = null;
+                } else if (BRANCHES.contains(name)) {
+                    branch = null;
+                }
+            }
+        }
+    }
+
+    private void readStartElement(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getLocalName();
+        if (networkId == null) {
+            networkId = reader.getAttributeValue(null, "id");
+        } else if (EXTENSION.equals(name)) {
+            skipElement(reader);
+        } else if (SUBSTATION.equals(name)) {
+            substationId = reader.getAttributeValue(null, "id");
+            String country = reader.getAttributeValue(null, "country");
+            countries.put(substationId, country != null ? country : "");
+        } else if (VOLTAGE_LEVEL.equals(name)) {
+            readVoltageLevel(reader);
+        } else if (voltageLevel != null) {
+            readVoltageLevelElement(reader, name);
+        } else if (reader.getAttributeValue(null, "voltageLevelId1") != null) {
+            readMultiTerminalFeeder(reader, name);
+        } else if (branch != null && name.startsWith("currentLimits")) {
+            int side = Integer.parseInt(name.substring("currentLimits".length())) - 1;
+            branch[side].currentLimit = XmlUtil.readOptionalDoubleAttribute(reader, "permanentLimit");
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private void readVoltageLevel(XMLStreamReader reader) {
+        String vlId = reader.getAttributeValue(null, "id");
+        voltageLevel = new VoltageLevelRecord(vlId, substationId, "NODE_BREAKER".equals(reader.getAttributeValue(null, "topologyKind")),
+                                              XmlUtil.readDoubleAttribute(reader, "nominalV"),
+                                              XmlUtil.readOptionalDoubleAttribute(reader, "lowVoltageLimit"),
+                                              XmlUtil.readOptionalDoubleAttribute(reader, "highVoltageLimit"));
+        voltageLevels.put(vlId, voltageLevel);
+        substationIds.put(vlId, substationId);
+    }
+
+    private void readVoltageLevelElement(XMLStreamReader reader, String name) {
+        if (TOPOLOGY_ELEMENTS.contains(name)) {
+            readTopologyElement(reader, name);
+            return;
+        }
+        // any other element of a voltage level connected to it is a single terminal feeder
+        String bus = reader.getAttributeValue(null, BUS);
+        String node = reader.getAttributeValue(null, NODE);
+        if (bus != null) {
+            voltageLevel.addFeeder(voltageLevel.getBus(bus), BRANCH_FEEDERS.contains(name));
+        } else if (node != null) {
+            voltageLevel.addFeeder(Integer.parseInt(node), BRANCH_FEEDERS.contains(name));
+        }
+    }
+
+    private void readTopologyElement(XMLStreamReader reader, String name) {
+        switch (name) {
+            case BUS:
+                if (voltageLevel.nodeBreaker) {
+                    double v = XmlUtil.readOptionalDoubleAttribute(reader, "v");
+                    for (String node : reader.getAttributeValue(null, "nodes").split(",")) {
+                        int vertex = Integer.parseInt(node.trim());
+                        voltageLevel.ensureVertex(vertex);
+                        voltageLevel.vertexV.set(vertex, v);
+                    }
+                } else {
+                    voltageLevel.addBus(reader.getAttributeValue(null, "id"), XmlUtil.readOptionalDoubleAttribute(reader, "v"));
+                }
+                break;
+            case SWITCH:
+                boolean open = XmlUtil.readOptionalBoolAttribute(reader, "open", false);
+                if (voltageLevel.nodeBreaker) {
+                    voltageLevel.addEdge(XmlUtil.readIntAttribute(reader, "node1"), XmlUtil.readIntAttribute(reader, "node2"),
+                                         reader.getAttributeValue(null, "id"), open);
+                } else {
+                    voltageLevel.addEdge(voltageLevel.getBus(reader.getAttributeValue(null, "bus1")), voltageLevel.getBus(reader.getAttributeValue(null, "bus2")),
+                                         reader.getAttributeValue(null, "id"), open);
+                }
+                break;
+            case INTERNAL_CONNECTION:
+                voltageLevel.addEdge(XmlUtil.readIntAttribute(reader, "node1"), XmlUtil.readIntAttribute(reader, "node2"), null, false);
+                break;
+            case BUSBAR_SECTION:
+                voltageLevel.addBusbarSection(reader.getAttributeValue(null, "id"), XmlUtil.readIntAttribute(reader, NODE));
+                break;
+            default:
+                throw new AssertionError("Unexpected topology element: " + name);
+        }
+    }
+
+    /**
+     * Reads the terminals of a branch or of a three windings transformer, which are feeders of their voltage levels.
+     */
+    private void readMultiTerminalFeeder(XMLStreamReader reader, String name) {
+        String id = reader.getAttributeValue(null, "id");
+        boolean compared = BRANCHES.contains(name) && NetworkDiff.isBranchesDiff(diffEquipment)
+                && (selectedBranches == null || selectedBranches.contains(id)) && filter.isIdAccepted(id);
+        TerminalRecord[] terminals = compared ? new TerminalRecord[2] : null;
+        for (int side = 1; reader.getAttributeValue(null, "voltageLevelId" + side) != null; side++) {
+            VoltageLevelRecord vl = voltageLevels.get(reader.getAttributeValue(null, "voltageLevelId" + side));
+            String bus = reader.getAttributeValue(null, BUS + side);
+            String node = reader.getAttributeValue(null, NODE + side);
+            int vertex;
+            if (node != null) {
+                vertex = Integer.parseInt(node);
+                vl.addFeeder(vertex, true);
+            } else if (bus != null) {
+                vertex = vl.getBus(bus);
+                vl.addFeeder(vertex, true);
+            } else {
+                vertex = vl.getBus(reader.getAttributeValue(null, "connectableBus" + side));
+            }
+            if (terminals != null) {
+                terminals[side - 1] = new TerminalRecord(vl, vertex, bus != null,
+                                                         XmlUtil.readOptionalDoubleAttribute(reader, "p" + side),
+                                                         XmlUtil.readOptionalDoubleAttribute(reader, "q" + side));
+            }
+        }
+        if (terminals != null && (isLocationAccepted(terminals[0].voltageLevel) || isLocationAccepted(terminals[1].voltageLevel))) {
+            branches.put(id, terminals);
+            branchTypes.put(id, "twoWindingsTransformer".equals(name) ? ConnectableType.TWO_WINDINGS_TRANSFORMER : ConnectableType.LINE);
+            branchParameters.put(id, new double[] {XmlUtil.readOptionalDoubleAttribute(reader, "r"), XmlUtil.readOptionalDoubleAttribute(reader, "x")});
+            branch = terminals;
+        }
+    }
+
+    private boolean isLocationAccepted(VoltageLevelRecord vl) {
+        return filter.isLocationAccepted(vl.substationId, countries.getOrDefault(vl.substationId, ""), vl.nominalV);
+    }
+
+    private DiffSnapshot toSnapshot() {
+        if (networkId == null) {
+            throw new PowsyblException("Empty XIIDM file");
+        }
+        voltageLevels.values().forEach(VoltageLevelRecord::resolve);
+        SortedMap<String, VoltageLevelDiffInfo> vlInfos = new TreeMap<>();
+        if (NetworkDiff.isVoltageLevelsDiff(diffEquipment)) {
+            for (VoltageLevelRecord vl : voltageLevels.values()) {
+                if ((selectedVoltageLevels == null || selectedVoltageLevels.contains(vl.id)) && filter.isIdAccepted(vl.id) && isLocationAccepted(vl)) {
+                    vlInfos.put(vl.id, vl.toDiffInfo());
+                }
+            }
+        }
+        SortedMap<String, BranchDiffInfo> branchInfos = new TreeMap<>();
+        for (Map.Entry<String, TerminalRecord[]> e : branches.entrySet()) {
+            double[] parameters = branchParameters.get(e.getKey());
+            BranchDiffInfo branchInfo = new BranchDiffInfo(e.getKey(), new EnumMap<>(Side.class), branchTypes.get(e.getKey()), parameters[0], parameters[1]);
+            branchInfo.setTerminalData(Side.ONE, e.getValue()[0].toTerminalData(branchInfo));
+            branchInfo.setTerminalData(Side.TWO, e.getValue()[1].toTerminalData(branchInfo));
+            branchInfos.put(e.getKey(), branchInfo);
+        }
+        return new DiffSnapshot(networkId, vlInfos, branchInfos, substationIds, countries);
+    }
+}
@@ -6,6 +6,9 @@
  */
 package com.powsybl.iidm.diff.tools;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -15,13 +18,25 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
 import com.google.auto.service.AutoService;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.iidm.diff.ApproximateDiffResults;
 import com.powsybl.iidm.diff.DiffConfig;
 import com.powsybl.iidm.diff.DiffEquipment;
 import com.powsybl.iidm.diff.DiffEquipmentType;
+import com.powsybl.iidm.diff.DiffResultCache;
+import com.powsybl.iidm.diff.DiffSnapshot;
+import com.powsybl.iidm.diff.DistributedNetworkDiff;
+import com.powsybl.iidm.diff.IdMapping;
 import com.powsybl.iidm.diff.NetworkDiff;
 import com.powsybl.iidm.diff.NetworkDiffResults;
+import com.powsybl.iidm.diff.SnapshotWatcher;
+import com.powsybl.iidm.diff.ThreeWayNetworkDiff;
+import com.powsybl.iidm.diff.XiidmPartialImporter;
+import com.powsybl.iidm.diff.XiidmSnapshotReader;
 import com.powsybl.iidm.import_.ImportConfig;
-import com.powsybl.iidm.import_.Importers;
+import com.powsybl.iidm.network.Country;
 import com.powsybl.iidm.network.Network;
 import com.powsybl.tools.Command;
 import com.powsybl.tools.Tool;
@@ -40,6 +55,31 @@ public class DiffTool implements Tool {
     private static final String EQUIPMENT_TYPES = "equipment-types";
     private static final String VL_IDS = "vl-ids";
     private static final String BRANCH_IDS = "branch-ids";
+    private static final String STREAMING = "streaming";
+    private static final String COUNTRIES = "countries";
+    private static final String SUBSTATION_IDS = "substation-ids";
+    private static final String MIN_NOMINAL_V = "min-nominal-v";
+    private static final String MAX_NOMINAL_V = "max-nominal-v";
+    private static final String ID_REGEX = "id-regex";
+    private static final String PARTITION_BY = "partition-by";
+    private static final String PARTITIONS = "partitions";
+    private static final String BASE_FILE = "base-file";
+    private static final String OUTPUT_SHARDS = "output-shards";
+    private static final String COMPRESS = "compress";
+    private static final String COMPRESSION_THREADS = "compression-threads";
+    private static final String OUTPUT_INDEX = "output-index";
+    private static final String CACHE_DIR = "cache-dir";
+    private static final String CACHE_MAX_SIZE = "cache-max-size";
+    private static final long CACHE_MAX_SIZE_DEFAULT = 1024;
+    private static final String LOW_MEMORY = "low-memory";
+    private static final String SAMPLE_FRACTION = "sample-fraction";
+    private static final String STRATIFIED = "stratified";
+    private static final long SAMPLE_SEED = 0;
+    private static final String WATCH = "watch";
+    private static final String WATCH_SNAPSHOTS = "watch-snapshots";
+    private static final int WATCH_QUEUE_CAPACITY = 2;
+    private static final String ID_MAPPING = "id-mapping";
+    private static final String OUTPUT_CHANGE_SET = "output-change-set";
 
     @Override
     public Command getCommand() {
@@ -102,6 +142,116 @@ public class DiffTool implements Tool {
                         .numberOfArgs(Option.UNLIMITED_VALUES)
                         .valueSeparator(',')
                         .build());
+                options.addOption(Option.builder().longOpt(COUNTRIES)
+                        .desc("countries of the substations to compare, all of them if the option if not specified")
+                        .hasArg()
+                        .argName("COUNTRIES")
+                        .numberOfArgs(Option.UNLIMITED_VALUES)
+                        .valueSeparator(',')
+                        .build());
+                options.addOption(Option.builder().longOpt(SUBSTATION_IDS)
+                        .desc("substation ids to compare, all of them if the option if not specified")
+                        .hasArg()
+                        .argName("SUBSTATION_IDS")
+                        .numberOfArgs(Option.UNLIMITED_VALUES)
+                        .valueSeparator(',')
+                        .build());
+                options.addOption(Option.builder().longOpt(MIN_NOMINAL_V)
+                        .desc("minimum nominal voltage of the voltage levels to compare")
+                        .hasArg()
+                        .argName("MIN_NOMINAL_V")
+                        .build());
+                options.addOption(Option.builder().longOpt(MAX_NOMINAL_V)
+                        .desc("maximum nominal voltage of the voltage levels to compare")
+                        .hasArg()
+                        .argName("MAX_NOMINAL_V")
+                        .build());
+                options.addOption(Option.builder().longOpt(ID_REGEX)
+                        .desc("regular expression matching the ids of the equipments to compare")
+                        .hasArg()
+                        .argName("ID_REGEX")
+                        .build());
+                options.addOption(Option.builder().longOpt(PARTITION_BY)
+                        .desc("diff the networks by partitions of " + Arrays.toString(DistributedNetworkDiff.PartitionKey.values())
+                                + " in worker processes, XIIDM input files only")
+                        .hasArg()
+                        .argName("PARTITION_KEY")
+                        .build());
+                options.addOption(Option.builder().longOpt(PARTITIONS)
+                        .desc("number of partitions, the number of available processors if the option if not specified")
+                        .hasArg()
+                        .argName("PARTITIONS")
+                        .build());
+                options.addOption(Option.builder().longOpt(BASE_FILE)
+                        .desc("the common base of the input files, for a three-way diff")
+                        .hasArg()
+                        .argName("BASE_FILE")
+                        .build());
+                options.addOption(Option.builder().longOpt(OUTPUT_SHARDS)
+                        .desc("write the output to the output-file directory as shards of each equipment type written in parallel, with a manifest")
+                        .hasArg()
+                        .argName("OUTPUT_SHARDS")
+                        .build());
+                options.addOption(Option.builder().longOpt(COMPRESS)
+                        .desc("gzip compress the output, output files with a .gz extension are always compressed")
+                        .build());
+                options.addOption(Option.builder().longOpt(COMPRESSION_THREADS)
+                        .desc("number of threads compressing the output by blocks, 1 if the option is not specified")
+                        .hasArg()
+                        .argName("COMPRESSION_THREADS")
+                        .build());
+                options.addOption(Option.builder().longOpt(OUTPUT_INDEX)
+                        .desc("also write the index of the results by id, to the output-file name with a .idx extension; a compressed output "
+                              + "is still decompressed up to each result read through the index")
+                        .build());
+                options.addOption(Option.builder().longOpt(CACHE_DIR)
+                        .desc("directory of the cache of diff outputs, reused when the input files, the config, the compared equipments and the output options are the same")
+                        .hasArg()
+                        .argName("CACHE_DIR")
+                        .build());
+                options.addOption(Option.builder().longOpt(CACHE_MAX_SIZE)
+                        .desc("maximum size of the cache in MB, " + CACHE_MAX_SIZE_DEFAULT + " if the option is not specified")
+                        .hasArg()
+                        .argName("CACHE_MAX_SIZE")
+                        .build());
+                options.addOption(Option.builder().longOpt(LOW_MEMORY)
+                        .desc("load the input files one after the other, keeping only the compared quantities of the first network while loading the second one")
+                        .build());
+                options.addOption(Option.builder().longOpt(SAMPLE_FRACTION)
+                        .desc("write estimates of the differences from the diff of a random sample of this fraction of the voltage levels and branches,"
+                                + " instead of the full diff; both input files are still fully imported, within the compared equipments, before sampling")
+                        .hasArg()
+                        .argName("SAMPLE_FRACTION")
+                        .build());
+                options.addOption(Option.builder().longOpt(STRATIFIED)
+                        .desc("sample each nominal voltage separately")
+                        .build());
+                options.addOption(Option.builder().longOpt(WATCH)
+                        .desc("diff input-file2 then each snapshot file dropped in the watched directory against input-file1,"
+                                + " writing their results to the output-file directory")
+                        .hasArg()
+                        .argName("WATCH_DIR")
+                        .build());
+                options.addOption(Option.builder().longOpt(WATCH_SNAPSHOTS)
+                        .desc("number of snapshots to diff in watch mode, input-file2 included, no limit if the option is not specified")
+                        .hasArg()
+                        .argName("WATCH_SNAPSHOTS")
+                        .build());
+                options.addOption(Option.builder().longOpt(STREAMING)
+                        .desc("read the XIIDM input files in streaming, without loading the networks")
+                        .build());
+                options.addOption(Option.builder().longOpt(ID_MAPPING)
+                        .desc("CSV file of id1,id2 lines mapping the voltage level, branch and switch ids of input-file2 to those of input-file1,"
+                                + " substation and bus ids may be mapped too")
+                        .hasArg()
+                        .argName("ID_MAPPING_FILE")
+                        .build());
+                options.addOption(Option.builder().longOpt(OUTPUT_CHANGE_SET)
+                        .desc("also write the changed voltage levels, branches and switches as a compressed bitmap over their sorted ids,"
+                                + " not cached")
+                        .hasArg()
+                        .argName("CHANGE_SET_FILE")
+                        .build());
                 return options;
             }
 
@@ -114,6 +264,8 @@ public class DiffTool implements Tool {
 
     @Override
     public void run(CommandLine line, ToolRunningContext context) throws Exception {
+        DiffConfig config = DiffConfig.load();
+        checkOptions(line, config);
         String inputFile1 = line.getOptionValue(INPUT_FILE1);
         String inputFile2 = line.getOptionValue(INPUT_FILE2);
         String outputFile = line.getOptionValue(OUTPUT_FILE);
@@ -126,12 +278,6 @@ public class DiffTool implements Tool {
         String[] vlIds = line.getOptionValues(VL_IDS);
         String[] branchIds = line.getOptionValues(BRANCH_IDS);
 
-        DiffConfig config = DiffConfig.load();
-
-        ImportConfig importConfig = new ImportConfig();
-
-        Network network1 = Importers.loadNetwork(context.getFileSystem().getPath(inputFile1), context.getShortTimeExecutionComputationManager(), importConfig, null);
-        Network network2 = Importers.loadNetwork(context.getFileSystem().getPath(inputFile2), context.getShortTimeExecutionComputationManager(), importConfig, null);
         DiffEquipment diffEquipment = new DiffEquipment();
         diffEquipment.setEquipmentTypes(equipmentTypes);
         if (vlIds != null) {
@@ -140,7 +286,203 @@ public class DiffTool implements Tool {
         if (branchIds != null) {
             diffEquipment.setBranches(Arrays.asList(branchIds));
         }
-        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, network2, diffEquipment);
-        NetworkDiff.writeJson(context.getFileSystem().getPath(outputFile), ndifr);
+        if (line.hasOption(COUNTRIES)) {
+            diffEquipment.setCountries(Arrays.stream(line.getOptionValues(COUNTRIES))
+                                             .map(Country::valueOf)
+                                             .collect(Collectors.toList()));
+        }
+        if (line.hasOption(SUBSTATION_IDS)) {
+            diffEquipment.setSubstations(Arrays.asList(line.getOptionValues(SUBSTATION_IDS)));
+        }
+        if (line.hasOption(MIN_NOMINAL_V)) {
+            diffEquipment.setMinNominalV(Double.parseDouble(line.getOptionValue(MIN_NOMINAL_V)));
+        }
+        if (line.hasOption(MAX_NOMINAL_V)) {
+            diffEquipment.setMaxNominalV(Double.parseDouble(line.getOptionValue(MAX_NOMINAL_V)));
+        }
+        diffEquipment.setIdRegex(line.getOptionValue(ID_REGEX));
+        IdMapping idMapping = line.hasOption(ID_MAPPING) ? IdMapping.read(context.getFileSystem().getPath(line.getOptionValue(ID_MAPPING))) : IdMapping.empty();
+        DiffEquipment diffEquipment2 = mapToSecondNetwork(diffEquipment, idMapping);
+        if (line.hasOption(PARTITION_BY)) {
+            DistributedNetworkDiff.PartitionKey partitionKey = DistributedNetworkDiff.PartitionKey.valueOf(line.getOptionValue(PARTITION_BY));
+            int partitions = line.hasOption(PARTITIONS) ? Integer.parseInt(line.getOptionValue(PARTITIONS)) : Runtime.getRuntime().availableProcessors();
+            new DistributedNetworkDiff(config, context.getLongTimeExecutionComputationManager())
+                    .diff(context.getFileSystem().getPath(inputFile1), context.getFileSystem().getPath(inputFile2), diffEquipment, partitionKey, partitions,
+                          context.getFileSystem().getPath(outputFile));
+            return;
+        }
+        if (line.hasOption(BASE_FILE)) {
+            DiffSnapshot base = readSnapshot(line, context, line.getOptionValue(BASE_FILE), diffEquipment, config);
+            DiffSnapshot snapshot1 = readSnapshot(line, context, inputFile1, diffEquipment, config);
+            DiffSnapshot snapshot2 = readSnapshot(line, context, inputFile2, diffEquipment, config);
+            ThreeWayNetworkDiff.writeJson(context.getFileSystem().getPath(outputFile), base, snapshot1, snapshot2,
+                                          new ThreeWayNetworkDiff(config).diff(base, snapshot1, snapshot2));
+            return;
+        }
+        if (line.hasOption(WATCH)) {
+            watch(line, context, diffEquipment, config);
+            return;
+        }
+        if (line.hasOption(SAMPLE_FRACTION)) {
+            ImportConfig importConfig = new ImportConfig();
+            Network network1 = load(context, inputFile1, diffEquipment, config, importConfig);
+            Network network2 = load(context, inputFile2, diffEquipment2, config, importConfig);
+            ApproximateDiffResults results = new NetworkDiff(config, idMapping).approximateDiff(network1, network2, diffEquipment,
+                Double.parseDouble(line.getOptionValue(SAMPLE_FRACTION)), line.hasOption(STRATIFIED), SAMPLE_SEED);
+            JsonUtil.writeJson(context.getFileSystem().getPath(outputFile), results::writeJson);
+            return;
+        }
+        boolean compress = line.hasOption(COMPRESS);
+        int compressionThreads = line.hasOption(COMPRESSION_THREADS) ? Integer.parseInt(line.getOptionValue(COMPRESSION_THREADS)) : 1;
+        boolean index = line.hasOption(OUTPUT_INDEX);
+        DiffResultCache cache = null;
+        String cacheKey = null;
+        if (line.hasOption(CACHE_DIR)) {
+            long cacheMaxSize = line.hasOption(CACHE_MAX_SIZE) ? Long.parseLong(line.getOptionValue(CACHE_MAX_SIZE)) : CACHE_MAX_SIZE_DEFAULT;
+            cache = new DiffResultCache(context.getFileSystem().getPath(line.getOptionValue(CACHE_DIR)), cacheMaxSize * 1024 * 1024);
+            cacheKey = cache.computeKey(context.getFileSystem().getPath(inputFile1), context.getFileSystem().getPath(inputFile2), config, diffEquipment,
+                                        "compress=" + compress + ",compressionThreads=" + compressionThreads + ",index=" + index + ",streaming=" + line.hasOption(STREAMING)
+                                        + ",lowMemory=" + line.hasOption(LOW_MEMORY) + ",idMapping=" + hash(context, line.getOptionValue(ID_MAPPING)));
+            if (cache.get(cacheKey, context.getFileSystem().getPath(outputFile))) {
+                return;
+            }
+        }
+        if (line.hasOption(OUTPUT_CHANGE_SET)) {
+            config.setChangeSet(true);
+        }
+        NetworkDiffResults ndifr;
+        if (line.hasOption(STREAMING)) {
+            DiffSnapshot snapshot1 = XiidmSnapshotReader.read(context.getFileSystem().getPath(inputFile1), diffEquipment);
+            DiffSnapshot snapshot2 = XiidmSnapshotReader.read(context.getFileSystem().getPath(inputFile2), diffEquipment);
+            ndifr = new NetworkDiff(config).diff(snapshot1, snapshot2);
+        } else if (line.hasOption(LOW_MEMORY)) {
+            ImportConfig importConfig = new ImportConfig();
+            ndifr = new NetworkDiff(config, idMapping).diffSequentially(
+                () -> load(context, inputFile1, diffEquipment, config, importConfig),
+                () -> load(context, inputFile2, diffEquipment2, config, importConfig),
+                diffEquipment);
+        } else {
+            ImportConfig importConfig = new ImportConfig();
+            Network network1 = load(context, inputFile1, diffEquipment, config, importConfig);
+            Network network2 = load(context, inputFile2, diffEquipment2, config, importConfig);
+            ndifr = new NetworkDiff(config, idMapping).diff(network1, network2, diffEquipment);
+        }
+        if (line.hasOption(OUTPUT_SHARDS)) {
+            NetworkDiff.writeJsonShards(context.getFileSystem().getPath(outputFile), ndifr, Integer.parseInt(line.getOptionValue(OUTPUT_SHARDS)), compress);
+        } else {
+            NetworkDiff.writeJson(context.getFileSystem().getPath(outputFile), ndifr, compress, compressionThreads, index);
+            if (cache != null) {
+                cache.put(cacheKey, context.getFileSystem().getPath(outputFile), index);
+            }
+        }
+        if (line.hasOption(OUTPUT_CHANGE_SET)) {
+            ndifr.getChangeSet().write(context.getFileSystem().getPath(line.getOptionValue(OUTPUT_CHANGE_SET)));
+        }
+    }
+
+    /**
+     * Rejects the options which are ignored by the mode of the diff or by the other options, instead of silently
+     * writing an output which does not reflect them.
+     */
+    private static void checkOptions(CommandLine line, DiffConfig config) {
+        checkRequired(line, PARTITIONS, PARTITION_BY);
+        checkRequired(line, WATCH_SNAPSHOTS, WATCH);
+        checkRequired(line, STRATIFIED, SAMPLE_FRACTION);
+        checkRequired(line, CACHE_MAX_SIZE, CACHE_DIR);
+        // the partitions are diffed and merged by worker processes, from the XIIDM files
+        checkExclusive(line, PARTITION_BY, BASE_FILE, WATCH, SAMPLE_FRACTION, STREAMING, LOW_MEMORY, ID_MAPPING, COMPRESS, COMPRESSION_THREADS,
+                       OUTPUT_INDEX, OUTPUT_SHARDS, CACHE_DIR, OUTPUT_CHANGE_SET);
+        checkExclusive(line, BASE_FILE, WATCH, SAMPLE_FRACTION, LOW_MEMORY, ID_MAPPING, COMPRESS, COMPRESSION_THREADS, OUTPUT_INDEX, OUTPUT_SHARDS,
+                       CACHE_DIR, OUTPUT_CHANGE_SET);
+        checkExclusive(line, WATCH, SAMPLE_FRACTION, LOW_MEMORY, ID_MAPPING, COMPRESS, COMPRESSION_THREADS, OUTPUT_INDEX, OUTPUT_SHARDS, CACHE_DIR,
+                       OUTPUT_CHANGE_SET);
+        checkExclusive(line, SAMPLE_FRACTION, STREAMING, LOW_MEMORY, COMPRESS, COMPRESSION_THREADS, OUTPUT_INDEX, OUTPUT_SHARDS, CACHE_DIR,
+                       OUTPUT_CHANGE_SET);
+        // streaming snapshots are read with the ids of their files
+        checkExclusive(line, STREAMING, LOW_MEMORY, ID_MAPPING);
+        // sharded outputs are directories and change sets are separate files, they are not cached
+        checkExclusive(line, OUTPUT_SHARDS, COMPRESSION_THREADS, OUTPUT_INDEX, CACHE_DIR);
+        checkExclusive(line, OUTPUT_CHANGE_SET, CACHE_DIR);
+        // streaming snapshots have no topology, balance or current limits, three-way and approximate diffs compare
+        // equipments only, the balance filter needs both networks at once, which low memory and watched diffs never hold
+        checkConfig(line, config.isTopologyDiff(), "topology-diff", STREAMING, BASE_FILE, SAMPLE_FRACTION);
+        checkConfig(line, config.isBalanceDiff(), "balance-diff", STREAMING, BASE_FILE, SAMPLE_FRACTION);
+        checkConfig(line, config.isBalanceFilter(), "balance-filter", STREAMING, BASE_FILE, SAMPLE_FRACTION, LOW_MEMORY, WATCH);
+        checkConfig(line, config.isLoadingDiff(), "loading-diff", STREAMING, BASE_FILE, SAMPLE_FRACTION);
+        checkConfig(line, config.isStructuralMatching(), "structural-matching", BASE_FILE, SAMPLE_FRACTION);
+    }
+
+    private static void checkConfig(CommandLine line, boolean enabled, String property, String... excludedOptions) {
+        if (enabled) {
+            for (String excludedOption : excludedOptions) {
+                if (line.hasOption(excludedOption)) {
+                    throw new IllegalArgumentException("Option --" + excludedOption + " cannot be used with the " + property + " config property");
+                }
+            }
+        }
+    }
+
+    private static void checkRequired(CommandLine line, String option, String requiredOption) {
+        if (line.hasOption(option) && !line.hasOption(requiredOption)) {
+            throw new IllegalArgumentException("Option --" + option + " requires --" + requiredOption);
+        }
+    }
+
+    private static void checkExclusive(CommandLine line, String option, String... excludedOptions) {
+        if (line.hasOption(option)) {
+            for (String excludedOption : excludedOptions) {
+                if (line.hasOption(excludedOption)) {
+                    throw new IllegalArgumentException("Option --" + excludedOption + " cannot be used with --" + option);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the compared equipments with the voltage level and branch ids of the second network, for its partial import.
+     */
+    private static DiffEquipment mapToSecondNetwork(DiffEquipment diffEquipment, IdMapping idMapping) {
+        if (idMapping.isEmpty()) {
+            return diffEquipment;
+        }
+        DiffEquipment diffEquipment2 = new DiffEquipment();
+        // the partial import is only scoped by ids, the other filters are applied by the diff to the mapped ids
+        diffEquipment2.setEquipmentTypes(diffEquipment.getEquipmentTypes());
+        if (diffEquipment.getVoltageLevels() != null) {
+            diffEquipment2.setVoltageLevels(diffEquipment.getVoltageLevels().stream().map(idMapping::toId2).collect(Collectors.toList()));
+        }
+        if (diffEquipment.getBranches() != null) {
+            diffEquipment2.setBranches(diffEquipment.getBranches().stream().map(idMapping::toId2).collect(Collectors.toList()));
+        }
+        return diffEquipment2;
+    }
+
+    private static String hash(ToolRunningContext context, String file) throws IOException {
+        return file == null ? "" : MoreFiles.asByteSource(context.getFileSystem().getPath(file)).hash(Hashing.sha256()).toString();
+    }
+
+    private static void watch(CommandLine line, ToolRunningContext context, DiffEquipment diffEquipment, DiffConfig config) throws IOException {
+        Path outputDirectory = context.getFileSystem().getPath(line.getOptionValue(OUTPUT_FILE));
+        Files.createDirectories(outputDirectory);
+        DiffSnapshot reference = readSnapshot(line, context, line.getOptionValue(INPUT_FILE1), diffEquipment, config);
+        SnapshotWatcher watcher = new SnapshotWatcher(new NetworkDiff(config), reference,
+            file -> readSnapshot(line, context, file.toString(), diffEquipment, config), outputDirectory, WATCH_QUEUE_CAPACITY);
+        watcher.diff(context.getFileSystem().getPath(line.getOptionValue(INPUT_FILE2)));
+        int snapshots = line.hasOption(WATCH_SNAPSHOTS) ? Integer.parseInt(line.getOptionValue(WATCH_SNAPSHOTS)) : 0;
+        if (snapshots != 1) {
+            watcher.watch(context.getFileSystem().getPath(line.getOptionValue(WATCH)), Math.max(0, snapshots - 1));
+        }
+    }
+
+    private static DiffSnapshot readSnapshot(CommandLine line, ToolRunningContext context, String inputFile, DiffEquipment diffEquipment, DiffConfig config) {
+        if (line.hasOption(STREAMING)) {
+            return XiidmSnapshotReader.read(context.getFileSystem().getPath(inputFile), diffEquipment);
+        }
+        Network network = load(context, inputFile, diffEquipment, config, new ImportConfig());
+        return new NetworkDiff(config).snapshot(network, diffEquipment);
+    }
+
+    private static Network load(ToolRunningContext context, String inputFile, DiffEquipment diffEquipment, DiffConfig config, ImportConfig importConfig) {
+        return XiidmPartialImporter.load(context.getFileSystem().getPath(inputFile), diffEquipment, config, context.getShortTimeExecutionComputationManager(), importConfig);
     }
 }
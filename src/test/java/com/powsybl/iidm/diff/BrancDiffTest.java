@@ -6,12 +6,17 @@
  */
 package com.powsybl.iidm.diff;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -21,6 +26,7 @@ import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import com.powsybl.commons.config.InMemoryPlatformConfig;
 import com.powsybl.commons.json.JsonUtil;
+import com.powsybl.iidm.network.Branch;
 import com.powsybl.iidm.network.Line;
 import com.powsybl.iidm.network.Network;
 
@@ -86,4 +92,39 @@ public class BrancDiffTest {
         assertFalse(diffResult.isDifferent());
         assertNotNull(JsonUtil.toJson(diffResult::writeJson));
     }
+
+    @Test
+    public void testBlockComparison() {
+        config.setThresholdRules(List.of(new ThresholdRule(DiffEquipmentType.BRANCHES, ThresholdRule.Quantity.P, 300, Double.NaN, 0.5, 0.01)));
+        BranchDiffProc branchDiffProc = new BranchDiffProc(config);
+        Random random = new Random(7);
+        double[] specialValues = {Double.NaN, Double.POSITIVE_INFINITY, 0};
+        List<BranchDiffInfo> branchInfos1 = new ArrayList<>();
+        List<BranchDiffInfo> branchInfos2 = new ArrayList<>();
+        // more than one block
+        for (int i = 0; i < 2500; i++) {
+            BranchDiffInfo branchInfo1 = new BranchDiffInfo("B" + i, new EnumMap<>(Branch.Side.class));
+            BranchDiffInfo branchInfo2 = new BranchDiffInfo("B" + i, new EnumMap<>(Branch.Side.class));
+            for (Branch.Side side : Branch.Side.values()) {
+                double vNom = random.nextBoolean() ? 380 : 225;
+                double p = random.nextInt(10) == 0 ? specialValues[random.nextInt(3)] : random.nextDouble() * 1000;
+                double q = random.nextDouble() * 100;
+                double deltaP = random.nextInt(4) == 0 ? random.nextDouble() * 20 : 0;
+                boolean connected = random.nextInt(20) != 0;
+                branchInfo1.setTerminalData(side, branchInfo1.new TerminalData("VL", true, p, q, 10, 100, vNom));
+                branchInfo2.setTerminalData(side, branchInfo2.new TerminalData("VL", connected, p + deltaP, q, 10, 100, vNom));
+            }
+            branchInfos1.add(branchInfo1);
+            branchInfos2.add(branchInfo2);
+        }
+        List<DiffResult> blockResults = branchDiffProc.diff(branchInfos1, branchInfos2);
+        assertEquals(branchInfos1.size(), blockResults.size());
+        int differentCount = 0;
+        for (int i = 0; i < branchInfos1.size(); i++) {
+            boolean different = branchDiffProc.diff(branchInfos1.get(i), branchInfos2.get(i)).isDifferent();
+            assertEquals(different, blockResults.get(i).isDifferent());
+            differentCount += different ? 1 : 0;
+        }
+        assertTrue(differentCount > 0 && differentCount < branchInfos1.size());
+    }
 }
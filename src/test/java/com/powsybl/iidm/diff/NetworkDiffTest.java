@@ -6,31 +6,72 @@
  */
 package com.powsybl.iidm.diff;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import com.powsybl.commons.PowsyblException;
 import com.powsybl.commons.config.InMemoryPlatformConfig;
 import com.powsybl.commons.config.MapModuleConfig;
+import com.powsybl.computation.local.LocalComputationManager;
+import com.powsybl.iidm.import_.ImportConfig;
+import com.powsybl.iidm.network.Branch;
+import com.powsybl.iidm.network.Country;
 import com.powsybl.iidm.network.Network;
+import com.powsybl.iidm.network.Substation;
+import com.powsybl.iidm.network.VoltageLevel;
+import com.powsybl.iidm.xml.NetworkXml;
 
 /**
  * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
  */
 public class NetworkDiffTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkDiffTest.class);
+
     private FileSystem fileSystem;
     private Path tmpDir;
 
@@ -157,6 +198,300 @@ public class NetworkDiffTest {
         assertTrue(Files.exists(outFile));
     }
 
+    @Test
+    public void testShardedOutput() throws IOException {
+        config.setTopologyDiff(true);
+        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, network2);
+        Path directory = tmpDir.resolve("shards");
+        NetworkDiff.writeJsonShards(directory, ndifr, 3);
+
+        ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+        JsonNode manifest = objectMapper.readTree(Files.readAllBytes(directory.resolve("manifest.json")));
+        assertEquals(network1.getId(), manifest.get("network1").asText());
+        assertEquals("topology.json", manifest.get("topology").asText());
+        assertEquals(1, manifest.get("diff.RemovedBranches").size());
+        List<String> vlIds = new ArrayList<>();
+        List<String> branchIds = new ArrayList<>();
+        for (JsonNode shard : manifest.get("shards")) {
+            JsonNode results = objectMapper.readTree(Files.readAllBytes(directory.resolve(shard.get("file").asText()))).get(shard.get("field").asText());
+            assertEquals(shard.get("count").asInt(), results.size());
+            boolean voltageLevels = "diff.VoltageLevels".equals(shard.get("field").asText());
+            results.forEach(result -> (voltageLevels ? vlIds : branchIds).add(result.get(voltageLevels ? "vl.vlId1" : "branch.branchId1").asText()));
+            assertEquals(shard.get("lastId").asText(), voltageLevels ? vlIds.get(vlIds.size() - 1) : branchIds.get(branchIds.size() - 1));
+        }
+        assertEquals(ndifr.vlDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()), vlIds);
+        assertEquals(ndifr.branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()), branchIds);
+        assertFalse(branchIds.isEmpty());
+        assertEquals(Math.min(3, vlIds.size()) + Math.min(3, branchIds.size()), manifest.get("shards").size());
+    }
+
+    @Test
+    public void testCompressedOutput() throws IOException {
+        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, network2);
+        Path plainFile = tmpDir.resolve("diff.json");
+        Path gzipFile = tmpDir.resolve("diff.json.gz");
+        Path parallelGzipFile = tmpDir.resolve("diff-parallel.json");
+        NetworkDiff.writeJson(plainFile, ndifr);
+        NetworkDiff.writeJson(gzipFile, ndifr);
+        NetworkDiff.writeJson(parallelGzipFile, ndifr, true, 3);
+
+        String json = Files.readString(plainFile);
+        for (Path file : List.of(plainFile, gzipFile, parallelGzipFile)) {
+            try (InputStream is = CompressedStreams.newInputStream(file)) {
+                assertEquals(json, new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertFalse(Files.readAllBytes(gzipFile)[0] == '{');
+
+        // several blocks compressed in parallel are concatenated gzip members
+        byte[] data = new byte[(5 << 20) / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        Path blocksFile = tmpDir.resolve("blocks.gz");
+        try (OutputStream os = CompressedStreams.newOutputStream(blocksFile, false, 4)) {
+            os.write(data);
+        }
+        try (InputStream is = CompressedStreams.newInputStream(blocksFile)) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testResultsReader() throws IOException {
+        config.setFilterDifferent(true);
+        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, network2);
+        Path plainFile = tmpDir.resolve("diff.json");
+        Path indexedFile = tmpDir.resolve("diff-indexed.json");
+        Path indexedGzipFile = tmpDir.resolve("diff-indexed.json.gz");
+        NetworkDiff.writeJson(plainFile, ndifr);
+        NetworkDiff.writeJson(indexedFile, ndifr, false, 1, true);
+        NetworkDiff.writeJson(indexedGzipFile, ndifr, false, 1, true);
+        assertEquals(Files.readString(plainFile), Files.readString(indexedFile));
+        assertTrue(Files.exists(tmpDir.resolve("diff-indexed.json.idx")));
+
+        JsonNode json = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build().readTree(Files.readAllBytes(plainFile));
+        try (Stream<NetworkDiffResultsReader.Element> elements = NetworkDiffResultsReader.read(plainFile)) {
+            assertEquals(json.get("diff.VoltageLevels").size() + json.get("diff.Branches").size(), elements.count());
+        }
+        try (Stream<NetworkDiffResultsReader.Element> elements = NetworkDiffResultsReader.read(indexedGzipFile, DiffEquipmentType.BRANCHES, id -> true)) {
+            assertEquals(ndifr.branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()),
+                         elements.map(NetworkDiffResultsReader.Element::getId).collect(Collectors.toList()));
+        }
+
+        for (Path file : List.of(plainFile, indexedFile, indexedGzipFile)) {
+            for (JsonNode branch : json.get("diff.Branches")) {
+                String branchId = branch.get("branch.branchId1").asText();
+                NetworkDiffResultsReader.Element element = NetworkDiffResultsReader.find(file, DiffEquipmentType.BRANCHES, branchId).orElseThrow();
+                assertEquals(branch, element.getValues());
+                assertEquals(branch.get("branch.isDifferent").asBoolean(), element.isDifferent());
+            }
+            String vlId = json.get("diff.VoltageLevels").get(0).get("vl.vlId1").asText();
+            assertEquals(json.get("diff.VoltageLevels").get(0), NetworkDiffResultsReader.find(file, DiffEquipmentType.VOLTAGE_LEVELS, vlId).orElseThrow().getValues());
+            assertFalse(NetworkDiffResultsReader.find(file, DiffEquipmentType.BRANCHES, vlId).isPresent());
+        }
+
+        // the index is loaded once for all the lookups
+        NetworkDiffResultsReader.IndexedResults indexedResults = NetworkDiffResultsReader.openIndexed(indexedGzipFile);
+        for (DiffResult branchDiff : ndifr.branchDiffs) {
+            assertEquals(branchDiff.getId(), indexedResults.find(DiffEquipmentType.BRANCHES, branchDiff.getId()).orElseThrow().getId());
+        }
+        assertFalse(indexedResults.find(DiffEquipmentType.VOLTAGE_LEVELS, "unknown").isPresent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResultsReaderWithoutIndex() {
+        Path file = tmpDir.resolve("diff.json");
+        NetworkDiff.writeJson(file, new NetworkDiff(config).diff(network1, network2));
+        NetworkDiffResultsReader.openIndexed(file);
+    }
+
+    @Test(expected = PowsyblException.class)
+    public void testResultsReaderInvalidIndex() throws IOException {
+        Path file = tmpDir.resolve("diff.json");
+        NetworkDiff.writeJson(file, new NetworkDiff(config).diff(network1, network2), false, 1, true);
+        Path indexFile = tmpDir.resolve("diff.json.idx");
+        byte[] index = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(index, index.length - 8));
+        NetworkDiffResultsReader.openIndexed(file);
+    }
+
+    @Test
+    public void testResultCache() throws IOException {
+        Path file1 = tmpDir.resolve("network1.xiidm");
+        Path file2 = tmpDir.resolve("network2.xiidm");
+        NetworkXml.write(network1, file1);
+        NetworkXml.write(network2, file2);
+        Path cacheDir = tmpDir.resolve("cache");
+        DiffResultCache cache = new DiffResultCache(cacheDir, 1 << 20);
+        DiffEquipment diffEquipment = new DiffEquipment();
+        String key = cache.computeKey(file1, file2, config, diffEquipment, "");
+        assertEquals(key, cache.computeKey(file1, file2, config, diffEquipment, ""));
+        assertFalse(key.equals(cache.computeKey(file2, file1, config, diffEquipment, "")));
+        assertFalse(key.equals(cache.computeKey(file1, file2, config, diffEquipment, "compress=true")));
+        diffEquipment.setMinNominalV(100);
+        assertFalse(key.equals(cache.computeKey(file1, file2, config, diffEquipment, "")));
+        diffEquipment.setMinNominalV(Double.NaN);
+        config.setFilterDifferent(!config.isFilterDifferent());
+        assertFalse(key.equals(cache.computeKey(file1, file2, config, diffEquipment, "")));
+        config.setFilterDifferent(!config.isFilterDifferent());
+
+        Path outputFile = tmpDir.resolve("diff.json");
+        Path cachedFile = tmpDir.resolve("cached.json");
+        assertFalse(cache.get(key, cachedFile));
+        NetworkDiff.writeJson(outputFile, new NetworkDiff(config).diff(network1, network2), false, 1, true);
+        cache.put(key, outputFile, true);
+        // a concurrent run storing the same entry
+        cache.put(key, outputFile, true);
+        assertTrue(cache.get(key, cachedFile));
+        assertEquals(Files.readString(outputFile), Files.readString(cachedFile));
+        assertTrue(Files.exists(tmpDir.resolve("cached.json.idx")));
+        // options adding results to the output are part of the key
+        config.setBalanceDiff(true);
+        assertFalse(cache.get(cache.computeKey(file1, file2, config, diffEquipment, ""), cachedFile));
+        config.setBalanceDiff(false);
+        config.setBalanceFilter(true);
+        assertFalse(cache.get(cache.computeKey(file1, file2, config, diffEquipment, ""), cachedFile));
+        config.setBalanceFilter(false);
+        config.setLoadingDiff(true);
+        assertFalse(cache.get(cache.computeKey(file1, file2, config, diffEquipment, ""), cachedFile));
+        config.setLoadingDiff(false);
+        config.setStructuralMatching(true);
+        assertFalse(cache.get(cache.computeKey(file1, file2, config, diffEquipment, ""), cachedFile));
+        config.setStructuralMatching(false);
+        assertTrue(cache.get(cache.computeKey(file1, file2, config, diffEquipment, ""), cachedFile));
+
+        // the least recently used entry is evicted
+        long entrySize = Files.size(outputFile) + Files.size(tmpDir.resolve("diff.json.idx"));
+        DiffResultCache smallCache = new DiffResultCache(cacheDir, entrySize);
+        Files.setLastModifiedTime(cacheDir.resolve(key), FileTime.fromMillis(0));
+        smallCache.put("other", outputFile, true);
+        assertFalse(smallCache.get(key, cachedFile));
+        assertTrue(smallCache.get("other", cachedFile));
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    public void testSnapshotWatcher() throws Exception {
+        FileSystem watchedFileSystem = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS))
+                .build());
+        Path watchedDir = Files.createDirectory(watchedFileSystem.getPath("/snapshots"));
+        Path outputDir = Files.createDirectory(watchedFileSystem.getPath("/output"));
+        Path snapshotFile = watchedFileSystem.getPath("/network2.xiidm");
+        NetworkXml.write(network2, snapshotFile);
+        config.setFilterDifferent(true);
+        NetworkDiff networkDiff = new NetworkDiff(config);
+        DiffEquipment diffEquipment = new DiffEquipment();
+        SnapshotWatcher watcher = new SnapshotWatcher(networkDiff, networkDiff.snapshot(network1, diffEquipment),
+            file -> networkDiff.snapshot(NetworkXml.read(file), diffEquipment), outputDir, 1);
+
+        // a file dropped before the watch starts is found by the initial scan
+        Files.copy(snapshotFile, watchedDir.resolve("snapshot0.xiidm"));
+        Files.copy(snapshotFile, watchedDir.resolve(".snapshot-being-written"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> watch = CompletableFuture.runAsync(() -> watcher.watch(watchedDir, 2), executor);
+            while (watcher.getDiffCount() < 1 && !watch.isDone()) {
+                Thread.sleep(10);
+            }
+            Path tmpFile = watchedDir.resolve(".snapshot1");
+            Files.copy(snapshotFile, tmpFile);
+            Files.move(tmpFile, watchedDir.resolve("snapshot1.xiidm"));
+            watch.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, watcher.getDiffCount());
+        String expected = NetworkDiff.writeJson(networkDiff.diff(network1, network2));
+        try (Stream<Path> outputs = Files.list(outputDir)) {
+            List<Path> outputFiles = outputs.sorted().collect(Collectors.toList());
+            assertEquals(List.of(outputDir.resolve("snapshot0.xiidm.json"), outputDir.resolve("snapshot1.xiidm.json")), outputFiles);
+            for (Path output : outputFiles) {
+                assertEquals(expected, Files.readString(output));
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialDiff() {
+        config.setFilterDifferent(true);
+        NetworkDiff networkDiff = new NetworkDiff(config);
+        List<String> loaded = new ArrayList<>();
+        List<WeakReference<Network>> loadedNetwork1 = new ArrayList<>();
+        Supplier<Network> loader1 = () -> {
+            loaded.add("network1");
+            Network network = NetworkDiffTestUtils.createNetwork1();
+            loadedNetwork1.add(new WeakReference<>(network));
+            return network;
+        };
+        Supplier<Network> loader2 = () -> {
+            loaded.add("network2");
+            // the first network is no longer referenced when the second one is loaded
+            for (int i = 0; i < 10 && loadedNetwork1.get(0).get() != null; i++) {
+                System.gc();
+            }
+            assertNull(loadedNetwork1.get(0).get());
+            return NetworkDiffTestUtils.createNetwork2();
+        };
+        NetworkDiffResults ndifr = networkDiff.diffSequentially(loader1, loader2, new DiffEquipment());
+        assertEquals(List.of("network1", "network2"), loaded);
+        assertEquals(NetworkDiff.writeJson(networkDiff.diff(network1, network2)), NetworkDiff.writeJson(ndifr));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSequentialDiffBalanceFilter() {
+        config.setBalanceFilter(true);
+        new NetworkDiff(config).diffSequentially(NetworkDiffTestUtils::createNetwork1, NetworkDiffTestUtils::createNetwork2, new DiffEquipment());
+    }
+
+    @Test
+    public void testApproximateDiff() {
+        config.setFilterDifferent(true);
+        NetworkDiff networkDiff = new NetworkDiff(config);
+        NetworkDiffResults ndifr = networkDiff.diff(network1, network2);
+        int commonBranchCount = (int) network1.getBranchStream().filter(branch -> network2.getBranch(branch.getId()) != null).count();
+
+        // a full sample gives the exact fractions, without uncertainty
+        ApproximateDiffResults full = networkDiff.approximateDiff(network1, network2, new DiffEquipment(), 1, true, 0);
+        assertEquals(commonBranchCount, full.getBranches().getPopulationSize());
+        assertEquals(commonBranchCount, full.getBranches().getSampleSize());
+        assertEquals(ndifr.branchDiffs.size(), full.getBranches().getDifferentCount());
+        assertEquals((double) ndifr.branchDiffs.size() / commonBranchCount, full.getBranches().getDifferentFraction(), 1e-12);
+        assertEquals(full.getBranches().getDifferentFraction(), full.getBranches().getDifferentFractionLowerBound(), 1e-12);
+        assertEquals(full.getBranches().getDifferentFraction(), full.getBranches().getDifferentFractionUpperBound(), 1e-12);
+        assertEquals(ndifr.vlDiffs.size(), full.getVoltageLevels().getDifferentCount());
+        assertTrue(full.getBranches().getMaxDeltas().get(ThresholdRule.Quantity.I) > 0);
+
+        // every nominal voltage has at least one sampled equipment
+        ApproximateDiffResults sampled = networkDiff.approximateDiff(network1, network2, new DiffEquipment(), 0.1, true, 0);
+        long voltageCount = network1.getVoltageLevelStream().mapToDouble(VoltageLevel::getNominalV).distinct().count();
+        assertEquals(voltageCount, sampled.getVoltageLevels().getSampleSize());
+        ApproximateDiffResults.Estimate branches = networkDiff.approximateDiff(network1, network2, new DiffEquipment(), 0.5, false, 0).getBranches();
+        assertEquals((int) Math.ceil(0.5 * commonBranchCount), branches.getSampleSize());
+        assertTrue(branches.getDifferentFractionLowerBound() <= branches.getDifferentFraction());
+        assertTrue(branches.getDifferentFraction() <= branches.getDifferentFractionUpperBound());
+    }
+
+    @Test
+    public void testApproximateDiffWilsonInterval() {
+        // no or all sampled equipments differing still leaves an interval of non zero width
+        ApproximateDiffResults.Estimate noneDifferent = new ApproximateDiffResults.Estimate(new int[] {100}, new int[] {10}, new int[] {0}, new EnumMap<>(ThresholdRule.Quantity.class));
+        assertEquals(0, noneDifferent.getDifferentFraction(), 0);
+        assertEquals(0, noneDifferent.getDifferentFractionLowerBound(), 0);
+        assertTrue(noneDifferent.getDifferentFractionUpperBound() > 0.2);
+        ApproximateDiffResults.Estimate allDifferent = new ApproximateDiffResults.Estimate(new int[] {100}, new int[] {10}, new int[] {10}, new EnumMap<>(ThresholdRule.Quantity.class));
+        assertEquals(1, allDifferent.getDifferentFractionUpperBound(), 1e-12);
+        assertTrue(allDifferent.getDifferentFractionLowerBound() < 0.8);
+
+        // a fully sampled stratum adds no uncertainty, an unsampled one may be anything
+        ApproximateDiffResults.Estimate strata = new ApproximateDiffResults.Estimate(new int[] {10, 30}, new int[] {10, 0}, new int[] {5, 0}, new EnumMap<>(ThresholdRule.Quantity.class));
+        assertEquals(0.125, strata.getDifferentFractionLowerBound(), 1e-12);
+        assertEquals(0.875, strata.getDifferentFractionUpperBound(), 1e-12);
+    }
+
     @Test
     public void testDifferencesToString() {
         NetworkDiff ndiff = new NetworkDiff(config);
@@ -183,6 +518,34 @@ public class NetworkDiffTest {
         checkValues(config, genericThreshold, voltageThreshold, true);
     }
 
+    @Test
+    public void testThresholdRules() {
+        MapModuleConfig moduleConfig = platformConfig.createModuleConfig("networks-diff");
+        moduleConfig.setStringProperty("voltage-threshold", "0.1");
+        moduleConfig.setStringListProperty("threshold-rules", List.of("VOLTAGE_LEVELS V 300 500 50 0", "BRANCHES * * * 0 0.05", "* I 300 * 30 0"));
+        DiffConfig rulesConfig = DiffConfig.load(platformConfig);
+        assertEquals(3, rulesConfig.getThresholdRules().size());
+        assertEquals("* I 300.0 * 30.0 0.0", rulesConfig.getThresholdRules().get(2).toString());
+
+        ThresholdTable thresholds = ThresholdTable.compile(rulesConfig);
+        assertEquals(0.1, thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, 225), ThresholdRule.Quantity.V), 0);
+        assertEquals(50, thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, 300), ThresholdRule.Quantity.V), 0);
+        assertEquals(0.1, thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.VOLTAGE_LEVELS, 500), ThresholdRule.Quantity.V), 0);
+        assertEquals(0, thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.BRANCHES, 225), ThresholdRule.Quantity.I), 0);
+        assertEquals(30, thresholds.getAbsoluteThreshold(thresholds.getOffset(DiffEquipmentType.BRANCHES, 380), ThresholdRule.Quantity.I), 0);
+        int offset = thresholds.getOffset(DiffEquipmentType.BRANCHES, 225);
+        assertTrue(thresholds.areEqual(100, 104, offset, ThresholdRule.Quantity.P));
+        assertFalse(thresholds.areEqual(100, 106, offset, ThresholdRule.Quantity.P));
+        assertTrue(thresholds.areEqual(Double.NaN, Double.NaN, offset, ThresholdRule.Quantity.P));
+        assertFalse(thresholds.areEqual(Double.POSITIVE_INFINITY, 100, offset, ThresholdRule.Quantity.P));
+
+        Network modified = NetworkDiffTestUtils.createNetwork1();
+        modified.getBusView().getBus("VLHV2_0").setV(380);
+        modified.getLine("NHV1_NHV2_1").getTerminal1().setP(310);
+        assertTrue(new NetworkDiff(config).diff(network1, modified).isDifferent());
+        assertFalse(new NetworkDiff(rulesConfig).diff(network1, modified).isDifferent());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testErrorsInConfig() {
         double genericThreshold = -1;
@@ -201,4 +564,623 @@ public class NetworkDiffTest {
         assertNotNull(NetworkDiff.writeJson(ndifr));
     }
 
+    @Test
+    public void testDiffAsync() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NetworkDiff ndiff = new NetworkDiff(config);
+            NetworkDiffResults ndifr = ndiff.diffAsync(network1, network2, executor).get(10, TimeUnit.SECONDS);
+            assertTrue(ndifr.isDifferent());
+            assertEquals(NetworkDiff.writeJson(ndiff.diff(network1, network2)), NetworkDiff.writeJson(ndifr));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDiffPublisher() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NetworkDiff ndiff = new NetworkDiff(config);
+            NetworkDiffResults ndifr = ndiff.diff(network1, network2);
+            List<DiffResult> received = new ArrayList<>();
+            CompletableFuture<List<DiffResult>> completed = new CompletableFuture<>();
+            ndiff.diffPublisher(network1, network2, executor).subscribe(new Flow.Subscriber<DiffResult>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(DiffResult item) {
+                    received.add(item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(received);
+                }
+            });
+            List<DiffResult> results = completed.get(10, TimeUnit.SECONDS);
+            assertEquals(ndifr.vlDiffs.size() + ndifr.branchDiffs.size(), results.size());
+            assertTrue(results.stream().allMatch(DiffResult::isDifferent));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPrefetchWithLatency() {
+        // the networks are read concurrently by the prefetch threads, with a latency on each call
+        Network remote1 = NetworkDiffTestUtils.withLatency(network1, 200);
+        Network remote2 = NetworkDiffTestUtils.withLatency(network2, 200);
+        String expected = NetworkDiff.writeJson(new NetworkDiff(config).diff(network1, network2));
+
+        long start = System.nanoTime();
+        assertEquals(expected, NetworkDiff.writeJson(new NetworkDiff(config).diff(remote1, remote2)));
+        long sequentialTime = System.nanoTime() - start;
+
+        config.setPrefetchThreads(8);
+        start = System.nanoTime();
+        assertEquals(expected, NetworkDiff.writeJson(new NetworkDiff(config).diff(remote1, remote2)));
+        long prefetchTime = System.nanoTime() - start;
+
+        // timings are only logged, they are not reliable enough on shared build machines to be asserted
+        LOGGER.info("Diff with 200 us latency per call: sequential {} ms, prefetch {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(sequentialTime), TimeUnit.NANOSECONDS.toMillis(prefetchTime));
+    }
+
+    @Test
+    public void testNetworkIndex() {
+        NetworkIndex index = new NetworkIndex();
+        assertNull(index.get("VLHV2"));
+        NetworkIndex.VoltageLevelData vlData = index.get(network1.getVoltageLevel("VLHV2"));
+        assertSame(vlData, index.get(network1.getVoltageLevel("VLHV2")));
+        assertEquals(1, vlData.getBusCount());
+        assertEquals(380.0, vlData.getNominalV(), 0.0);
+        assertSame(vlData, index.get("VLHV2"));
+        assertEquals("VLHV2_0", vlData.getBusId(0));
+        assertEquals(389.95, vlData.getBusV(0), 0.0);
+        assertEquals(0, vlData.getBusbarSectionCount());
+
+        NetworkIndex.VoltageLevelData nodeBreakerVlData = new NetworkIndex().get(network3.getVoltageLevel("voltageLevel1"));
+        assertEquals(2, nodeBreakerVlData.getBusbarSectionCount());
+        for (int i = 0; i < nodeBreakerVlData.getBusbarSectionCount(); i++) {
+            String busId = network3.getBusbarSection(nodeBreakerVlData.getBusbarSectionId(i)).getTerminal().getBusView().getBus().getId();
+            assertEquals(busId, nodeBreakerVlData.getBusId(nodeBreakerVlData.getBusbarSectionBus(i)));
+        }
+    }
+
+    @Test
+    public void testFingerprintFilter() {
+        Network[][] networkPairs = {{network1, network1}, {network1, network2}, {network3, network4}, {network5, network6}, {network7, network8}};
+        for (double threshold : new double[] {0.0, 0.1, 50.0}) {
+            DiffConfig exactConfig = new DiffConfig(threshold, threshold, true);
+            DiffConfig fingerprintConfig = new DiffConfig(threshold, threshold, true);
+            fingerprintConfig.setFingerprintFilter(true);
+            for (Network[] networks : networkPairs) {
+                assertEquals(NetworkDiff.writeJson(new NetworkDiff(exactConfig).diff(networks[0], networks[1])),
+                             NetworkDiff.writeJson(new NetworkDiff(fingerprintConfig).diff(networks[0], networks[1])));
+            }
+        }
+    }
+
+    @Test
+    public void testFingerprintFilterSkipsUnchanged() {
+        DiffConfig fingerprintConfig = new DiffConfig(0.1, 0.1, true);
+        fingerprintConfig.setFingerprintFilter(true);
+        NetworkDiff ndiff = new NetworkDiff(fingerprintConfig);
+        Network modifiedNetwork = NetworkDiffTestUtils.createNetwork1();
+        modifiedNetwork.getLine("NHV1_NHV2_1").getTerminal1().setP(400);
+        DiffSnapshot snapshot1 = ndiff.snapshot(network1, new DiffEquipment());
+        DiffSnapshot snapshot2 = ndiff.snapshot(modifiedNetwork, new DiffEquipment());
+        ThresholdTable thresholds = ThresholdTable.compile(fingerprintConfig);
+
+        // only the modified line is compared, out of the 4 branches
+        assertEquals(4, snapshot1.getBranches().size());
+        assertEquals(Set.of("NHV1_NHV2_1"), snapshot1.getBranchFingerprints(thresholds).getChangedIds(snapshot2.getBranchFingerprints(thresholds)));
+        assertTrue(snapshot1.getVoltageLevelFingerprints(thresholds).getChangedIds(snapshot2.getVoltageLevelFingerprints(thresholds)).isEmpty());
+        // the trees of a snapshot are computed once for the same thresholds
+        assertSame(snapshot1.getBranchFingerprints(thresholds), snapshot1.getBranchFingerprints(thresholds));
+        assertNotSame(snapshot1.getBranchFingerprints(thresholds), snapshot1.getBranchFingerprints(ThresholdTable.compile(fingerprintConfig)));
+
+        NetworkDiffResults ndifr = ndiff.diff(snapshot1, snapshot2);
+        assertEquals(List.of("NHV1_NHV2_1"), ndifr.branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()));
+        assertEquals(NetworkDiff.writeJson(new NetworkDiff(new DiffConfig(0.1, 0.1, true)).diff(snapshot1, snapshot2)), NetworkDiff.writeJson(ndifr));
+    }
+
+    @Test
+    public void testFingerprintTree() {
+        FingerprintTree tree1 = new FingerprintTree();
+        FingerprintTree tree2 = new FingerprintTree();
+        tree1.add("FR", "S1", "VL1", 1L);
+        tree1.add("FR", "S2", "VL2", 2L);
+        tree1.add("BE", "S3", "VL3", 3L);
+        tree2.add("BE", "S3", "VL3", 3L);
+        tree2.add("FR", "S2", "VL2", 2L);
+        tree2.add("FR", "S1", "VL1", 1L);
+        assertTrue(tree1.getChangedIds(tree2).isEmpty());
+
+        tree2.add("FR", "S2", "VL2", 4L);
+        tree2.add("BE", "S4", "VL4", 5L);
+        assertEquals(Set.of("VL2", "VL4"), tree1.getChangedIds(tree2));
+    }
+
+    @Test
+    public void testAddedAndRemovedEquipments() {
+        NetworkDiff ndiff = new NetworkDiff(config);
+        assertFalse(ndiff.diff(network1, network1).hasAddedOrRemovedEquipments());
+
+        NetworkDiffResults ndifr = ndiff.diff(network1, network2);
+        assertTrue(ndifr.hasAddedOrRemovedEquipments());
+        assertEquals(1, ndifr.getRemovedBranches().size());
+        assertTrue(ndifr.getAddedBranches().isEmpty());
+        assertTrue(ndifr.getAddedVoltageLevels().isEmpty());
+        assertTrue(ndifr.getRemovedVoltageLevels().isEmpty());
+        String removedBranchId = ndifr.getRemovedBranches().get(0);
+        assertTrue(NetworkDiff.writeJson(ndifr).contains("\"diff.RemovedBranches\" : [ \"" + removedBranchId + "\" ]"));
+
+        NetworkDiffResults reverse = ndiff.diff(network2, network1);
+        assertEquals(Collections.singletonList(removedBranchId), reverse.getAddedBranches());
+        assertTrue(reverse.getRemovedBranches().isEmpty());
+
+        DiffEquipment diffEquipment = new DiffEquipment();
+        diffEquipment.setBranches(List.of("NGEN_NHV1", removedBranchId, removedBranchId, "UNKNOWN"));
+        NetworkDiffResults scoped = ndiff.diff(network1, network2, diffEquipment);
+        assertEquals(Collections.singletonList(removedBranchId), scoped.getRemovedBranches());
+        assertTrue(scoped.getAddedBranches().isEmpty());
+    }
+
+    @Test
+    public void testThreeWayDiff() throws IOException {
+        Network networkB = NetworkDiffTestUtils.createNetwork1();
+        networkB.getBusView().getBus("VLHV2_0").setV(360);
+        networkB.getBusView().getBus("VLLOAD_0").setV(140);
+        String removedBranchId = network1.getBranches().iterator().next().getId();
+
+        config.setFilterDifferent(false);
+        ThreeWayNetworkDiff threeWayDiff = new ThreeWayNetworkDiff(config);
+        Map<String, ThreeWayNetworkDiff.Status> statuses = threeWayDiff.diff(network1, network2, networkB, new DiffEquipment())
+                .collect(Collectors.toMap(ThreeWayNetworkDiff.ThreeWayDiffResult::getId, ThreeWayNetworkDiff.ThreeWayDiffResult::getStatus));
+        assertEquals(network1.getVoltageLevelCount() + network1.getBranchCount(), statuses.size());
+        assertEquals(ThreeWayNetworkDiff.Status.UNCHANGED, statuses.get("VLGEN"));
+        assertEquals(ThreeWayNetworkDiff.Status.CONFLICT, statuses.get("VLHV2"));
+        assertEquals(ThreeWayNetworkDiff.Status.CHANGED_IN_B, statuses.get("VLLOAD"));
+        assertEquals(ThreeWayNetworkDiff.Status.UNCHANGED, statuses.get("NGEN_NHV1"));
+        // removed in A, bus voltage changed in B
+        assertEquals(ThreeWayNetworkDiff.Status.CONFLICT, statuses.get(removedBranchId));
+
+        Map<String, ThreeWayNetworkDiff.Status> sameChanges = threeWayDiff.diff(network1, network2, network2, new DiffEquipment())
+                .filter(result -> result.getStatus() != ThreeWayNetworkDiff.Status.UNCHANGED)
+                .collect(Collectors.toMap(ThreeWayNetworkDiff.ThreeWayDiffResult::getId, ThreeWayNetworkDiff.ThreeWayDiffResult::getStatus));
+        assertEquals(ThreeWayNetworkDiff.Status.SAME_CHANGE, sameChanges.get("VLHV2"));
+        assertEquals(ThreeWayNetworkDiff.Status.SAME_CHANGE, sameChanges.get(removedBranchId));
+        assertTrue(sameChanges.values().stream().allMatch(ThreeWayNetworkDiff.Status.SAME_CHANGE::equals));
+
+        config.setFilterDifferent(true);
+        NetworkDiff ndiff = new NetworkDiff(config);
+        DiffSnapshot base = ndiff.snapshot(network1, new DiffEquipment());
+        DiffSnapshot snapshotA = ndiff.snapshot(network2, new DiffEquipment());
+        DiffSnapshot snapshotB = ndiff.snapshot(networkB, new DiffEquipment());
+        Path outputFile = tmpDir.resolve("three-way.json");
+        ThreeWayNetworkDiff.writeJson(outputFile, base, snapshotA, snapshotB, new ThreeWayNetworkDiff(config).diff(base, snapshotA, snapshotB));
+        String json = new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"status\" : \"CONFLICT\""));
+        assertFalse(json.contains("\"id\" : \"VLGEN\""));
+    }
+
+    @Test
+    public void testTopologyDiff() {
+        TopologyDiffResults noDiff = TopologyDiffResults.compare(TopologySnapshot.of(network1), TopologySnapshot.of(network1));
+        assertFalse(noDiff.isDifferent());
+        assertEquals(1, noDiff.getSynchronousComponentCount1());
+
+        Network disconnected = NetworkDiffTestUtils.createNetwork1();
+        disconnected.getTwoWindingsTransformer("NGEN_NHV1").getTerminal2().disconnect();
+        TopologyDiffResults componentDiff = TopologyDiffResults.compare(TopologySnapshot.of(network1), TopologySnapshot.of(disconnected));
+        assertTrue(componentDiff.isDifferent());
+        assertEquals(2, componentDiff.getSynchronousComponentCount2());
+        assertEquals(2, componentDiff.getConnectedComponentCount2());
+        assertEquals(1, componentDiff.getSynchronousComponentSplits().size());
+        assertEquals(2, componentDiff.getSynchronousComponentSplits().get(0).getGroups2().size());
+        assertTrue(componentDiff.getSynchronousComponentMerges().isEmpty());
+        assertTrue(componentDiff.getVoltageLevelDiffs().isEmpty());
+
+        TopologyDiffResults busDiff = TopologyDiffResults.compare(TopologySnapshot.of(network3), TopologySnapshot.of(network4));
+        assertEquals(1, busDiff.getVoltageLevelDiffs().size());
+        TopologyDiffResults.VoltageLevelTopologyDiff vlDiff = busDiff.getVoltageLevelDiffs().get(0);
+        assertEquals("voltageLevel1", vlDiff.getVlId());
+        assertEquals(1, vlDiff.getBusCount1());
+        assertEquals(2, vlDiff.getBusCount2());
+        assertEquals(List.of("voltageLevel1#0", "voltageLevel1#1"), vlDiff.getBusSplits().get(0).getGroups2());
+        TopologyDiffResults reverseBusDiff = TopologyDiffResults.compare(TopologySnapshot.of(network4), TopologySnapshot.of(network3));
+        assertEquals(vlDiff.getBusSplits().get(0).getGroups2(), reverseBusDiff.getVoltageLevelDiffs().get(0).getBusMerges().get(0).getGroups1());
+
+        config.setTopologyDiff(true);
+        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, disconnected);
+        assertNotNull(ndifr.getTopologyDiff());
+        assertTrue(NetworkDiff.writeJson(ndifr).contains("\"diff.Topology\""));
+    }
+
+    @Test
+    public void testPowerBalanceDiff() throws IOException {
+        PowerBalance balance = PowerBalance.of(network1);
+        PowerBalance.Entry vlLoad = balance.getVoltageLevels().get("VLLOAD");
+        assertEquals(600, vlLoad.get(PowerBalance.INJECTION_P), 0);
+        assertEquals(-600, vlLoad.get(PowerBalance.FLOW_P), 0);
+        assertEquals(0, vlLoad.getMismatchP(), 0);
+        assertEquals(0, vlLoad.getMismatchQ(), 0);
+        assertEquals(Set.of("VLGEN"), balance.getSynchronousComponents().keySet());
+        assertEquals(380, balance.getSynchronousComponents().get("VLGEN").getNominalV(), 0);
+
+        Network loadChanged = NetworkDiffTestUtils.createNetwork1();
+        loadChanged.getLoad("LOAD").getTerminal().setP(650);
+        loadChanged.getBusView().getBus("VLLOAD_0").setV(140);
+        loadChanged.getBusView().getBus("VLHV1_0").setV(390);
+        config.setFilterDifferent(true);
+        config.setBalanceDiff(true);
+        NetworkDiffResults ndifr = new NetworkDiff(config).diff(network1, loadChanged);
+        PowerBalanceDiffResults balanceDiff = ndifr.getBalanceDiff();
+        assertTrue(balanceDiff.isDifferent());
+        assertEquals(Set.of("VLLOAD"), balanceDiff.getChangedVoltageLevelIds());
+        assertEquals(50, balanceDiff.getVoltageLevelDiffs().get(0).getValue2(PowerBalanceDiffResults.Value.MISMATCH_P), 0);
+        assertEquals(1, balanceDiff.getSynchronousComponentDiffs().size());
+        assertTrue(ndifr.vlDiffs.stream().anyMatch(diff -> diff.getId().equals("VLHV1")));
+        assertTrue(NetworkDiff.writeJson(ndifr).contains("\"diff.Balance\""));
+        Path directory = tmpDir.resolve("shards");
+        NetworkDiff.writeJsonShards(directory, ndifr, 2);
+        ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+        JsonNode manifest = objectMapper.readTree(Files.readAllBytes(directory.resolve("manifest.json")));
+        assertEquals(objectMapper.readTree(NetworkDiff.writeJson(ndifr)).get("diff.Balance"),
+                     objectMapper.readTree(Files.readAllBytes(directory.resolve(manifest.get("balance").asText()))));
+        assertFalse(new NetworkDiff(config).diff(network1, NetworkDiffTestUtils.createNetwork1()).getBalanceDiff().isDifferent());
+
+        config.setBalanceFilter(true);
+        NetworkDiffResults filtered = new NetworkDiff(config).diff(network1, loadChanged);
+        assertEquals(List.of("VLLOAD"), filtered.vlDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()));
+        assertTrue(filtered.branchDiffs.stream().allMatch(diff -> diff.getId().equals("NHV2_NLOAD")));
+    }
+
+    @Test
+    public void testLoadingDiff() throws IOException {
+        Network limitsChanged = NetworkDiffTestUtils.createNetwork1();
+        limitsChanged.getLine("NHV1_NHV2_1").newCurrentLimits1()
+                     .setPermanentLimit(400)
+                     .beginTemporaryLimit().setName("10'").setAcceptableDuration(600).setValue(500).endTemporaryLimit()
+                     .beginTemporaryLimit().setName("1'").setAcceptableDuration(60).setValue(700).endTemporaryLimit()
+                     .add();
+        limitsChanged.getLine("NHV1_NHV2_2").newCurrentLimits1()
+                     .setPermanentLimit(100)
+                     .beginTemporaryLimit().setName("1'").setAcceptableDuration(60).setValue(200).endTemporaryLimit()
+                     .add();
+        BranchLimitTable limits = BranchLimitTable.of(List.of(limitsChanged.getLine("NHV1_NHV2_1"), limitsChanged.getLine("NHV1_NHV2_2")));
+        assertEquals(400, limits.getPermanentLimit("NHV1_NHV2_1", Branch.Side.ONE), 0);
+        assertEquals(600, limits.getPermanentLimit("NHV1_NHV2_1", Branch.Side.TWO), 0);
+        assertEquals(2, limits.getTemporaryLimitCount("NHV1_NHV2_1", Branch.Side.ONE));
+        assertEquals(0, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.ONE, -400));
+        assertEquals(1, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.ONE, 500));
+        assertEquals(2, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.ONE, 700));
+        assertEquals(3, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.ONE, 701));
+        assertEquals(1, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.TWO, 601));
+        assertEquals(BranchLimitTable.NO_BAND, limits.getLoadingBand("NHV1_NHV2_1", Branch.Side.ONE, Double.NaN));
+        assertEquals(600, limits.getAcceptableDuration("NHV1_NHV2_1", Branch.Side.ONE, 1));
+
+        config.setLoadingDiff(true);
+        NetworkDiff ndiff = new NetworkDiff(config);
+        assertFalse(ndiff.diff(network1, NetworkDiffTestUtils.createNetwork1()).getLoadingDiff().isDifferent());
+        NetworkDiffResults ndifr = ndiff.diff(network1, limitsChanged);
+        List<LoadingDiffResults.LoadingChange> changes = ndifr.getLoadingDiff().getChanges();
+        assertEquals(2, changes.size());
+        assertEquals("NHV1_NHV2_1", changes.get(0).getBranchId());
+        assertEquals(Branch.Side.ONE, changes.get(0).getSide());
+        assertEquals(LoadingDiffResults.LoadingClass.BELOW_PERMANENT_LIMIT, changes.get(0).getClass1());
+        assertEquals(LoadingDiffResults.LoadingClass.TEMPORARY_LIMIT_BAND, changes.get(0).getClass2());
+        assertEquals(600, changes.get(0).getAcceptableDuration2());
+        assertEquals(LoadingDiffResults.LoadingClass.ABOVE_ALL_LIMITS, changes.get(1).getClass2());
+        assertTrue(NetworkDiff.writeJson(ndifr).contains("\"diff.Loading\""));
+        Path directory = tmpDir.resolve("shards");
+        NetworkDiff.writeJsonShards(directory, ndifr, 2);
+        ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+        JsonNode manifest = objectMapper.readTree(Files.readAllBytes(directory.resolve("manifest.json")));
+        assertEquals(objectMapper.readTree(NetworkDiff.writeJson(ndifr)).get("diff.Loading"),
+                     objectMapper.readTree(Files.readAllBytes(directory.resolve(manifest.get("loading").asText()))));
+    }
+
+    @Test
+    public void testIdMapping() throws IOException {
+        Path file = tmpDir.resolve("renamed.xiidm");
+        NetworkXml.write(network4, file);
+        Files.writeString(file, Files.readString(file)
+                                     .replace("\"voltageLevel1\"", "\"VL1\"")
+                                     .replace("\"voltageLevel1Breaker1\"", "\"VL1_BREAKER1\"")
+                                     .replace("\"voltageLevel1BusbarSection1\"", "\"VL1_BBS1\""));
+        Network renamed = NetworkXml.read(file);
+        Path mappingFile = tmpDir.resolve("mapping.csv");
+        Files.writeString(mappingFile, "# id1,id2\nvoltageLevel1,VL1\nvoltageLevel1Breaker1, VL1_BREAKER1\n\nvoltageLevel1BusbarSection1,VL1_BBS1\n");
+        IdMapping mapping = IdMapping.read(mappingFile);
+        assertEquals(3, mapping.size());
+        assertEquals("voltageLevel1Breaker1", mapping.toId1("VL1_BREAKER1"));
+        assertEquals("VL1", mapping.toId2("voltageLevel1"));
+        assertEquals("load1", mapping.toId1("load1"));
+
+        config.setFilterDifferent(true);
+        assertTrue(new NetworkDiff(config).diff(network3, renamed).getAddedVoltageLevels().contains("VL1"));
+        NetworkDiffResults mapped = new NetworkDiff(config, mapping).diff(network3, renamed);
+        assertFalse(mapped.hasAddedOrRemovedEquipments());
+        assertEquals(NetworkDiff.writeJson(new NetworkDiff(config).diff(network3, network4)), NetworkDiff.writeJson(mapped));
+
+        DiffEquipment diffEquipment = new DiffEquipment();
+        diffEquipment.setVoltageLevels(List.of("voltageLevel1"));
+        assertEquals(List.of("voltageLevel1"), new NetworkDiff(config, mapping).diff(network3, renamed, diffEquipment).vlDiffs.stream()
+                                                                                 .map(DiffResult::getId).collect(Collectors.toList()));
+
+        // the filters and the topology apply to the ids of the first network
+        diffEquipment = new DiffEquipment();
+        diffEquipment.setIdRegex("voltageLevel1");
+        NetworkDiffResults filtered = new NetworkDiff(config, mapping).diff(network3, renamed, diffEquipment);
+        assertFalse(filtered.hasAddedOrRemovedEquipments());
+        assertEquals(List.of("voltageLevel1"), filtered.vlDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()));
+        config.setTopologyDiff(true);
+        assertEquals(NetworkDiff.writeJson(new NetworkDiff(config).diff(network3, network4)),
+                     NetworkDiff.writeJson(new NetworkDiff(config, mapping).diff(network3, renamed)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdMappingDuplicate() throws IOException {
+        Path mappingFile = tmpDir.resolve("mapping.csv");
+        Files.writeString(mappingFile, "voltageLevel1,VL1\nvoltageLevel1,VL2\n");
+        IdMapping.read(mappingFile);
+    }
+
+    @Test
+    public void testStructuralMatching() throws IOException {
+        Path file = tmpDir.resolve("parallel.xiidm");
+        NetworkXml.write(network1, file);
+        Network original = NetworkXml.read(file);
+        original.getLine("NHV1_NHV2_2").setR(5.0);
+        NetworkXml.write(original, file);
+        Files.writeString(file, Files.readString(file)
+                                     .replace("\"NHV1_NHV2_1\"", "\"RENAMED_B\"")
+                                     .replace("\"NHV1_NHV2_2\"", "\"RENAMED_A\""));
+        Network renamed = NetworkXml.read(file);
+
+        config.setFilterDifferent(true);
+        NetworkDiffResults unmatched = new NetworkDiff(config).diff(original, renamed);
+        assertEquals(List.of("RENAMED_A", "RENAMED_B"), unmatched.getAddedBranches());
+        assertEquals(List.of("NHV1_NHV2_1", "NHV1_NHV2_2"), unmatched.getRemovedBranches());
+        assertTrue(unmatched.getMatchedBranches().isEmpty());
+
+        config.setStructuralMatching(true);
+        NetworkDiffResults matched = new NetworkDiff(config).diff(original, renamed);
+        assertFalse(matched.hasAddedOrRemovedEquipments());
+        assertFalse(matched.isDifferent());
+        assertEquals(Map.of("NHV1_NHV2_1", "RENAMED_B", "NHV1_NHV2_2", "RENAMED_A"), matched.getMatchedBranches());
+        assertTrue(NetworkDiff.writeJson(matched).contains("\"diff.MatchedBranches\""));
+        Path directory = tmpDir.resolve("shards");
+        NetworkDiff.writeJsonShards(directory, matched, 2);
+        ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+        assertEquals(objectMapper.readTree(NetworkDiff.writeJson(matched)).get("diff.MatchedBranches"),
+                     objectMapper.readTree(Files.readAllBytes(directory.resolve("manifest.json"))).get("diff.MatchedBranches"));
+
+        renamed.getLine("RENAMED_B").getTerminal1().setP(400.0);
+        List<DiffResult> branchDiffs = new NetworkDiff(config).diff(original, renamed).branchDiffs;
+        assertEquals(List.of("NHV1_NHV2_1"), branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testChangeSet() {
+        assertNull(new NetworkDiff(config).diff(network3, network4).getChangeSet());
+
+        config.setChangeSet(true);
+        NetworkDiff ndiff = new NetworkDiff(config);
+        ChangeSet changeSet4 = ndiff.diff(network3, network4).getChangeSet();
+        assertEquals(List.of("voltageLevel1"), changeSet4.getChangedIds(ChangeSet.EquipmentType.VOLTAGE_LEVEL));
+        assertEquals(List.of("voltageLevel1Breaker1"), changeSet4.getChangedIds(ChangeSet.EquipmentType.SWITCH));
+        assertEquals(network3.getSwitchCount(), changeSet4.getIds(ChangeSet.EquipmentType.SWITCH).size());
+        assertTrue(changeSet4.isChanged(ChangeSet.EquipmentType.SWITCH, "voltageLevel1Breaker1"));
+        assertFalse(changeSet4.isChanged(ChangeSet.EquipmentType.SWITCH, "load1Disconnector1"));
+        assertFalse(changeSet4.isChanged(ChangeSet.EquipmentType.SWITCH, "unknown"));
+
+        ChangeSet changeSet6 = ndiff.diff(network3, network6).getChangeSet();
+        assertEquals(List.of("load1Disconnector1", "voltageLevel1Breaker1"), changeSet4.union(changeSet6).getChangedIds(ChangeSet.EquipmentType.SWITCH));
+        assertEquals(List.of("voltageLevel1Breaker1"), changeSet4.intersection(changeSet6).getChangedIds(ChangeSet.EquipmentType.SWITCH));
+
+        NetworkDiffResults ndifr2 = ndiff.diff(network1, network2);
+        ChangeSet changeSet2 = ndifr2.getChangeSet();
+        assertEquals(Stream.concat(ndifr2.getRemovedBranches().stream(), ndifr2.branchDiffs.stream().filter(DiffResult::isDifferent).map(DiffResult::getId))
+                           .sorted().collect(Collectors.toList()),
+                     changeSet2.getChangedIds(ChangeSet.EquipmentType.BRANCH));
+        ChangeSet union = changeSet4.union(changeSet2);
+        assertEquals(changeSet4.getIds(ChangeSet.EquipmentType.VOLTAGE_LEVEL).size() + changeSet2.getIds(ChangeSet.EquipmentType.VOLTAGE_LEVEL).size(),
+                     union.getIds(ChangeSet.EquipmentType.VOLTAGE_LEVEL).size());
+        assertEquals(changeSet4.getChangedCount(ChangeSet.EquipmentType.VOLTAGE_LEVEL) + changeSet2.getChangedCount(ChangeSet.EquipmentType.VOLTAGE_LEVEL),
+                     union.getChangedCount(ChangeSet.EquipmentType.VOLTAGE_LEVEL));
+        assertEquals(0, changeSet4.intersection(changeSet2).getChangedCount(ChangeSet.EquipmentType.VOLTAGE_LEVEL));
+
+        for (String fileName : List.of("changes.bin", "changes.bin.gz")) {
+            Path file = tmpDir.resolve(fileName);
+            union.write(file);
+            ChangeSet read = ChangeSet.read(file);
+            for (ChangeSet.EquipmentType type : ChangeSet.EquipmentType.values()) {
+                assertEquals(union.getIds(type), read.getIds(type));
+                assertEquals(union.getChangedIds(type), read.getChangedIds(type));
+            }
+        }
+    }
+
+    @Test(expected = PowsyblException.class)
+    public void testChangeSetInvalidFile() throws IOException {
+        Path file = tmpDir.resolve("changes.bin");
+        Files.writeString(file, "not a change set");
+        ChangeSet.read(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testXiidmSnapshotReaderTopologyDiff() {
+        Path file = tmpDir.resolve("network1.xiidm");
+        NetworkXml.write(network1, file);
+        config.setTopologyDiff(true);
+        DiffSnapshot snapshot = XiidmSnapshotReader.read(file, new DiffEquipment());
+        new NetworkDiff(config).diff(snapshot, snapshot);
+    }
+
+    @Test
+    public void testXiidmSnapshotReader() {
+        config.setFilterDifferent(true);
+        config.setGenericThreshold(0.0);
+        config.setVoltageThreshold(0.0);
+        NetworkDiff ndiff = new NetworkDiff(config);
+        DiffEquipment diffEquipment = new DiffEquipment();
+        List<Network> networks = List.of(network1, network2, network3, network4, network6, network7, network8);
+        for (int i = 0; i < networks.size(); i++) {
+            Path file = tmpDir.resolve("network" + i + ".xiidm");
+            NetworkXml.write(networks.get(i), file);
+            Network network = NetworkXml.read(file);
+            DiffSnapshot snapshot = XiidmSnapshotReader.read(file, diffEquipment);
+            assertEquals(network.getId(), snapshot.getNetworkId());
+            assertEquals(network.getVoltageLevelCount(), snapshot.getVoltageLevels().size());
+            assertEquals(network.getBranchCount(), snapshot.getBranches().size());
+            NetworkDiffResults ndifr = ndiff.diff(ndiff.snapshot(network, diffEquipment), snapshot);
+            assertFalse(NetworkDiff.writeJson(ndifr), ndifr.isDifferent());
+            assertFalse(ndifr.hasAddedOrRemovedEquipments());
+        }
+
+        Path file1 = tmpDir.resolve("network0.xiidm");
+        Path file2 = tmpDir.resolve("network1.xiidm");
+        assertEquals(NetworkDiff.writeJson(ndiff.diff(NetworkXml.read(file1), NetworkXml.read(file2))),
+                     NetworkDiff.writeJson(ndiff.diff(XiidmSnapshotReader.read(file1, diffEquipment), XiidmSnapshotReader.read(file2, diffEquipment))));
+
+        diffEquipment.setEquipmentTypes(Collections.singletonList(DiffEquipmentType.BRANCHES));
+        diffEquipment.setBranches(List.of("NGEN_NHV1"));
+        DiffSnapshot snapshot = XiidmSnapshotReader.read(file1, diffEquipment);
+        assertTrue(snapshot.getVoltageLevels().isEmpty());
+        assertEquals(Set.of("NGEN_NHV1"), snapshot.getBranches().keySet());
+        assertEquals(18000, snapshot.getBranches().get("NGEN_NHV1").getTerminalData(Branch.Side.ONE).getCurrentLimit(), 0.0);
+    }
+
+    @Test
+    public void testPartialImport() {
+        Path file1 = tmpDir.resolve("network1.xiidm");
+        Path file2 = tmpDir.resolve("network2.xiidm");
+        NetworkXml.write(network1, file1);
+        NetworkXml.write(network2, file2);
+        config.setFilterDifferent(true);
+        NetworkDiff ndiff = new NetworkDiff(config);
+
+        DiffEquipment diffEquipment = new DiffEquipment();
+        diffEquipment.setVoltageLevels(List.of("VLHV2"));
+        diffEquipment.setBranches(List.of("NGEN_NHV1"));
+        Network partial1 = XiidmPartialImporter.load(file1, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        Network partial2 = XiidmPartialImporter.load(file2, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        // VLHV2 is expanded to VLHV1 through the lines, NGEN_NHV1 to VLGEN and VLHV1, VLLOAD is in the same substation as VLHV2
+        assertEquals(Set.of("P1", "P2"), partial1.getSubstationStream().map(Substation::getId).collect(Collectors.toSet()));
+        assertEquals(network1.getBranchCount(), partial1.getBranchCount());
+        assertEquals(NetworkDiff.writeJson(ndiff.diff(network1, network2, diffEquipment)),
+                     NetworkDiff.writeJson(ndiff.diff(partial1, partial2, diffEquipment)));
+
+        diffEquipment.setEquipmentTypes(Collections.singletonList(DiffEquipmentType.VOLTAGE_LEVELS));
+        diffEquipment.setVoltageLevels(List.of("VLGEN"));
+        diffEquipment.setBranches(null);
+        Network partial = XiidmPartialImporter.load(file1, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        assertEquals(Set.of("VLGEN", "VLHV1"), partial.getVoltageLevelStream().map(VoltageLevel::getId).collect(Collectors.toSet()));
+        assertEquals(Collections.singletonList("NGEN_NHV1"), partial.getBranchStream().map(Branch::getId).collect(Collectors.toList()));
+        assertEquals(NetworkDiff.writeJson(ndiff.diff(network1, network2, diffEquipment)),
+                     NetworkDiff.writeJson(ndiff.diff(partial, XiidmPartialImporter.load(file2, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig()), diffEquipment)));
+
+        // a transformer alone keeps its substation
+        diffEquipment.setEquipmentTypes(Collections.singletonList(DiffEquipmentType.BRANCHES));
+        diffEquipment.setVoltageLevels(null);
+        diffEquipment.setBranches(List.of("NHV2_NLOAD"));
+        Network transformerPartial1 = XiidmPartialImporter.load(file1, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        Network transformerPartial2 = XiidmPartialImporter.load(file2, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig());
+        assertEquals(Set.of("P2"), transformerPartial1.getSubstationStream().map(Substation::getId).collect(Collectors.toSet()));
+        assertNotNull(transformerPartial1.getTwoWindingsTransformer("NHV2_NLOAD"));
+        NetworkDiffResults transformerDiff = ndiff.diff(transformerPartial1, transformerPartial2, diffEquipment);
+        assertEquals(List.of("NHV2_NLOAD"), transformerDiff.branchDiffs.stream().map(DiffResult::getId).collect(Collectors.toList()));
+        assertEquals(NetworkDiff.writeJson(ndiff.diff(network1, network2, diffEquipment)), NetworkDiff.writeJson(transformerDiff));
+
+        // the topology covers the whole network
+        DiffConfig topologyConfig = new DiffConfig(0.1, 0.1, true);
+        topologyConfig.setTopologyDiff(true);
+        assertEquals(network1.getSubstationCount(), XiidmPartialImporter.load(file1, diffEquipment, topologyConfig, LocalComputationManager.getDefault(), new ImportConfig())
+                                                                      .getSubstationCount());
+        assertEquals(1, XiidmPartialImporter.load(file1, diffEquipment, config, LocalComputationManager.getDefault(), new ImportConfig()).getSubstationCount());
+
+        // branches are not scoped, the whole network is needed
+        diffEquipment.setBranches(null);
+        diffEquipment.setEquipmentTypes(Collections.singletonList(DiffEquipmentType.ALL));
+        assertEquals(network1.getVoltageLevelCount(), XiidmPartialImporter.load(file1, diffEquipment, LocalComputationManager.getDefault(), new ImportConfig()).getVoltageLevelCount());
+    }
+
+    @Test
+    public void testEquipmentFilter() {
+        config.setFilterDifferent(true);
+        NetworkDiff ndiff = new NetworkDiff(config);
+        Path file = tmpDir.resolve("network1.xiidm");
+        NetworkXml.write(network1, file);
+
+        DiffEquipment diffEquipment = new DiffEquipment();
+        diffEquipment.setCountries(List.of(Country.FR));
+        diffEquipment.setMinNominalV(300);
+        DiffSnapshot snapshot = ndiff.snapshot(network1, diffEquipment);
+        assertEquals(Set.of("VLHV1", "VLHV2"), snapshot.getVoltageLevels().keySet());
+        // transformers have one side above 300 kV
+        assertEquals(Set.of("NGEN_NHV1", "NHV1_NHV2_1", "NHV1_NHV2_2", "NHV2_NLOAD"), snapshot.getBranches().keySet());
+        assertFalse(ndiff.diff(snapshot, XiidmSnapshotReader.read(file, diffEquipment)).isDifferent());
+
+        diffEquipment.setSubstations(List.of("P2"));
+        diffEquipment.setIdRegex("NHV1_.*");
+        snapshot = ndiff.snapshot(network1, diffEquipment);
+        assertTrue(snapshot.getVoltageLevels().isEmpty());
+        assertEquals(Set.of("NHV1_NHV2_1", "NHV1_NHV2_2"), snapshot.getBranches().keySet());
+        assertEquals(snapshot.getBranches().keySet(), XiidmSnapshotReader.read(file, diffEquipment).getBranches().keySet());
+
+        diffEquipment.setCountries(List.of(Country.BE));
+        assertTrue(ndiff.snapshot(network1, diffEquipment).getBranches().isEmpty());
+        assertFalse(ndiff.diff(network1, network2, diffEquipment).isDifferent());
+    }
+
+    @Test
+    public void testDistributedDiff() throws IOException {
+        Path file1 = tmpDir.resolve("network1.xiidm");
+        Path file2 = tmpDir.resolve("network2.xiidm");
+        NetworkXml.write(network1, file1);
+        NetworkXml.write(network2, file2);
+        config.setFilterDifferent(true);
+        ObjectMapper objectMapper = JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build();
+        // the branches alone and the id scopes do not pull in the substations of the transformers through their voltage levels
+        DiffEquipment branchesOnly = new DiffEquipment();
+        branchesOnly.setEquipmentTypes(Collections.singletonList(DiffEquipmentType.BRANCHES));
+        DiffEquipment idScoped = new DiffEquipment();
+        idScoped.setVoltageLevels(List.of("VLHV1"));
+        idScoped.setBranches(List.of("NHV2_NLOAD", "NHV1_NHV2_1"));
+
+        DistributedNetworkDiff distributedDiff = new DistributedNetworkDiff(config, LocalComputationManager.getDefault());
+        for (DiffEquipment diffEquipment : List.of(new DiffEquipment(), branchesOnly, idScoped)) {
+            JsonNode expected = objectMapper.readTree(NetworkDiff.writeJson(new NetworkDiff(config).diff(network1, network2, diffEquipment)));
+            for (DistributedNetworkDiff.PartitionKey partitionKey : DistributedNetworkDiff.PartitionKey.values()) {
+                Path outputFile = tmpDir.resolve("diff-" + partitionKey + ".json");
+                distributedDiff.diff(file1, file2, diffEquipment, partitionKey, 2, outputFile);
+                try (InputStream is = Files.newInputStream(outputFile)) {
+                    assertEquals(expected, objectMapper.readTree(is));
+                }
+            }
+        }
+        assertTrue(new NetworkDiff(config).diff(network1, network2, branchesOnly).branchDiffs.stream().anyMatch(result -> result.getId().equals("NHV2_NLOAD")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDistributedDiffUnsupportedConfig() {
+        config.setTopologyDiff(true);
+        new DistributedNetworkDiff(config, LocalComputationManager.getDefault());
+    }
 }
@@ -6,6 +6,12 @@
  */
 package com.powsybl.iidm.diff;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Iterables;
 import com.powsybl.iidm.network.Network;
 import com.powsybl.iidm.network.test.EurostagTutorialExample1Factory;
 import com.powsybl.iidm.network.test.NetworkTest1Factory;
@@ -87,4 +93,42 @@ public final class NetworkDiffTestUtils {
         return network;
     }
 
+    /**
+     * Wraps a network so that every call on it, or on any network object reached from it, is delayed like a round
+     * trip to a remote network store.
+     */
+    public static Network withLatency(Network network, long latencyMicros) {
+        return (Network) withLatency(network, Network.class, latencyMicros);
+    }
+
+    private static Object withLatency(Object object, Class<?> type, long latencyMicros) {
+        if (object == null) {
+            return null;
+        }
+        if (object instanceof Stream) {
+            return ((Stream<?>) object).map(o -> withLatency(o, latencyMicros));
+        }
+        if (type == Iterable.class) {
+            return Iterables.transform((Iterable<?>) object, o -> withLatency(o, latencyMicros));
+        }
+        if (!type.isInterface() || !type.getPackageName().equals(Network.class.getPackageName())) {
+            return object;
+        }
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            try {
+                TimeUnit.MICROSECONDS.sleep(latencyMicros);
+                return withLatency(method.invoke(object, args), method.getReturnType(), latencyMicros);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static Object withLatency(Object object, long latencyMicros) {
+        Class<?> type = Stream.of(object.getClass().getInterfaces())
+                              .filter(i -> i.getPackageName().equals(Network.class.getPackageName()))
+                              .findFirst()
+                              .orElse(Object.class);
+        return withLatency(object, type, latencyMicros);
+    }
 }
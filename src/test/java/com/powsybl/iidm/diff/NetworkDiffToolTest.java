@@ -6,6 +6,9 @@
  */
 package com.powsybl.iidm.diff;
 
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.powsybl.iidm.diff.tools.DiffTool;
 import com.powsybl.iidm.network.Network;
 import com.powsybl.iidm.xml.NetworkXml;
@@ -17,9 +20,21 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Christian Biasuzzi <christian.biasuzzi@techrain.eu>
@@ -48,7 +63,7 @@ public class NetworkDiffToolTest extends AbstractToolTest {
         Command cmd = tool.getCommand();
         assertEquals("Computation", cmd.getTheme());
         assertEquals("Compare two networks", cmd.getDescription());
-        assertCommand(cmd, "compare-network", 6, 3);
+        assertCommand(cmd, "compare-network", 28, 3);
         assertOption(cmd.getOptions(), "input-file1", true, true);
         assertOption(cmd.getOptions(), "input-file2", true, true);
         assertOption(cmd.getOptions(), "output-file", true, true);
@@ -65,6 +80,242 @@ public class NetworkDiffToolTest extends AbstractToolTest {
         assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
     }
 
+    @Test
+    public void testStreamingDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.txt",
+            "--streaming"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        String[] plainCommandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/plain.txt"
+        };
+        assertCommand(plainCommandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertEquals(readJson("/plain.txt"), readJson("/output.txt"));
+    }
+
+    @Test
+    public void testPartialImportDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.txt",
+            "--vl-ids", "VLHV2",
+            "--branch-ids", "NHV2_NLOAD"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        JsonNode branches = readJson("/output.txt").get("diff.Branches");
+        assertEquals(1, branches.size());
+        assertEquals("NHV2_NLOAD", branches.get(0).get("branch.branchId1").asText());
+        assertTrue(branches.get(0).get("branch.isDifferent").asBoolean());
+    }
+
+    private JsonNode readJson(String file) throws IOException {
+        // the diff results contain NaN values for undefined quantities
+        return JsonMapper.builder().enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS).build().readTree(Files.readAllBytes(fileSystem.getPath(file)));
+    }
+
+    @Test
+    public void testFilteredDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.txt",
+            "--countries", "FR",
+            "--min-nominal-v", "300",
+            "--max-nominal-v", "400",
+            "--id-regex", "N?VLHV.*"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        // only the 380 kV voltage levels are in scope, VLHV2 being the changed one, and no branch id matches the regex
+        JsonNode output = readJson("/output.txt");
+        Set<String> vlIds = new HashSet<>();
+        output.get("diff.VoltageLevels").forEach(result -> vlIds.add(result.get("vl.vlId1").asText()));
+        assertEquals(Set.of("VLHV2"), vlIds);
+        assertEquals(0, output.get("diff.Branches").size());
+        assertEquals(0, output.get("diff.RemovedBranches").size());
+    }
+
+    @Test
+    public void testThreeWayDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--base-file", "/network1.xiidm",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.txt",
+            "--streaming"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        // the first network is the base, so every change is on the second one
+        JsonNode results = readJson("/output.txt").get("diff.ThreeWay");
+        assertTrue(results.size() > 0);
+        assertTrue(StreamSupport.stream(results.spliterator(), false).anyMatch(result -> "CHANGED_IN_B".equals(result.get("status").asText())));
+        assertTrue(StreamSupport.stream(results.spliterator(), false).allMatch(result -> "CHANGED_IN_B".equals(result.get("status").asText())
+                || "UNCHANGED".equals(result.get("status").asText())));
+    }
+
+    @Test
+    public void testShardedOutput() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output",
+            "--output-shards", "2"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        String[] plainCommandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/plain.txt"
+        };
+        assertCommand(plainCommandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        JsonNode plain = readJson("/plain.txt");
+        JsonNode manifest = readJson("/output/manifest.json");
+        Map<String, Integer> counts = new HashMap<>();
+        for (JsonNode shard : manifest.get("shards")) {
+            String file = "/output/" + shard.get("file").asText();
+            assertTrue(Files.exists(fileSystem.getPath(file)));
+            String field = shard.get("field").asText();
+            assertEquals(shard.get("count").asInt(), readJson(file).get(field).size());
+            counts.merge(field, shard.get("count").asInt(), Integer::sum);
+        }
+        assertEquals(plain.get("diff.VoltageLevels").size(), counts.getOrDefault("diff.VoltageLevels", 0).intValue());
+        assertEquals(plain.get("diff.Branches").size(), counts.getOrDefault("diff.Branches", 0).intValue());
+        assertFalse(counts.isEmpty());
+    }
+
+    @Test
+    public void testCompressedOutput() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--compress",
+            "--compression-threads", "2"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        try (InputStream is = CompressedStreams.newInputStream(fileSystem.getPath("/output.json"))) {
+            assertTrue(new String(is.readAllBytes(), StandardCharsets.UTF_8).startsWith("{"));
+        }
+    }
+
+    @Test
+    public void testIndexedOutput() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--output-index"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertTrue(Files.exists(fileSystem.getPath("/output.json.idx")));
+    }
+
+    @Test
+    public void testChangeSetOutput() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--output-change-set", "/changes.bin.gz"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertFalse(ChangeSet.read(fileSystem.getPath("/changes.bin.gz")).getChangedIds(ChangeSet.EquipmentType.BRANCH).isEmpty());
+    }
+
+    @Test
+    public void testCachedOutput() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--cache-dir", "/cache"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        String output = Files.readString(fileSystem.getPath("/output.json"));
+        Files.delete(fileSystem.getPath("/output.json"));
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertEquals(output, Files.readString(fileSystem.getPath("/output.json")));
+        try (Stream<Path> entries = Files.list(fileSystem.getPath("/cache"))) {
+            assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    public void testWatch() throws IOException {
+        Files.createDirectory(fileSystem.getPath("/snapshots"));
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output",
+            "--watch", "/snapshots",
+            "--watch-snapshots", "1"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertTrue(Files.exists(fileSystem.getPath("/output/network2.xiidm.json")));
+    }
+
+    @Test
+    public void testLowMemoryDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--low-memory"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertTrue(Files.exists(fileSystem.getPath("/output.json")));
+    }
+
+    @Test
+    public void testIdMappingDiff() throws IOException {
+        Path network2 = fileSystem.getPath("/network2.xiidm");
+        Files.writeString(network2, Files.readString(network2).replace("\"VLHV2\"", "\"VL_HV2\""));
+        Files.writeString(fileSystem.getPath("/mapping.csv"), "VLHV2,VL_HV2\n");
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--vl-ids", "VLHV2",
+            "--id-mapping", "/mapping.csv"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        String output = Files.readString(fileSystem.getPath("/output.json"));
+        assertTrue(output.contains("\"vl.vlId2\" : \"VLHV2\""));
+    }
+
+    @Test
+    public void testApproximateDiff() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--sample-fraction", "0.5",
+            "--stratified"
+        };
+        assertCommand(commandLine, CommandLineTools.COMMAND_OK_STATUS, "", "");
+        assertTrue(Files.readString(fileSystem.getPath("/output.json")).contains("differentFraction-upperBound95"));
+    }
+
     @Test
     public void testDiff1() throws IOException {
         String[] commandLine = new String[]{
@@ -74,4 +325,35 @@ public class NetworkDiffToolTest extends AbstractToolTest {
         };
         assertCommand(commandLine, CommandLineTools.INVALID_COMMAND_STATUS, "", "error: Missing required option: input-file2");
     }
+
+    @Test
+    public void testIncompatibleOptions() throws IOException {
+        String[] commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--partition-by", "COUNTRY",
+            "--compress"
+        };
+        assertCommand(commandLine, CommandLineTools.EXECUTION_ERROR_STATUS, "", "Option --compress cannot be used with --partition-by");
+        commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--stratified"
+        };
+        assertCommand(commandLine, CommandLineTools.EXECUTION_ERROR_STATUS, "", "Option --stratified requires --sample-fraction");
+        commandLine = new String[]{
+            "compare-network",
+            "--input-file1", "/network1.xiidm",
+            "--input-file2", "/network2.xiidm",
+            "--output-file", "/output.json",
+            "--streaming",
+            "--id-mapping", "/mapping.csv"
+        };
+        assertCommand(commandLine, CommandLineTools.EXECUTION_ERROR_STATUS, "", "Option --id-mapping cannot be used with --streaming");
+        assertFalse(Files.exists(fileSystem.getPath("/output.json")));
+    }
 }